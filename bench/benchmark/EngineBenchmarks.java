@@ -0,0 +1,219 @@
+package benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import data.Data;
+import data.Tuple;
+import mining.Cluster;
+import mining.ClusterSet;
+import mining.ColumnCentroids;
+import mining.DistanceKernel;
+import mining.KMeansMiner;
+
+/**
+ * The EngineBenchmarks class measures the kernels of the k-means engine on
+ * synthetic data (see 'SyntheticData'): the distance between two tuples, the
+ * search of the nearest cluster of a tuple, the assignment of all the examples
+ * by the 'DistanceKernel', the update of a centroid, the building of the
+ * tuple of an example, a whole seeded k-means run and the saving and reading
+ * of a model. Every benchmark is run for each combination of the parameters,
+ * and reports the time and the allocation of one operation. <br>
+ * <br>
+ * The parameters are system properties: bench.n (the numbers of examples,
+ * "10000,100000" by default), bench.d (the numbers of attributes, "4,16"),
+ * bench.k (the numbers of clusters, "4,16"), bench.continuous (the fraction
+ * of continuous attributes, 0.5), bench.projection (the dimension of the
+ * random projection of the "projectedKmeans" benchmark, which is only run if
+ * it is set), bench.warmup (5 iterations), bench.iterations (10 iterations),
+ * bench.iterationMs (500 ms) and bench.filter (a regular expression on the
+ * names of the benchmarks to run).
+ * For example, from the root of the project:
+ *
+ * <pre>
+ * javac -cp "lib/*" -d bin/bench $(find src bench -name '*.java')
+ * java -cp bin/bench -Dbench.n=100000 -Dbench.filter=kmeans benchmark.EngineBenchmarks
+ * </pre>
+ *
+ * To measure the vector kernel, compile the folder "vector" too and run with
+ * --add-modules jdk.incubator.vector; -Dkmeans.kernel=scalar measures the
+ * scalar kernel.
+ */
+public class EngineBenchmarks {
+	/** Number of tuples the kernels on single tuples cycle through */
+	private static final int TUPLES = 4096;
+	/** Seed of the data and of the k-means */
+	private static final long SEED = 42;
+
+	/**
+	 * This function runs the benchmarks and prints their results.
+	 *
+	 * @param args not used, the parameters are system properties
+	 * @throws Exception if a benchmark fails
+	 */
+	public static void main(String[] args) throws Exception {
+		int[] sizes = parse(System.getProperty("bench.n", "10000,100000"));
+		int[] dimensions = parse(System.getProperty("bench.d", "4,16"));
+		int[] ks = parse(System.getProperty("bench.k", "4,16"));
+		Pattern filter = Pattern.compile(System.getProperty("bench.filter", ".*"));
+		double fraction = Double.parseDouble(System.getProperty("bench.continuous", "0.5"));
+		Harness harness = new Harness(Integer.getInteger("bench.warmup", 5), Integer.getInteger("bench.iterations", 10),
+				Long.getLong("bench.iterationMs", 500));
+
+		System.out.println(String.format(Locale.ROOT, "%-16s %8s %4s %4s %s", "benchmark", "n", "d", "k", "result"));
+		for (int n : sizes) {
+			for (int d : dimensions) {
+				Data data = SyntheticData.generate(n, d, (int) Math.ceil(d * fraction), 8, SEED);
+				Tuple[] tuples = new Tuple[Math.min(n, TUPLES)];
+				for (int i = 0; i < tuples.length; i++) {
+					tuples[i] = data.getItemSet(i);
+				}
+				// The kernels which do not depend on k are run once per dataset
+				run(harness, filter, "distance", n, d, 0, new Harness.Operation() {
+					private int i;
+
+					@Override
+					public Object run() {
+						i = (i + 1) % tuples.length;
+						return tuples[i].getDistance(tuples[(i + 1) % tuples.length]);
+					}
+				});
+				run(harness, filter, "getItemSet", n, d, 0, new Harness.Operation() {
+					private int i;
+
+					@Override
+					public Object run() {
+						i = (i + 1) % data.getNumberOfExamples();
+						return data.getItemSet(i);
+					}
+				});
+				for (int k : ks) {
+					benchmarkClusters(harness, filter, data, tuples, n, d, k);
+				}
+			}
+		}
+	}
+
+	/**
+	 * This function runs the benchmarks which depend on the number of clusters.
+	 *
+	 * @param harness the harness of the measures
+	 * @param filter  the names of the benchmarks to run
+	 * @param data    the dataset
+	 * @param tuples  the tuples of the first examples of the dataset
+	 * @param n       the number of examples
+	 * @param d       the number of attributes
+	 * @param k       the number of clusters
+	 * @throws Exception if a benchmark fails
+	 */
+	private static void benchmarkClusters(Harness harness, Pattern filter, Data data, Tuple[] tuples, int n, int d,
+			int k) throws Exception {
+		// The clusters of a seeded run, reused by the kernels and by the model
+		KMeansMiner miner = new KMeansMiner(k, SEED);
+		miner.kmeans(data);
+		ClusterSet C = miner.getC();
+
+		run(harness, filter, "nearestCluster", n, d, k, new Harness.Operation() {
+			private int i;
+
+			@Override
+			public Object run() {
+				i = (i + 1) % tuples.length;
+				return C.nearestCluster(tuples[i]);
+			}
+		});
+
+		ColumnCentroids centroids = new ColumnCentroids(data, C);
+		DistanceKernel kernel = DistanceKernel.getInstance();
+		int[] nearest = new int[n];
+		double[] distance = new double[n];
+		run(harness, filter, "assignment", n, d, k, () -> {
+			kernel.nearest(centroids, 0, n, nearest, distance);
+			return nearest[n - 1];
+		});
+
+		Cluster largest = C.get(0);
+		for (int i = 1; i < k; i++) {
+			if (C.get(i).getSize() > largest.getSize()) {
+				largest = C.get(i);
+			}
+		}
+		Cluster cluster = largest;
+		run(harness, filter, "computeCentroid", n, d, k, () -> {
+			cluster.computeCentroid(data);
+			return cluster.getCentroid();
+		});
+
+		run(harness, filter, "kmeans", n, d, k, () -> {
+			KMeansMiner run = new KMeansMiner(k, SEED);
+			return run.kmeans(data);
+		});
+
+		int projection = Integer.getInteger("bench.projection", 0);
+		if (projection > 0) {
+			run(harness, filter, "projectedKmeans", n, d, k, () -> {
+				KMeansMiner run = new KMeansMiner(k, SEED);
+				run.setProjection(projection);
+				return run.kmeans(data);
+			});
+		}
+
+		File file = File.createTempFile("bench", ".kmm");
+		try {
+			String fileName = file.getPath();
+			run(harness, filter, "save", n, d, k, () -> {
+				miner.save(fileName);
+				return null;
+			});
+			run(harness, filter, "load", n, d, k, () -> new KMeansMiner(fileName).getC());
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * This function measures a benchmark, if its name is selected, and prints its
+	 * result.
+	 *
+	 * @param harness   the harness of the measures
+	 * @param filter    the names of the benchmarks to run
+	 * @param name      the name of the benchmark
+	 * @param n         the number of examples
+	 * @param d         the number of attributes
+	 * @param k         the number of clusters, 0 if it is not a parameter
+	 * @param operation the operation measured
+	 * @throws Exception if the operation fails
+	 */
+	private static void run(Harness harness, Pattern filter, String name, int n, int d, int k,
+			Harness.Operation operation) throws Exception {
+		if (!filter.matcher(name).find()) {
+			return;
+		}
+		Harness.Result result = harness.measure(operation);
+		System.out.println(String.format(Locale.ROOT, "%-16s %8d %4d %4s %s", name, n, d, k == 0 ? "-" : "" + k,
+				result));
+	}
+
+	/**
+	 * This function parses a list of integers separated by commas.
+	 *
+	 * @param value the list
+	 * @return the integers.
+	 */
+	private static int[] parse(String value) {
+		List<Integer> list = new ArrayList<Integer>();
+		for (String item : value.split(",")) {
+			if (!item.trim().isEmpty()) {
+				list.add(Integer.parseInt(item.trim()));
+			}
+		}
+		int[] result = new int[list.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = list.get(i);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,174 @@
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/**
+ * The Harness class measures the time and the memory allocated by an
+ * operation. The operation is first run for a number of warm-up iterations, so
+ * the JIT compiler has optimised it, then for the measured iterations; each
+ * iteration repeats the operation for about the same time. The results of the
+ * operation are folded into a field, so the compiler cannot remove the
+ * computation. The allocation is read from the counters of the thread, when
+ * the JVM provides them.
+ */
+public class Harness {
+	private int warmupIterations;
+	private int measuredIterations;
+	private long iterationNanos;
+	/** The results of the operations, read so they are not optimised away */
+	private volatile long sink;
+
+	/**
+	 * The Operation interface is the code measured by the harness. It is an
+	 * inner interface of 'Harness'.
+	 */
+	public interface Operation {
+		/**
+		 * This function runs the operation once.
+		 *
+		 * @return the result of the operation, or null.
+		 * @throws Exception
+		 */
+		Object run() throws Exception;
+	}
+
+	/**
+	 * The Result class is the measure of an operation. It is an inner class of
+	 * 'Harness'.
+	 */
+	public static class Result {
+		private double nanosPerOp;
+		private double error;
+		private double bytesPerOp;
+		private long operations;
+
+		/**
+		 * Constructor for the 'Result' class.
+		 *
+		 * @param nanosPerOp the mean time of an operation
+		 * @param error      the standard deviation of the time of an operation
+		 *                   between the iterations
+		 * @param bytesPerOp the mean allocation of an operation, negative if it is
+		 *                   not known
+		 * @param operations the number of operations measured
+		 */
+		Result(double nanosPerOp, double error, double bytesPerOp, long operations) {
+			this.nanosPerOp = nanosPerOp;
+			this.error = error;
+			this.bytesPerOp = bytesPerOp;
+			this.operations = operations;
+		}
+
+		/**
+		 * The function returns the mean time of an operation.
+		 *
+		 * @return the nanoseconds per operation.
+		 */
+		public double getNanosPerOp() {
+			return nanosPerOp;
+		}
+
+		/**
+		 * The function returns the mean allocation of an operation.
+		 *
+		 * @return the bytes per operation, negative if they are not known.
+		 */
+		public double getBytesPerOp() {
+			return bytesPerOp;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "%14.1f ns/op +-%5.1f%% %14.1f B/op %10d ops", nanosPerOp,
+					nanosPerOp == 0 ? 0 : 100 * error / nanosPerOp, bytesPerOp, operations);
+		}
+	}
+
+	/**
+	 * Constructor for the 'Harness' class.
+	 *
+	 * @param warmupIterations   the number of iterations run before the measure
+	 * @param measuredIterations the number of iterations measured
+	 * @param iterationMillis    the time of an iteration; an iteration runs the
+	 *                           operation at least once
+	 */
+	public Harness(int warmupIterations, int measuredIterations, long iterationMillis) {
+		this.warmupIterations = warmupIterations;
+		this.measuredIterations = measuredIterations;
+		this.iterationNanos = iterationMillis * 1000000L;
+	}
+
+	/**
+	 * This function measures an operation.
+	 *
+	 * @param operation the operation
+	 * @return the measure.
+	 * @throws Exception if the operation fails
+	 */
+	public Result measure(Operation operation) throws Exception {
+		for (int i = 0; i < warmupIterations; i++) {
+			iteration(operation);
+		}
+		double[] nanos = new double[measuredIterations];
+		long operations = 0;
+		long before = allocatedBytes();
+		for (int i = 0; i < measuredIterations; i++) {
+			long start = System.nanoTime();
+			long count = iteration(operation);
+			nanos[i] = (double) (System.nanoTime() - start) / count;
+			operations += count;
+		}
+		long after = allocatedBytes();
+		long bytes = before < 0 || after < 0 ? -1 : after - before;
+
+		double mean = 0;
+		for (double value : nanos) {
+			mean += value;
+		}
+		mean /= nanos.length;
+		double variance = 0;
+		for (double value : nanos) {
+			variance += (value - mean) * (value - mean);
+		}
+		double error = nanos.length > 1 ? Math.sqrt(variance / (nanos.length - 1)) : 0;
+		return new Result(mean, error, bytes < 0 ? -1 : (double) bytes / operations, operations);
+	}
+
+	/**
+	 * This function runs an operation for the time of an iteration.
+	 *
+	 * @param operation the operation
+	 * @return the number of operations run.
+	 * @throws Exception if the operation fails
+	 */
+	private long iteration(Operation operation) throws Exception {
+		long start = System.nanoTime();
+		long count = 0;
+		long folded = 0;
+		do {
+			Object result = operation.run();
+			folded += result == null ? 0 : result.hashCode();
+			count++;
+		} while (System.nanoTime() - start < iterationNanos);
+		sink += folded;
+		return count;
+	}
+
+	/**
+	 * The function returns the number of bytes allocated by the current thread
+	 * since it started.
+	 *
+	 * @return the bytes, or -1 if the JVM does not count them.
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+			if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+				return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+}
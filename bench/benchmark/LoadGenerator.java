@@ -0,0 +1,387 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import agent.DbAccess;
+import data.Data;
+import main.MultiServer;
+
+/**
+ * The LoadGenerator class reproduces the load of many clients on the server:
+ * it opens a number of connections, each one sending without pause a random
+ * mix of requests with the object protocol of the first clients, and reports
+ * the throughput, the latency percentiles of each kind of request and the
+ * heap and the garbage collections of the server. <br>
+ * <br>
+ * By default the server is started in the same JVM and the data is a
+ * synthetic snapshot (see 'SyntheticData'), opened with request 8, so no
+ * database is needed. With load.table the data is a table, loaded with
+ * request 0; with load.createTable=true the table is first filled with the
+ * synthetic data, through the database configured for 'DbAccess' (see the
+ * kmeans.db properties, kmeans.db.url can point to a local test database).
+ * <br>
+ * <br>
+ * The parameters are system properties: load.host (a running server, the
+ * in-process one if not set), load.port (9595), load.server (nio or threads,
+ * for the in-process server), load.clients (16), load.seconds (30),
+ * load.warmupSeconds (5), load.mix (the weights of the requests,
+ * "load=1,cluster=4,save=1,open=2"), load.k (4), load.n (2000), load.d (8)
+ * and load.table. For example, from the root of the project:
+ *
+ * <pre>
+ * java -cp "bin/bench:lib/*" -Dload.clients=64 -Dload.mix=cluster=1 benchmark.LoadGenerator
+ * </pre>
+ */
+public class LoadGenerator {
+	/** The kinds of requests of the mix */
+	private static final String[] REQUESTS = { "load", "cluster", "save", "open" };
+
+	private String host;
+	private int port;
+	private String table;
+	private String snapshot;
+	private File directory;
+	private int k;
+	private int[] weights = new int[REQUESTS.length];
+	private volatile boolean measuring;
+	private volatile boolean stopped;
+	private Map<String, Recorder> recorders = new LinkedHashMap<String, Recorder>();
+
+	/**
+	 * The Recorder class collects the latencies of a kind of request, from all
+	 * the clients. It is an inner class of 'LoadGenerator'.
+	 */
+	private static class Recorder {
+		private long[] latencies = new long[1024];
+		private int count;
+		private int errors;
+
+		/**
+		 * This function records the latency of a request which has succeeded.
+		 *
+		 * @param nanos the latency
+		 */
+		synchronized void record(long nanos) {
+			if (count == latencies.length) {
+				latencies = Arrays.copyOf(latencies, count * 2);
+			}
+			latencies[count++] = nanos;
+		}
+
+		/**
+		 * This function records a request which has failed or has been rejected.
+		 */
+		synchronized void error() {
+			errors++;
+		}
+
+		/**
+		 * The function returns the latency below which a fraction of the requests
+		 * have been answered.
+		 *
+		 * @param sorted   the latencies, sorted
+		 * @param fraction the fraction, between 0 and 1
+		 * @return the latency in milliseconds.
+		 */
+		private static double percentile(long[] sorted, double fraction) {
+			if (sorted.length == 0) {
+				return 0;
+			}
+			int index = (int) Math.ceil(fraction * sorted.length) - 1;
+			return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+		}
+
+		/**
+		 * This function returns a line of the report.
+		 *
+		 * @param name    the name of the request
+		 * @param seconds the duration of the measure
+		 * @return the count, the throughput and the percentiles of the latency.
+		 */
+		synchronized String report(String name, double seconds) {
+			long[] sorted = Arrays.copyOf(latencies, count);
+			Arrays.sort(sorted);
+			return String.format(Locale.ROOT, "%-8s %8d %6d %9.1f %9.2f %9.2f %9.2f %9.2f", name, count, errors,
+					count / seconds, percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99),
+					percentile(sorted, 1.0));
+		}
+	}
+
+	/**
+	 * Constructor for the 'LoadGenerator' class.
+	 *
+	 * @param host     the host of the server
+	 * @param port     the port of the server
+	 * @param table    the table loaded by the clients, or null to open the
+	 *                 snapshot
+	 * @param snapshot the path of the snapshot opened by the clients
+	 * @param mix      the weights of the requests, as name=weight separated by
+	 *                 commas
+	 * @param k        the number of clusters
+	 */
+	public LoadGenerator(String host, int port, String table, String snapshot, String mix, int k) {
+		this.host = host;
+		this.port = port;
+		this.table = table;
+		this.snapshot = snapshot;
+		this.directory = new File(System.getProperty("java.io.tmpdir"), "kmeans-load");
+		this.directory.mkdirs();
+		this.k = k;
+		for (String item : mix.split(",")) {
+			String[] pair = item.split("=");
+			int index = Arrays.asList(REQUESTS).indexOf(pair[0].trim());
+			if (index < 0 || pair.length != 2) {
+				throw new IllegalArgumentException("Unknown request in the mix: " + item);
+			}
+			weights[index] = Integer.parseInt(pair[1].trim());
+		}
+		for (String name : REQUESTS) {
+			recorders.put(name, new Recorder());
+		}
+	}
+
+	/**
+	 * This function runs the clients: they first load the data, then send
+	 * requests during the warm-up, whose latencies are not recorded, and during
+	 * the measure.
+	 *
+	 * @param clients       the number of clients
+	 * @param warmupSeconds the duration of the warm-up
+	 * @param seconds       the duration of the measure
+	 * @throws InterruptedException
+	 */
+	public void run(int clients, int warmupSeconds, int seconds) throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(clients);
+		for (int i = 0; i < clients; i++) {
+			int client = i;
+			Thread thread = new Thread(() -> {
+				try {
+					client(client);
+				} catch (Exception e) {
+					if (!stopped) {
+						System.out.println("Client " + client + ": " + e);
+					}
+				} finally {
+					done.countDown();
+				}
+			}, "load-client-" + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		Thread.sleep(warmupSeconds * 1000L);
+		measuring = true;
+		Thread.sleep(seconds * 1000L);
+		measuring = false;
+		stopped = true;
+		done.await();
+	}
+
+	/**
+	 * This function is the loop of a client.
+	 *
+	 * @param client the number of the client
+	 * @throws Exception if the connection fails
+	 */
+	private void client(int client) throws Exception {
+		Random random = new Random(client);
+		String model = new File(directory, "client" + client + ".kmm").getPath();
+		boolean clustered = false;
+		boolean saved = false;
+		int total = 0;
+		for (int weight : weights) {
+			total += weight;
+		}
+
+		Socket socket = new Socket(host, port);
+		try {
+			ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+			ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+			request(out, in, 0, model);
+			while (!stopped) {
+				int choice = random.nextInt(Math.max(total, 1));
+				int kind = 0;
+				while (choice >= weights[kind]) {
+					choice -= weights[kind];
+					kind++;
+				}
+				// The save needs a clustering and the open a saved model
+				if (kind == 2 && !clustered || kind == 3 && !saved) {
+					kind = 1;
+				}
+				boolean ok = request(out, in, kind, model);
+				clustered |= ok && kind == 1;
+				saved |= ok && kind == 2;
+			}
+		} finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * This function sends a request and reads its answer, recording its latency.
+	 *
+	 * @param out   the stream of the requests
+	 * @param in    the stream of the answers
+	 * @param kind  the index of the request in REQUESTS
+	 * @param model the path of the model of the client
+	 * @return true if the server has answered OK.
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private boolean request(ObjectOutputStream out, ObjectInputStream in, int kind, String model)
+			throws IOException, ClassNotFoundException {
+		long start = System.nanoTime();
+		switch (kind) {
+			case 0:
+				out.writeObject(table != null ? 0 : 8);
+				out.writeObject(table != null ? table : snapshot);
+				break;
+			case 1:
+				out.writeObject(1);
+				out.writeObject(k);
+				break;
+			case 2:
+				out.writeObject(2);
+				out.writeObject(model);
+				break;
+			default:
+				out.writeObject(3);
+				out.writeObject(model);
+		}
+		out.flush();
+		out.reset();
+		boolean ok = "OK".equals(in.readObject());
+		if (ok && kind == 1) {
+			in.readObject();
+			in.readObject();
+		} else if (ok && kind == 3) {
+			in.readObject();
+		}
+		long nanos = System.nanoTime() - start;
+		if (measuring) {
+			if (ok) {
+				recorders.get(REQUESTS[kind]).record(nanos);
+			} else {
+				recorders.get(REQUESTS[kind]).error();
+			}
+		}
+		return ok;
+	}
+
+	/**
+	 * This function prints the results of the measure.
+	 *
+	 * @param seconds the duration of the measure
+	 */
+	public void report(int seconds) {
+		System.out.println(String.format(Locale.ROOT, "%-8s %8s %6s %9s %9s %9s %9s %9s", "request", "count", "errors",
+				"req/s", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+		int count = 0;
+		for (Map.Entry<String, Recorder> entry : recorders.entrySet()) {
+			System.out.println(entry.getValue().report(entry.getKey(), seconds));
+			count += entry.getValue().count;
+		}
+		System.out.println(String.format(Locale.ROOT, "throughput %.1f requests/s", (double) count / seconds));
+	}
+
+	/**
+	 * The function returns the collections done by each garbage collector of the
+	 * JVM.
+	 *
+	 * @return the number and the milliseconds of the collections, by collector.
+	 */
+	private static Map<String, long[]> collections() {
+		Map<String, long[]> collections = new LinkedHashMap<String, long[]>();
+		for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			collections.put(bean.getName(), new long[] { bean.getCollectionCount(), bean.getCollectionTime() });
+		}
+		return collections;
+	}
+
+	/**
+	 * This function starts the server if needed, prepares the data, runs the
+	 * clients and prints the report.
+	 *
+	 * @param args not used, the parameters are system properties
+	 * @throws Exception if the data cannot be prepared
+	 */
+	public static void main(String[] args) throws Exception {
+		String host = System.getProperty("load.host");
+		int port = Integer.getInteger("load.port", 9595);
+		int clients = Integer.getInteger("load.clients", 16);
+		int seconds = Integer.getInteger("load.seconds", 30);
+		int warmupSeconds = Integer.getInteger("load.warmupSeconds", 5);
+		int n = Integer.getInteger("load.n", 2000);
+		int d = Integer.getInteger("load.d", 8);
+		String table = System.getProperty("load.table");
+
+		Data data = SyntheticData.generate(n, d, 8, 42);
+		String snapshot = null;
+		if (table == null) {
+			File file = File.createTempFile("load", ".kmds");
+			file.deleteOnExit();
+			data.saveSnapshot(file.getPath());
+			snapshot = file.getPath();
+		} else if (Boolean.getBoolean("load.createTable")) {
+			DbAccess db = new DbAccess();
+			db.initConnection();
+			try {
+				SyntheticData.createTable(db.getConnection(), table, data);
+			} finally {
+				db.closeConnection();
+			}
+		}
+
+		boolean local = host == null;
+		if (local) {
+			boolean nio = !"threads".equals(System.getProperty("load.server", "nio"));
+			Thread server = new Thread(() -> new MultiServer(port, nio), "load-server");
+			server.setDaemon(true);
+			server.start();
+			Thread.sleep(500);
+			host = "localhost";
+		}
+
+		LoadGenerator generator = new LoadGenerator(host, port, table, snapshot,
+				System.getProperty("load.mix", "load=1,cluster=4,save=1,open=2"), Integer.getInteger("load.k", 4));
+		Map<String, long[]> before = collections();
+		long start = System.nanoTime();
+		generator.run(clients, warmupSeconds, seconds);
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		Map<String, long[]> after = collections();
+
+		System.out.println(clients + " clients, " + seconds + " s measured, " + (table != null ? "table " + table
+				: "snapshot of " + n + " examples") + ", k=" + generator.k);
+		generator.report(seconds);
+		if (local) {
+			MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+			System.out.println(String.format(Locale.ROOT, "heap used %d MB, committed %d MB, max %d MB",
+					heap.getUsed() >> 20, heap.getCommitted() >> 20, heap.getMax() >> 20));
+			for (Map.Entry<String, long[]> entry : after.entrySet()) {
+				long[] old = before.get(entry.getKey());
+				long count = entry.getValue()[0] - old[0];
+				long time = entry.getValue()[1] - old[1];
+				System.out.println(String.format(Locale.ROOT, "gc %-20s %6d collections %8d ms (%.1f%% of the run)",
+						entry.getKey(), count, time, 100 * time / (elapsed * 1000)));
+			}
+		} else {
+			System.out.println("The heap and the collections of a remote server are not measured");
+		}
+		System.exit(0);
+	}
+}
@@ -0,0 +1,165 @@
+package benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import data.Attribute;
+import data.ContinuousAttribute;
+import data.Data;
+import data.DiscreteAttribute;
+
+/**
+ * The SyntheticData class generates datasets for the benchmarks, without a
+ * database: mixed continuous and discrete attributes whose examples are drawn
+ * around a number of hidden centres, so the k-means has clusters to find. The
+ * same parameters and seed always give the same data.
+ */
+public class SyntheticData {
+	/** Number of distinct values of each discrete attribute */
+	public static final int CARDINALITY = 8;
+	/** Standard deviation of the continuous values around their centre */
+	private static final double SPREAD = 5.0;
+	/** Probability of a discrete value different from the one of the centre */
+	private static final double NOISE = 0.2;
+
+	/**
+	 * This function generates a dataset with half of the attributes continuous
+	 * and half discrete (one more continuous if d is odd).
+	 *
+	 * @param n       the number of examples
+	 * @param d       the number of attributes
+	 * @param centres the number of hidden centres
+	 * @param seed    the seed of the generator
+	 * @return the data.
+	 */
+	public static Data generate(int n, int d, int centres, long seed) {
+		return generate(n, d, (d + 1) / 2, centres, seed);
+	}
+
+	/**
+	 * This function generates a dataset whose first attributes are continuous
+	 * and the others discrete.
+	 *
+	 * @param n          the number of examples
+	 * @param d          the number of attributes
+	 * @param continuous the number of continuous attributes, at most d
+	 * @param centres    the number of hidden centres
+	 * @param seed       the seed of the generator
+	 * @return the data.
+	 */
+	public static Data generate(int n, int d, int continuous, int centres, long seed) {
+		Random random = new Random(seed);
+		List<Attribute> attributes = new ArrayList<Attribute>();
+		double[][] values = new double[d][];
+		int[][] codes = new int[d][];
+		String[] dictionary = new String[CARDINALITY];
+		for (int v = 0; v < CARDINALITY; v++) {
+			dictionary[v] = "v" + v;
+		}
+
+		double[][] centreValues = new double[centres][continuous];
+		int[][] centreCodes = new int[centres][d - continuous];
+		for (int c = 0; c < centres; c++) {
+			for (int j = 0; j < continuous; j++) {
+				centreValues[c][j] = random.nextDouble() * 100;
+			}
+			for (int j = 0; j < d - continuous; j++) {
+				centreCodes[c][j] = random.nextInt(CARDINALITY);
+			}
+		}
+
+		for (int j = 0; j < d; j++) {
+			if (j < continuous) {
+				values[j] = new double[n];
+			} else {
+				codes[j] = new int[n];
+			}
+		}
+		double[] min = new double[continuous];
+		double[] max = new double[continuous];
+		Arrays.fill(min, Double.POSITIVE_INFINITY);
+		Arrays.fill(max, Double.NEGATIVE_INFINITY);
+		for (int i = 0; i < n; i++) {
+			int c = random.nextInt(centres);
+			for (int j = 0; j < continuous; j++) {
+				double value = centreValues[c][j] + random.nextGaussian() * SPREAD;
+				values[j][i] = value;
+				min[j] = Math.min(min[j], value);
+				max[j] = Math.max(max[j], value);
+			}
+			for (int j = continuous; j < d; j++) {
+				codes[j][i] = random.nextDouble() < NOISE ? random.nextInt(CARDINALITY)
+						: centreCodes[c][j - continuous];
+			}
+		}
+
+		for (int j = 0; j < d; j++) {
+			if (j < continuous) {
+				attributes.add(new ContinuousAttribute("x" + j, j, min[j], max[j]));
+			} else {
+				attributes.add(new DiscreteAttribute("c" + j, j, dictionary));
+			}
+		}
+		int[] weights = new int[n];
+		Arrays.fill(weights, 1);
+		return Data.fromColumns("synthetic_" + n + "x" + d, attributes, values, codes, weights, n);
+	}
+
+	/**
+	 * This function writes a dataset in a table of a database, replacing the
+	 * table if it exists: the continuous attributes become DOUBLE columns and the
+	 * discrete ones VARCHAR columns. Every example is written once per unit of
+	 * its weight.
+	 *
+	 * @param connection the connection to the database
+	 * @param tableName  the name of the table
+	 * @param data       the dataset
+	 * @throws SQLException
+	 */
+	public static void createTable(Connection connection, String tableName, Data data) throws SQLException {
+		StringBuilder columns = new StringBuilder();
+		StringBuilder parameters = new StringBuilder();
+		for (Attribute attribute : data.getAttributeSchema()) {
+			if (columns.length() > 0) {
+				columns.append(", ");
+				parameters.append(", ");
+			}
+			columns.append(attribute.getName())
+					.append(attribute instanceof ContinuousAttribute ? " DOUBLE" : " VARCHAR(16)");
+			parameters.append('?');
+		}
+		Statement statement = connection.createStatement();
+		try {
+			statement.executeUpdate("DROP TABLE IF EXISTS " + tableName);
+			statement.executeUpdate("CREATE TABLE " + tableName + " (" + columns + ")");
+		} finally {
+			statement.close();
+		}
+
+		PreparedStatement insert = connection
+				.prepareStatement("INSERT INTO " + tableName + " VALUES (" + parameters + ")");
+		try {
+			int batch = 0;
+			for (int i = 0; i < data.getNumberOfExamples(); i++) {
+				for (int j = 0; j < data.getNumberOfAttributes(); j++) {
+					insert.setObject(j + 1, data.getAttributeValue(i, j));
+				}
+				for (int w = 0; w < data.getWeight(i); w++) {
+					insert.addBatch();
+					if (++batch % 1000 == 0) {
+						insert.executeBatch();
+					}
+				}
+			}
+			insert.executeBatch();
+		} finally {
+			insert.close();
+		}
+	}
+}
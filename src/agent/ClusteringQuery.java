@@ -0,0 +1,343 @@
+package agent;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import exceptions.OutOfRangeSampleSize;
+
+/**
+ * The ClusteringQuery class generates and runs the SQL statements of the
+ * in-database k-means: the examples never leave the database, which assigns
+ * each row to the nearest centroid and returns, for each cluster, the number
+ * of rows, the sum of the numeric columns and the count of each value of the
+ * other columns. The distance is the same as 'Tuple.getDistance': the sum of
+ * the absolute differences of the scaled numeric values plus the number of
+ * mismatching string values. The string values are compared and grouped as
+ * binary strings, byte by byte like 'String.equals', since the default
+ * collations of MySQL ignore the case and the trailing spaces. The rows with a
+ * NULL string are not clustered, as they are not loaded in memory (see
+ * 'Data').
+ */
+public class ClusteringQuery {
+	private DbAccess db;
+	private TableSchema tableSchema;
+	private LoadRequest request;
+	private double[] min;
+	private double[] max;
+
+	/**
+	 * The "ClusterAggregates" class holds the result of one assignment step. It is
+	 * an inner class of 'ClusteringQuery'.
+	 */
+	public class ClusterAggregates {
+		private long[] counts;
+		private double[][] sums;
+		private List<List<Map<String, Long>>> valueCounts;
+
+		/**
+		 * Constructor for the inner class 'ClusterAggregates' with no rows assigned.
+		 *
+		 * @param k number of clusters
+		 */
+		ClusterAggregates(int k) {
+			counts = new long[k];
+			sums = new double[k][tableSchema.getNumberOfAttributes()];
+			valueCounts = new ArrayList<List<Map<String, Long>>>();
+			for (int i = 0; i < k; i++) {
+				List<Map<String, Long>> attributes = new ArrayList<Map<String, Long>>();
+				for (int j = 0; j < tableSchema.getNumberOfAttributes(); j++) {
+					attributes.add(new TreeMap<String, Long>());
+				}
+				valueCounts.add(attributes);
+			}
+		}
+
+		/**
+		 * The function returns the number of rows assigned to a cluster.
+		 *
+		 * @param cluster index of the cluster
+		 * @return the number of rows of the cluster.
+		 */
+		public long getCount(int cluster) {
+			return counts[cluster];
+		}
+
+		/**
+		 * The function returns the sum of a numeric column over the rows of a
+		 * cluster.
+		 *
+		 * @param cluster   index of the cluster
+		 * @param attribute index of the column in the table schema
+		 * @return the sum of the column values.
+		 */
+		public double getSum(int cluster, int attribute) {
+			return sums[cluster][attribute];
+		}
+
+		/**
+		 * The function returns the number of rows of a cluster for each value of a
+		 * string column, sorted by value.
+		 *
+		 * @param cluster   index of the cluster
+		 * @param attribute index of the column in the table schema
+		 * @return a sorted map from the values to their number of rows.
+		 */
+		public Map<String, Long> getValueCounts(int cluster, int attribute) {
+			return valueCounts.get(cluster).get(attribute);
+		}
+	}
+
+	/**
+	 * Constructor for the 'ClusteringQuery' class.
+	 *
+	 * @param db          database access object which owns the table
+	 * @param tableSchema the columns which are clustered
+	 * @param request     the table and the filter on its rows
+	 * @param min         minimum value of each numeric column, by schema index
+	 * @param max         maximum value of each numeric column, by schema index
+	 */
+	public ClusteringQuery(DbAccess db, TableSchema tableSchema, LoadRequest request, double[] min, double[] max) {
+		this.db = db;
+		this.tableSchema = tableSchema;
+		this.request = request;
+		this.min = min;
+		this.max = max;
+	}
+
+	/**
+	 * This function chooses k different random rows of the table as initial
+	 * centroids, in the database.
+	 *
+	 * @param k    number of centroids
+	 * @param seed seed of the random choice
+	 * @return a list of k examples, with the values in the order of the schema.
+	 * @throws SQLException
+	 * @throws OutOfRangeSampleSize if the table has not more than k distinct rows
+	 */
+	public List<Example> sampleCentroids(int k, long seed) throws SQLException, OutOfRangeSampleSize {
+		if (k <= 0) {
+			throw new OutOfRangeSampleSize("Error:\tk <= 0\n");
+		}
+		QueryFilter filter = request.getFilter();
+		Connection con = db.getConnection();
+		PreparedStatement s = con.prepareStatement("SELECT DISTINCT " + selectList() + " FROM "
+				+ request.getTableName() + whereClause() + " ORDER BY RAND(?) LIMIT ?");
+		int next = filter.bind(s, 1);
+		s.setLong(next++, seed);
+		// One row more than needed, to check that k is less than the number of rows
+		s.setInt(next, k + 1);
+		ResultSet r = s.executeQuery();
+
+		List<Example> centroids = new ArrayList<Example>();
+		while (r.next()) {
+			Example example = new Example();
+			for (int i = 0; i < tableSchema.getNumberOfAttributes(); i++) {
+				if (tableSchema.getColumn(i).isNumber()) {
+					example.add(new BigDecimal(Float.toString(r.getFloat(i + 1))).doubleValue());
+				} else {
+					example.add(r.getString(i + 1));
+				}
+			}
+			centroids.add(example);
+		}
+		r.close();
+		s.close();
+
+		if (centroids.size() <= k) {
+			throw new OutOfRangeSampleSize("Error:\tk >= " + centroids.size() + "\n");
+		}
+		return centroids.subList(0, k);
+	}
+
+	/**
+	 * This function runs one assignment step in the database: every row is
+	 * labelled with the index of its nearest centroid (the first one in case of
+	 * ties, as 'ClusterSet.nearestCluster') and the rows are aggregated by label.
+	 *
+	 * @param centroids the k centroids, each one with a Double value for the
+	 *                  numeric columns and a String value for the others
+	 * @return the aggregates of each cluster.
+	 * @throws SQLException
+	 */
+	public ClusterAggregates aggregate(Object[][] centroids) throws SQLException {
+		int k = centroids.length;
+		Connection con = db.getConnection();
+		PreparedStatement s = con.prepareStatement(buildAggregateQuery(k));
+
+		// The centroids are bound in the order they appear in the distances
+		int next = 1;
+		for (int i = 0; i < k; i++) {
+			for (int j = 0; j < tableSchema.getNumberOfAttributes(); j++) {
+				if (tableSchema.getColumn(j).isNumber()) {
+					s.setDouble(next++, scale((Double) centroids[i][j], j));
+				} else {
+					s.setString(next++, (String) centroids[i][j]);
+				}
+			}
+		}
+		request.getFilter().bind(s, next);
+		ResultSet r = s.executeQuery();
+
+		ClusterAggregates aggregates = new ClusterAggregates(k);
+		while (r.next()) {
+			int label = r.getInt("km_label");
+			int attribute = r.getInt("km_attribute");
+			long count = r.getLong("km_count");
+			if (attribute < 0) {
+				aggregates.counts[label] = count;
+				for (int j = 0; j < tableSchema.getNumberOfAttributes(); j++) {
+					if (tableSchema.getColumn(j).isNumber()) {
+						aggregates.sums[label][j] = r.getDouble("km_sum" + j);
+					}
+				}
+			} else {
+				aggregates.valueCounts.get(label).get(attribute).put(r.getString("km_value"), count);
+			}
+		}
+		r.close();
+		s.close();
+
+		return aggregates;
+	}
+
+	/**
+	 * This function generates the statement of the assignment step for k
+	 * centroids. The common table expression labels every row, from its distance
+	 * to each centroid computed in a derived table. The final query is the union of the aggregate by label and,
+	 * for each string column, of the count by label and value.
+	 *
+	 * @param k number of centroids
+	 * @return the SQL text of the statement.
+	 * @throws SQLException if a column of the filter is not found in the table
+	 */
+	private String buildAggregateQuery(int k) throws SQLException {
+		String columns = selectList();
+		String base = "SELECT " + (request.getMode() == LOAD_MODE.WEIGHTED ? "" : "DISTINCT ") + columns + " FROM "
+				+ request.getTableName() + whereClause();
+
+		String distances = "";
+		for (int i = 0; i < k; i++) {
+			distances += ", " + distanceExpression() + " AS km_d" + i;
+		}
+		// The first centroid whose distance is not greater than the next ones is
+		// the first nearest: the distances are compared, never tested for equality
+		// with their minimum, whose type may be rounded differently
+		String labels = "CASE";
+		for (int i = 0; i < k - 1; i++) {
+			labels += " WHEN ";
+			for (int j = i + 1; j < k; j++) {
+				labels += (j > i + 1 ? " AND " : "") + "km_d" + i + " <= km_d" + j;
+			}
+			labels += " THEN " + i;
+		}
+		labels += " ELSE " + (k - 1) + " END";
+
+		// A single common table expression: some databases do not bind the
+		// parameters of a common table expression read by another one
+		String query = "WITH km_labelled AS (SELECT " + columns + ", " + labels + " AS km_label FROM (SELECT " + columns
+				+ distances + " FROM (" + base + ") km_base) km_distances) ";
+
+		// Aggregate of the clusters
+		query += "SELECT km_label, -1 AS km_attribute, CAST(NULL AS CHAR) AS km_value, COUNT(*) AS km_count";
+		for (int j = 0; j < tableSchema.getNumberOfAttributes(); j++) {
+			if (tableSchema.getColumn(j).isNumber()) {
+				query += ", SUM(" + tableSchema.getColumn(j).getColumnName() + ") AS km_sum" + j;
+			}
+		}
+		query += " FROM km_labelled GROUP BY km_label";
+
+		// Count of the values of each string column in the clusters
+		for (int j = 0; j < tableSchema.getNumberOfAttributes(); j++) {
+			if (!tableSchema.getColumn(j).isNumber()) {
+				String name = tableSchema.getColumn(j).getColumnName();
+				// The values of a group are identical, MIN returns their common value
+				query += " UNION ALL SELECT km_label, " + j + ", MIN(" + name + "), COUNT(*)";
+				for (int i = 0; i < tableSchema.getNumberOfAttributes(); i++) {
+					if (tableSchema.getColumn(i).isNumber()) {
+						query += ", NULL";
+					}
+				}
+				query += " FROM km_labelled GROUP BY km_label, " + db.binary(name);
+			}
+		}
+		return query;
+	}
+
+	/**
+	 * This function generates the distance of a row from a centroid whose values
+	 * are bound as parameters, one for each column.
+	 *
+	 * @return the SQL expression of the distance.
+	 * @throws SQLException
+	 */
+	private String distanceExpression() throws SQLException {
+		String str = "";
+		for (int j = 0; j < tableSchema.getNumberOfAttributes(); j++) {
+			String name = tableSchema.getColumn(j).getColumnName();
+			str += j > 0 ? " + " : "";
+			if (tableSchema.getColumn(j).isNumber()) {
+				if (max[j] > min[j]) {
+					str += "ABS((" + name + " - " + min[j] + ") / " + (max[j] - min[j]) + " - ?)";
+				} else {
+					// Constant column: every scaled value is the same
+					str += "0 * ?";
+				}
+			} else {
+				str += "(CASE WHEN " + db.binary(name) + " = " + db.binary("?") + " THEN 0 ELSE 1 END)";
+			}
+		}
+		return "(" + str + ")";
+	}
+
+	/**
+	 * This function scales a value of a numeric column in [0,1], as
+	 * 'ContinuousAttribute.getScaledValue'.
+	 *
+	 * @param v     the value
+	 * @param index index of the column in the schema
+	 * @return the scaled value.
+	 */
+	private double scale(double v, int index) {
+		return max[index] > min[index] ? (v - min[index]) / (max[index] - min[index]) : 0;
+	}
+
+	/**
+	 * This function builds the WHERE clause of the rows which are clustered: the
+	 * predicates of the filter of the request, whose values are bound as
+	 * parameters, and no NULL string.
+	 *
+	 * @return the WHERE clause, starting with a blank, or an empty string.
+	 * @throws SQLException if a column of the filter is not found in the table
+	 */
+	private String whereClause() throws SQLException {
+		String str = request.getFilter().toWhereClause(tableSchema);
+		for (int i = 0; i < tableSchema.getNumberOfAttributes(); i++) {
+			String name = tableSchema.getColumn(i).getColumnName();
+			if (!tableSchema.getColumn(i).isNumber()) {
+				str += (str.isEmpty() ? " WHERE " : " AND ") + name + " IS NOT NULL";
+			}
+		}
+		return str;
+	}
+
+	/**
+	 * This function returns the names of the columns of the schema separated by
+	 * commas.
+	 *
+	 * @return the select list.
+	 */
+	private String selectList() {
+		String str = "";
+		for (int i = 0; i < tableSchema.getNumberOfAttributes(); i++) {
+			str += (i > 0 ? ", " : "") + tableSchema.getColumn(i).getColumnName();
+		}
+		return str;
+	}
+}
@@ -12,15 +12,19 @@ import exceptions.DatabaseConnectionException;
  */
 public class DbAccess {
 
-	private static String DRIVER_CLASS_NAME = "com.mysql.cj.jdbc.Driver";
+	private static String DRIVER_CLASS_NAME = System.getProperty("kmeans.db.driver", "com.mysql.cj.jdbc.Driver");
 	private final String DBMS = "jdbc:mysql";
-	private final String SERVER = "localhost";
-	private final String DATABASE = "MapDB";
-	private final int PORT = 3306;
-	private final String USER_ID = "MapUser";
-	private final String PASSWORD = "map";
+	private final String SERVER = System.getProperty("kmeans.db.host", "localhost");
+	private final String DATABASE = System.getProperty("kmeans.db.name", "MapDB");
+	private final int PORT = Integer.getInteger("kmeans.db.port", 3306);
+	private final String USER_ID = System.getProperty("kmeans.db.user", "MapUser");
+	private final String PASSWORD = System.getProperty("kmeans.db.password", "map");
+	/** The whole JDBC URL, which replaces the MySQL one if it is set */
+	private final String URL = System.getProperty("kmeans.db.url");
 
 	private Connection conn;
+	/** The SQL type of the binary strings, read from the database when needed */
+	private String binaryType;
 
 	/**
 	 * This function initializes a database connection 'conn'and throws exceptions
@@ -48,6 +52,12 @@ public class DbAccess {
 	 * <br>
 	 * <br>
 	 * 'PASSWORD' stores the password used to authenticate the connection.
+	 * <br>
+	 * <br>
+	 * Every value can be changed with a system property: kmeans.db.driver,
+	 * kmeans.db.host, kmeans.db.name, kmeans.db.port, kmeans.db.user and
+	 * kmeans.db.password. The property kmeans.db.url replaces the whole MySQL
+	 * URL, for example to use a local test database with another driver.
 	 * 
 	 * @throws DatabaseConnectionException
 	 * 
@@ -55,7 +65,7 @@ public class DbAccess {
 	public void initConnection() throws DatabaseConnectionException {
 		try {
 			Class.forName(DRIVER_CLASS_NAME);
-			String url = DBMS + "://" + SERVER + ":" + PORT + "/" + DATABASE;
+			String url = URL != null ? URL : DBMS + "://" + SERVER + ":" + PORT + "/" + DATABASE;
 			conn = DriverManager.getConnection(url, USER_ID, PASSWORD);
 		} catch (ClassNotFoundException e) {
 			throw new DatabaseConnectionException("Driver class not found: " + e.getMessage());
@@ -75,6 +85,25 @@ public class DbAccess {
 		return conn;
 	}
 
+	/**
+	 * This function converts a string expression into a binary string, so it is
+	 * compared and grouped byte by byte like 'String.equals', whatever the
+	 * collation of its column: the default collations of MySQL ignore the case
+	 * and the trailing spaces. MySQL casts to BINARY, which has the length of the
+	 * string, while the other databases cast to VARBINARY.
+	 * 
+	 * @param expression the SQL expression of a string
+	 * @return the SQL expression of the binary string.
+	 * @throws SQLException
+	 */
+	public String binary(String expression) throws SQLException {
+		if (binaryType == null) {
+			String product = conn.getMetaData().getDatabaseProductName();
+			binaryType = product.equalsIgnoreCase("MySQL") ? "BINARY" : "VARBINARY";
+		}
+		return "CAST(" + expression + " AS " + binaryType + ")";
+	}
+
 	/**
 	 * This function closes a database connection and throws a SQLException if there
 	 * is an error.
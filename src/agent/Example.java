@@ -10,6 +10,7 @@ import java.util.List;
  */
 public class Example implements Comparable<Example> {
 	private List<Object> example = new ArrayList<Object>();
+	private int weight = 1;
 
 	/**
 	 * This function adds an object to a list called "example".
@@ -37,6 +38,36 @@ public class Example implements Comparable<Example> {
 		return example.get(i);
 	}
 
+	/**
+	 * This function replaces the element at the specified index in the "example"
+	 * object.
+	 *
+	 * @param i the index of the element to replace
+	 * @param o the new element
+	 */
+	public void set(int i, Object o) {
+		example.set(i, o);
+	}
+
+	/**
+	 * The function returns the weight of the example, that is the number of rows
+	 * of the table it stands for.
+	 * 
+	 * @return the value of the variable 'weight', 1 by default.
+	 */
+	public int getWeight() {
+		return weight;
+	}
+
+	/**
+	 * The function sets the weight of the example.
+	 * 
+	 * @param weight the number of rows of the table the example stands for.
+	 */
+	public void setWeight(int weight) {
+		this.weight = weight;
+	}
+
 	/**
 	 * This function compares the elements of two Example objects and returns an
 	 * integer indicating their relative order.
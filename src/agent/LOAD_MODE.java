@@ -0,0 +1,12 @@
+package agent;
+
+/**
+ * Enumeration class called 'LOAD_MODE' with two possible values: 'DISTINCT'
+ * and 'WEIGHTED'. It specifies how the transactions of a table are loaded:
+ * 'DISTINCT' runs a SELECT DISTINCT and every example has weight 1, while
+ * 'WEIGHTED' runs a GROUP BY on the loaded columns and every example keeps
+ * the number of rows it stands for as its weight.
+ */
+public enum LOAD_MODE {
+	DISTINCT, WEIGHTED
+}
@@ -0,0 +1,163 @@
+package agent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The LoadRequest class describes which part of a database table has to be
+ * loaded: the name of the table, the columns to project and the filter on the
+ * rows. Only the data that is actually clustered is moved from the database.
+ */
+public class LoadRequest {
+	private String tableName;
+	private List<String> columns;
+	private QueryFilter filter;
+	private LOAD_MODE mode = LOAD_MODE.DISTINCT;
+	private String watermarkColumn;
+	/** Number of buckets of each hashed column, by case-insensitive name */
+	private TreeMap<String, Integer> hashBuckets = new TreeMap<String, Integer>(String.CASE_INSENSITIVE_ORDER);
+
+	/**
+	 * Constructor for the 'LoadRequest' class that loads every supported column
+	 * and every row of the table.
+	 *
+	 * @param tableName name of the table which contains the data
+	 */
+	public LoadRequest(String tableName) {
+		this(tableName, null, null);
+	}
+
+	/**
+	 * Constructor for the 'LoadRequest' class.
+	 *
+	 * @param tableName name of the table which contains the data
+	 * @param columns   names of the columns to load, null or empty to load every
+	 *                  supported column
+	 * @param filter    predicates the rows must satisfy, null to load every row
+	 */
+	public LoadRequest(String tableName, List<String> columns, QueryFilter filter) {
+		this.tableName = tableName;
+		this.columns = columns == null ? new ArrayList<String>() : columns;
+		this.filter = filter == null ? new QueryFilter() : filter;
+	}
+
+	/**
+	 * The function returns the name of the table.
+	 *
+	 * @return the value of the variable 'tableName'.
+	 */
+	public String getTableName() {
+		return tableName;
+	}
+
+	/**
+	 * The function returns the names of the projected columns.
+	 *
+	 * @return the list of column names, empty if every column is loaded.
+	 */
+	public List<String> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * The function returns the filter on the rows.
+	 *
+	 * @return the 'QueryFilter' of the request, never null.
+	 */
+	public QueryFilter getFilter() {
+		return filter;
+	}
+
+	/**
+	 * The function returns how the transactions are loaded.
+	 *
+	 * @return the 'LOAD_MODE' of the request, DISTINCT by default.
+	 */
+	public LOAD_MODE getMode() {
+		return mode;
+	}
+
+	/**
+	 * The function sets how the transactions are loaded.
+	 *
+	 * @param mode DISTINCT to load the distinct rows, WEIGHTED to load the rows
+	 *             grouped with their number of occurrences.
+	 */
+	public void setMode(LOAD_MODE mode) {
+		this.mode = mode;
+	}
+
+	/**
+	 * The function returns the watermark column of the table, an auto-increment
+	 * id or a timestamp which grows with the inserted rows.
+	 *
+	 * @return the name of the watermark column, null if the data cannot be
+	 *         reloaded incrementally.
+	 */
+	public String getWatermarkColumn() {
+		return watermarkColumn;
+	}
+
+	/**
+	 * The function sets the watermark column of the table. The maximum value of
+	 * the column is remembered when the data is loaded, so a reload only fetches
+	 * the rows with a greater value.
+	 *
+	 * @param watermarkColumn the name of the watermark column, or null
+	 */
+	public void setWatermarkColumn(String watermarkColumn) {
+		this.watermarkColumn = watermarkColumn;
+	}
+
+	/**
+	 * The function returns the number of buckets the values of a column are
+	 * hashed into when they are loaded.
+	 *
+	 * @param column the name of a column
+	 * @return the number of buckets, or 0 if the column is not hashed.
+	 */
+	public int getHashBuckets(String column) {
+		Integer buckets = hashBuckets.get(column);
+		return buckets == null ? 0 : buckets;
+	}
+
+	/**
+	 * The function returns the hashed columns with their number of buckets.
+	 *
+	 * @return the map of the hashed columns, empty if no column is hashed.
+	 */
+	public Map<String, Integer> getHashBuckets() {
+		return hashBuckets;
+	}
+
+	/**
+	 * The function hashes the values of a non-numeric column into a fixed number
+	 * of buckets when the data is loaded (see 'HashedDiscreteAttribute'), so the
+	 * distinct values of the column are never loaded. A numeric column is not
+	 * hashed.
+	 *
+	 * @param column  the name of the column
+	 * @param buckets the number of buckets, at least 1
+	 * @throws IllegalArgumentException if the number of buckets is not positive
+	 */
+	public void setHashBuckets(String column, int buckets) {
+		if (buckets < 1) {
+			throw new IllegalArgumentException("The number of buckets must be positive: " + buckets);
+		}
+		hashBuckets.put(column, buckets);
+	}
+
+	/**
+	 * This function returns a string representation of the request.
+	 *
+	 * @return the table name followed by the columns and the filter.
+	 */
+	@Override
+	public String toString() {
+		return tableName + (columns.isEmpty() ? "" : columns.toString())
+				+ (filter.isEmpty() ? "" : " WHERE " + filter) + " " + mode
+				+ (hashBuckets.isEmpty() ? "" : " HASH " + hashBuckets);
+	}
+}
@@ -0,0 +1,152 @@
+package agent;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The QueryFilter class models a conjunction of row predicates (column,
+ * operator, value) that is pushed down to the database as the WHERE clause of
+ * a 'PreparedStatement'. Values are never concatenated into the SQL text, they
+ * are always bound as statement parameters.
+ */
+public class QueryFilter {
+	/** The comparison operators that can be used in a predicate */
+	private static final List<String> OPERATORS = Arrays.asList("=", "<>", "!=", "<", "<=", ">", ">=", "LIKE");
+
+	/**
+	 * The "Predicate" class represents a single condition of the filter. It is an
+	 * inner class of 'QueryFilter'.
+	 */
+	private class Predicate {
+		private String column;
+		private String operator;
+		private Object value;
+
+		/**
+		 * Constructor for the inner class 'Predicate'.
+		 *
+		 * @param column   name of the column compared
+		 * @param operator comparison operator
+		 * @param value    value bound to the statement parameter
+		 */
+		Predicate(String column, String operator, Object value) {
+			this.column = column;
+			this.operator = operator;
+			this.value = value;
+		}
+	}
+
+	private List<Predicate> predicates = new ArrayList<Predicate>();
+
+	/**
+	 * This function checks if the given operator can be used in a predicate.
+	 *
+	 * @param operator the comparison operator
+	 * @return true if the operator is supported, false otherwise.
+	 */
+	public static boolean isSupportedOperator(String operator) {
+		return operator != null && OPERATORS.contains(operator.toUpperCase());
+	}
+
+	/**
+	 * This function adds the predicate 'column operator ?' to the filter, the
+	 * value is bound to the parameter when the statement is prepared.
+	 *
+	 * @param column   name of the column compared
+	 * @param operator comparison operator, one of =, &lt;&gt;, !=, &lt;, &lt;=,
+	 *                 &gt;, &gt;=, LIKE
+	 * @param value    the value the column is compared with
+	 */
+	public void add(String column, String operator, Object value) {
+		if (!isSupportedOperator(operator)) {
+			throw new IllegalArgumentException("Unsupported operator: " + operator);
+		}
+		predicates.add(new Predicate(column, operator.toUpperCase(), value));
+	}
+
+	/**
+	 * This function returns a new filter containing the predicates of this filter
+	 * and the given predicate. The current filter is not modified.
+	 *
+	 * @param column   name of the column compared
+	 * @param operator comparison operator
+	 * @param value    the value the column is compared with
+	 * @return a new 'QueryFilter' object.
+	 */
+	public QueryFilter and(String column, String operator, Object value) {
+		QueryFilter filter = new QueryFilter();
+		filter.predicates.addAll(predicates);
+		filter.add(column, operator, value);
+		return filter;
+	}
+
+	/**
+	 * This function checks if the filter has no predicates.
+	 *
+	 * @return true if the filter is empty, false otherwise.
+	 */
+	public boolean isEmpty() {
+		return predicates.isEmpty();
+	}
+
+	/**
+	 * This function builds the WHERE clause of the filter, with a '?' placeholder
+	 * for each value. Every column must exist in the table schema, otherwise the
+	 * column name could be used to inject SQL.
+	 *
+	 * @param schema the schema of the table which is being filtered
+	 * @return the WHERE clause (starting with a blank) or an empty string if the
+	 *         filter has no predicates.
+	 * @throws SQLException if a column is not found in the table
+	 */
+	public String toWhereClause(TableSchema schema) throws SQLException {
+		String str = "";
+		for (Predicate p : predicates) {
+			if (!schema.hasColumn(p.column)) {
+				throw new SQLException("Unknown column in filter: " + p.column);
+			}
+			str += (str.isEmpty() ? " WHERE " : " AND ") + p.column + " " + p.operator + " ?";
+		}
+		return str;
+	}
+
+	/**
+	 * This function binds the values of the filter to the parameters of the
+	 * statement, in the same order they appear in 'toWhereClause'.
+	 *
+	 * @param statement  the prepared statement
+	 * @param firstIndex index of the first parameter of the filter in the
+	 *                   statement (parameters start from 1)
+	 * @return the index of the next free parameter.
+	 * @throws SQLException
+	 */
+	public int bind(PreparedStatement statement, int firstIndex) throws SQLException {
+		int i = firstIndex;
+		for (Predicate p : predicates) {
+			Object value = p.value;
+			if (value instanceof java.util.Date && !(value instanceof java.sql.Date)
+					&& !(value instanceof java.sql.Timestamp)) {
+				value = new java.sql.Timestamp(((java.util.Date) value).getTime());
+			}
+			statement.setObject(i++, value);
+		}
+		return i;
+	}
+
+	/**
+	 * This function returns a string representation of the filter.
+	 *
+	 * @return the predicates of the filter separated by AND.
+	 */
+	@Override
+	public String toString() {
+		String str = "";
+		for (Predicate p : predicates) {
+			str += (str.isEmpty() ? "" : " AND ") + p.column + " " + p.operator + " " + p.value;
+		}
+		return str;
+	}
+}
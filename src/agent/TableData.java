@@ -2,9 +2,9 @@ package agent;
 
 import java.math.BigDecimal;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -46,12 +46,33 @@ public class TableData {
 	 * @throws SQLException
 	 */
 	public List<Example> getDistinctTransactions(String table) throws SQLException, EmptySetException {
+		return getDistinctTransactions(new TableSchema(db, table), table, new QueryFilter());
+	}
+
+	/**
+	 * This Java function retrieves the distinct transactions of a table restricted
+	 * to the columns of 'tableSchema' and to the rows which satisfy 'filter'. The
+	 * projection and the filter are executed by the database with a
+	 * 'PreparedStatement', so only the requested data is transferred.
+	 * 
+	 * @param tableSchema the columns of the table to retrieve
+	 * @param table       The name of the database table from which to retrieve
+	 *                    distinct transactions.
+	 * @param filter      predicates the rows must satisfy
+	 * @return a List of Example objects, with the values in the order of the
+	 *         columns of 'tableSchema'.
+	 * @throws SQLException
+	 * @throws EmptySetException
+	 */
+	public List<Example> getDistinctTransactions(TableSchema tableSchema, String table, QueryFilter filter)
+			throws SQLException, EmptySetException {
 		List<Example> distinctTransactions = new ArrayList<Example>();
-		TableSchema tableSchema = new TableSchema(db, table);
 
 		Connection con = db.getConnection();
-		Statement s = con.createStatement();
-		ResultSet r = s.executeQuery("SELECT DISTINCT * FROM " + table);
+		PreparedStatement s = con.prepareStatement(
+				"SELECT DISTINCT " + selectList(tableSchema) + " FROM " + table + filter.toWhereClause(tableSchema));
+		filter.bind(s, 1);
+		ResultSet r = s.executeQuery();
 
 		if (!r.next()) {
 			// ResultSet empty exception
@@ -77,6 +98,57 @@ public class TableData {
 		return distinctTransactions;
 	}
 
+	/**
+	 * This Java function retrieves the transactions of a table grouped by the
+	 * columns of 'tableSchema', among the rows which satisfy 'filter'. Each
+	 * returned Example has as weight the number of rows of the group, so the
+	 * duplicated rows are collapsed by the database without losing how often
+	 * they occur.
+	 * 
+	 * @param tableSchema the columns of the table to retrieve
+	 * @param table       The name of the database table.
+	 * @param filter      predicates the rows must satisfy
+	 * @return a List of weighted Example objects, with the values in the order of
+	 *         the columns of 'tableSchema'.
+	 * @throws SQLException
+	 * @throws EmptySetException
+	 */
+	public List<Example> getWeightedTransactions(TableSchema tableSchema, String table, QueryFilter filter)
+			throws SQLException, EmptySetException {
+		List<Example> weightedTransactions = new ArrayList<Example>();
+		String columns = selectList(tableSchema);
+
+		Connection con = db.getConnection();
+		PreparedStatement s = con.prepareStatement("SELECT " + columns + ", COUNT(*) FROM " + table
+				+ filter.toWhereClause(tableSchema) + " GROUP BY " + columns);
+		filter.bind(s, 1);
+		ResultSet r = s.executeQuery();
+
+		if (!r.next()) {
+			// ResultSet empty exception
+			throw new EmptySetException("No transactions found in the table.");
+		} else {
+			do {
+				Example example = new Example();
+				for (int i = 0; i < tableSchema.getNumberOfAttributes(); i++) {
+					TableSchema.Column column = tableSchema.getColumn(i);
+					if (column.isNumber()) {
+						example.add(new BigDecimal(Float.toString(r.getFloat(i + 1))).doubleValue());
+					} else {
+						example.add(r.getString(i + 1));
+					}
+				}
+				// The count is the column after the grouped ones
+				example.setWeight(r.getInt(tableSchema.getNumberOfAttributes() + 1));
+				weightedTransactions.add(example);
+			} while (r.next());
+		}
+		r.close();
+		s.close();
+
+		return weightedTransactions;
+	}
+
 	/**
 	 * This Java function retrieves distinct values from a specified column in a
 	 * database table and returns them in a sorted set.
@@ -89,16 +161,46 @@ public class TableData {
 	 * @throws SQLException
 	 */
 	public Set<Object> getDistinctColumnValues(String table, Column column) throws SQLException {
+		return getDistinctColumnValues(new TableSchema(db, table), table, column, new QueryFilter());
+	}
+
+	/**
+	 * This Java function retrieves the distinct values of a column among the rows
+	 * of the table which satisfy 'filter'. The strings are distinct as binary
+	 * strings (see 'DbAccess.binary'), so values which only differ by the case or
+	 * the trailing spaces are all kept, and NULL is not a value.
+	 * 
+	 * @param tableSchema the schema of the table, used to check the filter
+	 * @param table       The name of the database table.
+	 * @param column      The column whose distinct values are to be retrieved.
+	 * @param filter      predicates the rows must satisfy
+	 * @return A sorted set of distinct values of the column.
+	 * @throws SQLException
+	 */
+	public Set<Object> getDistinctColumnValues(TableSchema tableSchema, String table, Column column,
+			QueryFilter filter) throws SQLException {
 		Set<Object> distinctValues = new TreeSet<>();
 
 		Connection con = db.getConnection();
-		Statement s = con.createStatement();
-		ResultSet r = s.executeQuery("SELECT DISTINCT " + column.getColumnName() + " FROM " + table + " ORDER BY "
-				+ column.getColumnName() + " ASC");
+		String name = column.getColumnName();
+		String query;
+		if (column.isNumber()) {
+			query = "SELECT DISTINCT " + name + " FROM " + table + filter.toWhereClause(tableSchema) + " ORDER BY "
+					+ name + " ASC";
+		} else {
+			// The values of a group are identical, MIN returns their common value
+			query = "SELECT MIN(" + name + ") AS " + name + " FROM " + table + filter.toWhereClause(tableSchema)
+					+ " GROUP BY " + db.binary(name);
+		}
+		PreparedStatement s = con.prepareStatement(query);
+		filter.bind(s, 1);
+		ResultSet r = s.executeQuery();
 
 		while (r.next()) {
-			Object value = r.getObject(column.getColumnName());
-			distinctValues.add(value);
+			Object value = r.getObject(name);
+			if (value != null) {
+				distinctValues.add(value);
+			}
 		}
 		r.close();
 		s.close();
@@ -122,9 +224,26 @@ public class TableData {
 	 */
 	public Object getAggregateColumnValue(String table, Column column, QUERY_TYPE aggregate)
 			throws SQLException, NoValueException {
+		return getAggregateColumnValue(new TableSchema(db, table), table, column, aggregate, new QueryFilter());
+	}
+
+	/**
+	 * This function retrieves the minimum or maximum value of a column among the
+	 * rows of the table which satisfy 'filter'.
+	 * 
+	 * @param tableSchema the schema of the table, used to check the filter
+	 * @param table       The name of the table in the database.
+	 * @param column      The column for which the aggregate value is calculated.
+	 * @param aggregate   the type of aggregate function (either MIN or MAX)
+	 * @param filter      predicates the rows must satisfy
+	 * @return the value of the aggregate column as a double.
+	 * @throws SQLException
+	 * @throws NoValueException
+	 */
+	public Object getAggregateColumnValue(TableSchema tableSchema, String table, Column column,
+			QUERY_TYPE aggregate, QueryFilter filter) throws SQLException, NoValueException {
 		Object result = null;
 		Connection con = db.getConnection();
-		Statement s = con.createStatement();
 		String query = "";
 
 		if (aggregate == QUERY_TYPE.MIN) {
@@ -133,7 +252,9 @@ public class TableData {
 			query = "SELECT MAX(" + column.getColumnName() + ") AS " + column.getColumnName() + " FROM " + table;
 		}
 
-		ResultSet r = s.executeQuery(query);
+		PreparedStatement s = con.prepareStatement(query + filter.toWhereClause(tableSchema));
+		filter.bind(s, 1);
+		ResultSet r = s.executeQuery();
 
 		if (r.next()) {
 			// result = r.getObject(column.getColumnName());
@@ -153,4 +274,53 @@ public class TableData {
 
 		return result;
 	}
+
+	/**
+	 * This function retrieves the maximum value of a column, of any type, among
+	 * the rows of the table which satisfy 'filter'. It is used to read the
+	 * watermark (an auto-increment id or a timestamp) of the loaded rows.
+	 * 
+	 * @param tableSchema the schema of the table, used to check the column
+	 * @param table       The name of the table in the database.
+	 * @param columnName  The name of the column.
+	 * @param filter      predicates the rows must satisfy
+	 * @return the maximum value as returned by the driver, or null if no row
+	 *         satisfies the filter.
+	 * @throws SQLException
+	 */
+	public Object getMaxColumnValue(TableSchema tableSchema, String table, String columnName, QueryFilter filter)
+			throws SQLException {
+		if (!tableSchema.hasColumn(columnName)) {
+			throw new SQLException("Unknown column: " + columnName);
+		}
+		Connection con = db.getConnection();
+		PreparedStatement s = con.prepareStatement(
+				"SELECT MAX(" + columnName + ") FROM " + table + filter.toWhereClause(tableSchema));
+		filter.bind(s, 1);
+		ResultSet r = s.executeQuery();
+
+		Object result = null;
+		if (r.next()) {
+			result = r.getObject(1);
+		}
+		r.close();
+		s.close();
+
+		return result;
+	}
+
+	/**
+	 * This function returns the names of the columns of the schema separated by
+	 * commas, to be used as the select list of a query.
+	 * 
+	 * @param tableSchema the columns to select
+	 * @return the select list.
+	 */
+	private String selectList(TableSchema tableSchema) {
+		String str = "";
+		for (int i = 0; i < tableSchema.getNumberOfAttributes(); i++) {
+			str += (i > 0 ? ", " : "") + tableSchema.getColumn(i).getColumnName();
+		}
+		return str;
+	}
 }
\ No newline at end of file
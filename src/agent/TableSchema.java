@@ -7,6 +7,8 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * The TableSchema class retrieves and stores the schema information of a
@@ -68,6 +70,7 @@ public class TableSchema {
 	}
 
 	private List<Column> tableSchema = new ArrayList<Column>();
+	private Set<String> tableColumns = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
 
 	/**
 	 * The constructor for the TableSchema class that takes in a DbAccess
@@ -86,6 +89,22 @@ public class TableSchema {
 	 * @throws SQLException
 	 */
 	public TableSchema(DbAccess db, String tableName) throws SQLException {
+		this(db, tableName, null);
+	}
+
+	/**
+	 * The constructor for the TableSchema class that only keeps the given columns
+	 * of the table, in the given order. It works as the constructor
+	 * 'TableSchema(DbAccess, String)', but a requested column which is not found
+	 * in the table or whose type is not supported makes the constructor fail.
+	 * 
+	 * @param db        the database
+	 * @param tableName name of the table which contain the data
+	 * @param columns   names of the columns to keep, null or empty to keep every
+	 *                  supported column
+	 * @throws SQLException
+	 */
+	public TableSchema(DbAccess db, String tableName, List<String> columns) throws SQLException {
 		this.db = db;
 		HashMap<String, String> mapSQL_JAVATypes = new HashMap<String, String>();
 		// http://java.sun.com/j2se/1.3/docs/guide/jdbc/getstart/mapping.html
@@ -98,17 +117,53 @@ public class TableSchema {
 		mapSQL_JAVATypes.put("LONG", "number");
 		mapSQL_JAVATypes.put("FLOAT", "number");
 		mapSQL_JAVATypes.put("DOUBLE", "number");
+		// Standard SQL names, as reported by the embedded databases
+		mapSQL_JAVATypes.put("CHARACTER", "string");
+		mapSQL_JAVATypes.put("CHARACTER VARYING", "string");
+		mapSQL_JAVATypes.put("VARCHAR_IGNORECASE", "string");
+		mapSQL_JAVATypes.put("INTEGER", "number");
+		mapSQL_JAVATypes.put("DOUBLE PRECISION", "number");
 
 		Connection con = db.getConnection();
 		DatabaseMetaData meta = con.getMetaData();
 		ResultSet res = meta.getColumns(null, null, tableName, null);
 
+		List<Column> supported = new ArrayList<Column>();
 		while (res.next()) {
+			tableColumns.add(res.getString("COLUMN_NAME"));
 			if (mapSQL_JAVATypes.containsKey(res.getString("TYPE_NAME")))
-				tableSchema.add(
+				supported.add(
 						new Column(res.getString("COLUMN_NAME"), mapSQL_JAVATypes.get(res.getString("TYPE_NAME"))));
 		}
 		res.close();
+
+		if (columns == null || columns.isEmpty()) {
+			tableSchema.addAll(supported);
+		} else {
+			for (String name : columns) {
+				Column column = null;
+				for (Column c : supported) {
+					if (c.getColumnName().equalsIgnoreCase(name)) {
+						column = c;
+					}
+				}
+				if (column == null) {
+					throw new SQLException("Column not found or not supported: " + name);
+				}
+				tableSchema.add(column);
+			}
+		}
+	}
+
+	/**
+	 * This function checks if the table has a column with the given name, of any
+	 * type, ignoring the case.
+	 * 
+	 * @param name name of the column
+	 * @return true if the column exists in the table, false otherwise.
+	 */
+	public boolean hasColumn(String name) {
+		return tableColumns.contains(name);
 	}
 
 	/**
@@ -7,6 +7,7 @@ import java.io.Serializable;
  * field, as well as methods for getting the name and index.
  */
 public abstract class Attribute implements Serializable{
+	private static final long serialVersionUID = -1011201825379454272L;
 	private String name;
 	private int index;
 
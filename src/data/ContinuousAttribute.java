@@ -7,6 +7,7 @@ package data;
  * corresponds to a numeric attribute
  */
 public class ContinuousAttribute extends Attribute {
+	private static final long serialVersionUID = -6848547500310211030L;
 	private double max;
 	private double min;
 
@@ -24,6 +25,43 @@ public class ContinuousAttribute extends Attribute {
 		this.max = max;
 	}
 
+	/**
+	 * The function returns the minimum value of the attribute.
+	 * 
+	 * @return the value of the variable 'min'.
+	 */
+	public double getMin() {
+		return min;
+	}
+
+	/**
+	 * The function returns the maximum value of the attribute.
+	 * 
+	 * @return the value of the variable 'max'.
+	 */
+	public double getMax() {
+		return max;
+	}
+
+	/**
+	 * This function extends the range of the attribute so that it includes the
+	 * given value.
+	 * 
+	 * @param v a value of the attribute
+	 * @return true if the minimum or the maximum value has changed, so the
+	 *         scaled values of the attribute have changed too.
+	 */
+	public boolean extendRange(double v) {
+		if (v < min) {
+			min = v;
+			return true;
+		} else if (v > max) {
+			max = v;
+			return true;
+		}
+		return false;
+	}
+
 	/**
 	 * The function returns a scaled value of a given input based on the minimum and
 	 * maximum values. The normalisation has the interval [0,1] as its condomain.
@@ -6,6 +6,7 @@ package data;
  * attribute - numeric value >
  */
 public class ContinuousItem extends Item {
+	private static final long serialVersionUID = -205954592665306187L;
 
 	/**
 	 * This is a constructor for the 'ContinuousItem' class. Creates a new 'Item'
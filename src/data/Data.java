@@ -1,24 +1,47 @@
 package data;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.SQLException;
 import java.util.*;
 
 import agent.DbAccess;
 import agent.Example;
+import agent.LOAD_MODE;
+import agent.LoadRequest;
+import agent.QueryFilter;
 import agent.QUERY_TYPE;
 import agent.TableData;
 import agent.TableSchema;
 import exceptions.EmptySetException;
 import exceptions.NoValueException;
 import exceptions.OutOfRangeSampleSize;
+import metrics.Metrics;
+import metrics.PhaseEvent;
 
 /**
- * The Data class models the set of transactions (or tuples)
+ * The Data class models the set of transactions (or tuples). The examples are
+ * stored by column: an array of values for each continuous attribute and an
+ * array of dictionary codes (see 'DiscreteAttribute.getCode') for each
+ * discrete attribute.
  */
 public class Data {
-	private List<Example> data;
+	/** Values of the continuous attributes, null for the discrete ones */
+	private double[][] values;
+	/** Codes of the values of the discrete attributes, null for the continuous ones */
+	private int[][] codes;
+	private int[] weights;
 	private int numberOfExamples;
 	private List<Attribute> attributeSet;
+	private LoadRequest request;
+	private Object watermark;
+	private Map<Example, Integer> exampleIndex;
+	/** The digest of the content, valid if 'versionValid' is true */
+	private long version;
+	private boolean versionValid;
 
 	/**
 	 * Constructor for the Data class.
@@ -39,34 +62,520 @@ public class Data {
 	 * @throws EmptySetException
 	 */
 	public Data(String tableName, DbAccess db) throws SQLException, NoValueException, EmptySetException {
-		TableSchema table = new TableSchema(db, tableName);
+		this(new LoadRequest(tableName), db);
+	}
+
+	/**
+	 * Constructor for the Data class that only loads the columns and the rows
+	 * described by the request. The projection and the filter are executed by the
+	 * database, the minimum and maximum values of the continuous attributes and
+	 * the values of the discrete attributes are computed on the filtered rows. If
+	 * the mode of the request is WEIGHTED, the rows are grouped by the database
+	 * and each example keeps the number of rows of its group as weight. If the
+	 * request has a watermark column, its maximum value is read first and only
+	 * the rows up to it are loaded, so that 'reload' can fetch the newer ones.
+	 * The values of the hashed columns of the request are replaced by the labels
+	 * of their buckets (see 'HashedDiscreteAttribute'): rows which only differ by
+	 * values in the same buckets become identical examples. The rows with a NULL
+	 * string are not loaded, NULL is not a value of the discrete attributes.
+	 * 
+	 * @param request the table, the columns and the filter to load.
+	 * @param db      database access object which owns the table.
+	 * @throws SQLException             if a column of the request, hashed or not,
+	 *                                  is not a supported column of the table,
+	 *                                  or a hashed column is numeric
+	 * @throws NoValueException
+	 * @throws EmptySetException
+	 */
+	public Data(LoadRequest request, DbAccess db) throws SQLException, NoValueException, EmptySetException {
+		this.request = request;
+		String tableName = request.getTableName();
+		QueryFilter filter = request.getFilter();
+		long start = System.nanoTime();
+		PhaseEvent event = new PhaseEvent();
+		event.begin();
+		TableSchema table = new TableSchema(db, tableName, request.getColumns());
+		checkHashedColumns(table, request.getHashBuckets());
 		TableData tAttribute = new TableData(db);
+		Metrics.timer("load", "schema").recordSince(start);
+		event.commit("load", "schema", tableName, 0, 0, table.getNumberOfAttributes());
+
+		start = System.nanoTime();
+		event = new PhaseEvent();
+		event.begin();
+		if (request.getWatermarkColumn() != null) {
+			watermark = tAttribute.getMaxColumnValue(table, tableName, request.getWatermarkColumn(), filter);
+			if (watermark == null) {
+				throw new EmptySetException("No transactions found in the table.");
+			}
+			filter = filter.and(request.getWatermarkColumn(), "<=", watermark);
+		}
 
 		// Fill all distinct data examples
-		data = tAttribute.getDistinctTransactions(tableName);
+		List<Example> data;
+		if (request.getMode() == LOAD_MODE.WEIGHTED) {
+			data = tAttribute.getWeightedTransactions(table, tableName, filter);
+		} else {
+			data = tAttribute.getDistinctTransactions(table, tableName, filter);
+		}
+		removeNullValues(data, table.getNumberOfAttributes());
+		if (data.isEmpty()) {
+			throw new EmptySetException("No transactions without NULL strings found in the table.");
+		}
+		Metrics.timer("load", "fetch").recordSince(start);
+		event.commit("load", "fetch", tableName, 0, data.size(), table.getNumberOfAttributes());
+
+		// explanatory Set
+		attributeSet = loadAttributeSchema(table, tAttribute, tableName, filter, request.getHashBuckets());
+		hashValues(data);
+
+		start = System.nanoTime();
+		event = new PhaseEvent();
+		event.begin();
 
 		// number of Examples:
-		numberOfExamples = data.size();
+		numberOfExamples = 0;
+		values = new double[getNumberOfAttributes()][];
+		codes = new int[getNumberOfAttributes()][];
+		weights = new int[0];
+		ensureCapacity(data.size());
+		for (Example example : data) {
+			addExample(example);
+		}
+		Metrics.timer("load", "build").recordSince(start);
+		event.commit("load", "build", tableName, 0, numberOfExamples, getNumberOfAttributes());
+	}
 
-		// explanatory Set
+	/**
+	 * Constructor for the Data class from examples stored by column, used to load
+	 * a snapshot.
+	 * 
+	 * @param tableName        name of the table the data comes from
+	 * @param attributeSet     the attributes, in the order of their index
+	 * @param values           the values of each continuous attribute
+	 * @param codes            the codes of each discrete attribute
+	 * @param weights          the weight of each example
+	 * @param numberOfExamples the number of examples
+	 */
+	Data(String tableName, List<Attribute> attributeSet, double[][] values, int[][] codes, int[] weights,
+			int numberOfExamples) {
+		this.request = new LoadRequest(tableName);
+		this.attributeSet = attributeSet;
+		this.values = values;
+		this.codes = codes;
+		this.weights = weights;
+		this.numberOfExamples = numberOfExamples;
+	}
+
+	/**
+	 * This function builds a Data object from examples stored by column, without
+	 * accessing the database, for example to cluster synthetic data. Every array
+	 * of values or codes of an attribute must hold at least numberOfExamples
+	 * elements, the codes must be valid for the dictionary of their attribute and
+	 * the values of a continuous attribute should lie within its range.
+	 * 
+	 * @param tableName        name given to the data
+	 * @param attributeSet     the attributes, in the order of their index
+	 * @param values           the values of each continuous attribute, indexed by
+	 *                         the attribute
+	 * @param codes            the codes of each discrete attribute, indexed by the
+	 *                         attribute
+	 * @param weights          the weight of each example
+	 * @param numberOfExamples the number of examples
+	 * @return the data.
+	 * @throws IllegalArgumentException if a column is missing or too short
+	 */
+	public static Data fromColumns(String tableName, List<Attribute> attributeSet, double[][] values, int[][] codes,
+			int[] weights, int numberOfExamples) {
+		if (weights.length < numberOfExamples) {
+			throw new IllegalArgumentException("Missing weights");
+		}
+		for (Attribute attribute : attributeSet) {
+			int index = attribute.getIndex();
+			if (attribute instanceof ContinuousAttribute
+					? values[index] == null || values[index].length < numberOfExamples
+					: codes[index] == null || codes[index].length < numberOfExamples) {
+				throw new IllegalArgumentException("Missing values of " + attribute.getName());
+			}
+		}
+		return new Data(tableName, attributeSet, values, codes, weights, numberOfExamples);
+	}
+
+	/**
+	 * This function loads the data saved in a snapshot file by 'saveSnapshot',
+	 * without accessing the database. The file is memory mapped and its
+	 * checksums are verified. The loaded data cannot be reloaded incrementally.
+	 * 
+	 * @param fileName the path name of the snapshot file
+	 * @return the data saved in the file.
+	 * @throws IOException if the file cannot be read or is corrupted
+	 */
+	public static Data loadSnapshot(String fileName) throws IOException {
+		return DataSnapshot.read(fileName);
+	}
 
-		attributeSet = new LinkedList<Attribute>();
+	/**
+	 * This function saves the schema, the attributes and the columns of the data
+	 * to a compact binary snapshot file, which can be loaded by 'loadSnapshot'
+	 * after a restart instead of reading the table again.
+	 * 
+	 * @param fileName the path name of the snapshot file
+	 * @throws IOException
+	 */
+	public void saveSnapshot(String fileName) throws IOException {
+		DataSnapshot.write(this, fileName);
+	}
+
+	/**
+	 * This function builds the attributes of the columns of a table schema,
+	 * without loading the examples. A numeric column becomes a
+	 * ContinuousAttribute with the minimum and maximum values of the column, any
+	 * other column becomes a DiscreteAttribute with the distinct values of the
+	 * column. The values are computed on the rows selected by the filter.
+	 * 
+	 * @param table      the columns of the table
+	 * @param tAttribute access to the data of the table
+	 * @param tableName  name of the table
+	 * @param filter     predicates the rows must satisfy
+	 * @return the list of attributes, in the order of the schema.
+	 * @throws SQLException
+	 * @throws NoValueException
+	 */
+	public static List<Attribute> loadAttributeSchema(TableSchema table, TableData tAttribute, String tableName,
+			QueryFilter filter) throws SQLException, NoValueException {
+		return loadAttributeSchema(table, tAttribute, tableName, filter, new HashMap<String, Integer>());
+	}
+
+	/**
+	 * This function builds the attributes of the columns of a table schema, as
+	 * 'loadAttributeSchema' without buckets, except that a non-numeric column
+	 * with a number of buckets becomes a HashedDiscreteAttribute: its distinct
+	 * values are not read from the database.
+	 * 
+	 * @param table       the columns of the table
+	 * @param tAttribute  access to the data of the table
+	 * @param tableName   name of the table
+	 * @param filter      predicates the rows must satisfy
+	 * @param hashBuckets the number of buckets of the hashed columns, by name
+	 *                    (see 'LoadRequest.getHashBuckets')
+	 * @return the list of attributes, in the order of the schema.
+	 * @throws SQLException
+	 * @throws NoValueException
+	 */
+	public static List<Attribute> loadAttributeSchema(TableSchema table, TableData tAttribute, String tableName,
+			QueryFilter filter, Map<String, Integer> hashBuckets) throws SQLException, NoValueException {
+		List<Attribute> attributeSet = new LinkedList<Attribute>();
 
 		// If there is a digit: Continuous Attribute:
 		for (int i = 0; i < table.getNumberOfAttributes(); i++) {
+			long start = System.nanoTime();
+			PhaseEvent event = new PhaseEvent();
+			event.begin();
 			if (table.getColumn(i).isNumber()) {
 				// Casting the Object values into Double
-				double min = (double) tAttribute.getAggregateColumnValue(tableName, table.getColumn(i), QUERY_TYPE.MIN);
-				double max = (double) tAttribute.getAggregateColumnValue(tableName, table.getColumn(i), QUERY_TYPE.MAX);
+				double min = (double) tAttribute.getAggregateColumnValue(table, tableName, table.getColumn(i),
+						QUERY_TYPE.MIN, filter);
+				double max = (double) tAttribute.getAggregateColumnValue(table, tableName, table.getColumn(i),
+						QUERY_TYPE.MAX, filter);
 				attributeSet.add(new ContinuousAttribute(table.getColumn(i).getColumnName(), i, min, max));
+				Metrics.timer("load", "minMax").recordSince(start);
+				event.commit("load", "minMax", tableName, 0, 0, table.getNumberOfAttributes());
+			} else if (hashBuckets.containsKey(table.getColumn(i).getColumnName())) {
+				attributeSet.add(new HashedDiscreteAttribute(table.getColumn(i).getColumnName(), i,
+						hashBuckets.get(table.getColumn(i).getColumnName())));
 			} else {
 				// Change the Set into array of Strings to be able to be added as dicrete
 				// attribute
-				Set<Object> stringSet = tAttribute.getDistinctColumnValues(tableName, table.getColumn(i));
+				Set<Object> stringSet = tAttribute.getDistinctColumnValues(table, tableName, table.getColumn(i),
+						filter);
 				String[] stringArray = stringSet.toArray(new String[stringSet.size()]);
 				attributeSet.add(new DiscreteAttribute(table.getColumn(i).getColumnName(), i, stringArray));
+				Metrics.timer("load", "dictionary").recordSince(start);
+				event.commit("load", "dictionary", tableName, 0, 0, table.getNumberOfAttributes());
+			}
+		}
+		return attributeSet;
+	}
+
+	/**
+	 * This function checks that the hashed columns of a request are non-numeric
+	 * columns of the table, so a misspelt or numeric column is reported instead
+	 * of being loaded without hashing.
+	 * 
+	 * @param table       the columns of the table
+	 * @param hashBuckets the number of buckets of the hashed columns, by name
+	 * @throws SQLException if a hashed column is not a supported column of the
+	 *                      table or is numeric
+	 */
+	private static void checkHashedColumns(TableSchema table, Map<String, Integer> hashBuckets) throws SQLException {
+		for (String name : hashBuckets.keySet()) {
+			TableSchema.Column column = null;
+			for (int i = 0; i < table.getNumberOfAttributes(); i++) {
+				if (table.getColumn(i).getColumnName().equals(name)) {
+					column = table.getColumn(i);
+				}
+			}
+			if (column == null) {
+				throw new SQLException("Hashed column not found or not loaded: " + name);
+			} else if (column.isNumber()) {
+				throw new SQLException("A numeric column cannot be hashed: " + name);
+			}
+		}
+	}
+
+	/**
+	 * This function fetches the rows inserted in the table after the data was
+	 * loaded (or last reloaded), that is the rows whose watermark column is
+	 * greater than the remembered watermark, and appends them to the examples. A
+	 * row equal to an existing example is not appended: in WEIGHTED mode its
+	 * weight is added to the example, otherwise it is ignored. The rows with a
+	 * NULL string are not appended, as in the constructor. The range of the
+	 * continuous attributes and the values of the discrete attributes are
+	 * updated with the new rows. The attributes and the columns are not changed
+	 * in place but replaced by updated copies, so the centroids of a clustering
+	 * computed before the reload, which refer to the old attributes, do not
+	 * change.
+	 * 
+	 * @param db database access object which owns the table.
+	 * @return true if the minimum or the maximum value of a continuous attribute
+	 *         has changed: the scaled values, hence the distances, are not the
+	 *         same anymore and a clustering computed before the reload is no
+	 *         longer valid.
+	 * @throws SQLException
+	 */
+	public boolean reload(DbAccess db) throws SQLException {
+		String column = request.getWatermarkColumn();
+		if (column == null) {
+			throw new IllegalStateException("The data has no watermark column");
+		}
+		String tableName = request.getTableName();
+		TableSchema table = new TableSchema(db, tableName, request.getColumns());
+		TableData tAttribute = new TableData(db);
+
+		Object newWatermark = tAttribute.getMaxColumnValue(table, tableName, column, request.getFilter());
+		if (newWatermark == null || newWatermark.equals(watermark)) {
+			return false;
+		}
+		QueryFilter delta = request.getFilter().and(column, ">", watermark).and(column, "<=", newWatermark);
+
+		List<Example> newExamples;
+		try {
+			if (request.getMode() == LOAD_MODE.WEIGHTED) {
+				newExamples = tAttribute.getWeightedTransactions(table, tableName, delta);
+			} else {
+				newExamples = tAttribute.getDistinctTransactions(table, tableName, delta);
+			}
+		} catch (EmptySetException e) {
+			newExamples = new ArrayList<Example>();
+		}
+		removeNullValues(newExamples, table.getNumberOfAttributes());
+		hashValues(newExamples);
+
+		if (exampleIndex == null) {
+			exampleIndex = new TreeMap<Example, Integer>();
+			for (int i = 0; i < numberOfExamples; i++) {
+				exampleIndex.put(getExample(i), i);
+			}
+		}
+
+		// The attributes and the columns are replaced by updated copies, never
+		// changed: a clustering computed before the reload keeps the old ones
+		boolean scalingChanged = false;
+		List<Attribute> newAttributeSet = new ArrayList<Attribute>(attributeSet.size());
+		for (Attribute attribute : attributeSet) {
+			newAttributeSet.add(copyAttribute(attribute));
+		}
+		for (Example example : newExamples) {
+			if (exampleIndex.containsKey(example)) {
+				continue;
+			}
+			for (Attribute attribute : newAttributeSet) {
+				Object value = example.get(attribute.getIndex());
+				if (attribute instanceof ContinuousAttribute) {
+					scalingChanged |= ((ContinuousAttribute) attribute).extendRange((double) value);
+				} else {
+					((DiscreteAttribute) attribute).addValue((String) value);
+				}
+			}
+		}
+
+		// The new values of the discrete attributes change the codes of the others
+		int capacity = numberOfExamples + newExamples.size();
+		double[][] newValues = new double[values.length][];
+		int[][] newCodes = new int[codes.length][];
+		for (Attribute attribute : newAttributeSet) {
+			int i = attribute.getIndex();
+			if (attribute instanceof ContinuousAttribute) {
+				newValues[i] = Arrays.copyOf(values[i], capacity);
+				continue;
+			}
+			newCodes[i] = Arrays.copyOf(codes[i], capacity);
+			String[] oldDictionary = ((DiscreteAttribute) attributeSet.get(i)).getDictionary();
+			if (oldDictionary.length != ((DiscreteAttribute) attribute).getNumberOfDistinctValues()) {
+				for (int j = 0; j < numberOfExamples; j++) {
+					newCodes[i][j] = ((DiscreteAttribute) attribute).getCode(oldDictionary[codes[i][j]]);
+				}
+			}
+		}
+		int[] newWeights = Arrays.copyOf(weights, capacity);
+		synchronized (this) {
+			attributeSet = newAttributeSet;
+			values = newValues;
+			codes = newCodes;
+			weights = newWeights;
+			versionValid = false;
+		}
+
+		for (Example example : newExamples) {
+			Integer index = exampleIndex.get(example);
+			if (index != null) {
+				if (request.getMode() == LOAD_MODE.WEIGHTED) {
+					weights[index] += example.getWeight();
+				}
+				continue;
 			}
+			exampleIndex.put(example, numberOfExamples);
+			addExample(example);
 		}
+		watermark = newWatermark;
+
+		return scalingChanged;
+	}
+
+	/**
+	 * This function copies an attribute, so that the copy can be extended by a
+	 * reload without changing the attribute. A hashed attribute is not copied:
+	 * its values are the labels of its buckets, which are never extended.
+	 * 
+	 * @param attribute the attribute to copy
+	 * @return a new attribute with the same name, index and values.
+	 */
+	private static Attribute copyAttribute(Attribute attribute) {
+		if (attribute instanceof ContinuousAttribute) {
+			ContinuousAttribute continuous = (ContinuousAttribute) attribute;
+			return new ContinuousAttribute(continuous.getName(), continuous.getIndex(), continuous.getMin(),
+					continuous.getMax());
+		} else if (attribute instanceof HashedDiscreteAttribute) {
+			return attribute;
+		}
+		return new DiscreteAttribute(attribute.getName(), attribute.getIndex(),
+				((DiscreteAttribute) attribute).getDictionary());
+	}
+
+	/**
+	 * This function removes the fetched examples which have a NULL value. Only the
+	 * strings can be NULL, the numbers are read as doubles. The rows with a NULL
+	 * string are not clustered, in memory as in the database (see
+	 * 'ClusteringQuery'), so every value of an example has a code in the
+	 * dictionary of its attribute.
+	 * 
+	 * @param examples the examples fetched from the table
+	 * @param columns  the number of values of each example
+	 */
+	private static void removeNullValues(List<Example> examples, int columns) {
+		examples.removeIf(example -> {
+			for (int i = 0; i < columns; i++) {
+				if (example.get(i) == null) {
+					return true;
+				}
+			}
+			return false;
+		});
+	}
+
+	/**
+	 * This function replaces the values of the hashed attributes of fetched
+	 * examples by the labels of their buckets.
+	 * 
+	 * @param examples the examples, with the values of the columns in the order
+	 *                 of the attributes
+	 */
+	private void hashValues(List<Example> examples) {
+		for (Attribute attribute : attributeSet) {
+			if (attribute instanceof HashedDiscreteAttribute) {
+				HashedDiscreteAttribute hashed = (HashedDiscreteAttribute) attribute;
+				int i = attribute.getIndex();
+				for (Example example : examples) {
+					example.set(i, hashed.hash((String) example.get(i)));
+				}
+			}
+		}
+	}
+
+	/**
+	 * This function makes sure the columns can hold the given number of examples
+	 * without being resized.
+	 * 
+	 * @param capacity the number of examples the columns must hold
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity <= weights.length) {
+			return;
+		}
+		capacity = Math.max(capacity, weights.length + weights.length / 2);
+		for (Attribute attribute : attributeSet) {
+			int i = attribute.getIndex();
+			if (attribute instanceof ContinuousAttribute) {
+				values[i] = values[i] == null ? new double[capacity] : Arrays.copyOf(values[i], capacity);
+			} else {
+				codes[i] = codes[i] == null ? new int[capacity] : Arrays.copyOf(codes[i], capacity);
+			}
+		}
+		weights = Arrays.copyOf(weights, capacity);
+	}
+
+	/**
+	 * This function appends an example to the columns, which must have enough
+	 * capacity. The values of its discrete attributes must be values of the
+	 * attributes.
+	 * 
+	 * @param example the example to append, with the values in the order of the
+	 *                attributes
+	 */
+	private void addExample(Example example) {
+		for (Attribute attribute : attributeSet) {
+			int i = attribute.getIndex();
+			if (attribute instanceof ContinuousAttribute) {
+				values[i][numberOfExamples] = (double) example.get(i);
+			} else {
+				codes[i][numberOfExamples] = ((DiscreteAttribute) attribute).getCode((String) example.get(i));
+			}
+		}
+		weights[numberOfExamples] = example.getWeight();
+		numberOfExamples++;
+	}
+
+	/**
+	 * This function builds the example at the given index from the columns.
+	 * 
+	 * @param index the index of the example
+	 * @return an Example with the values of the attributes.
+	 */
+	private Example getExample(int index) {
+		Example example = new Example();
+		for (int i = 0; i < getNumberOfAttributes(); i++) {
+			example.add(getAttributeValue(index, i));
+		}
+		example.setWeight(weights[index]);
+		return example;
+	}
+
+	/**
+	 * The function checks if the data can be reloaded incrementally.
+	 * 
+	 * @return true if the data has been loaded with a watermark column.
+	 */
+	public boolean hasWatermark() {
+		return watermark != null;
+	}
+
+	/**
+	 * The function returns the name of the table the data comes from.
+	 * 
+	 * @return the name of the table.
+	 */
+	public String getTableName() {
+		return request.getTableName();
 	}
 
 	/**
@@ -111,7 +620,55 @@ public class Data {
 	 *         'exampleIndex'.
 	 */
 	public Object getAttributeValue(int exampleIndex, int attributeIndex) {
-		return data.get(exampleIndex).get(attributeIndex);
+		if (values[attributeIndex] != null) {
+			return values[attributeIndex][exampleIndex];
+		}
+		return ((DiscreteAttribute) attributeSet.get(attributeIndex)).getValue(codes[attributeIndex][exampleIndex]);
+	}
+
+	/**
+	 * This function returns the column of the values of a continuous attribute.
+	 * The array may be longer than the number of examples and must not be
+	 * modified.
+	 * 
+	 * @param attributeIndex the index of a continuous attribute
+	 * @return the values of the attribute, by example index.
+	 */
+	public double[] getContinuousColumn(int attributeIndex) {
+		return values[attributeIndex];
+	}
+
+	/**
+	 * This function returns the column of the codes of a discrete attribute. The
+	 * array may be longer than the number of examples and must not be modified.
+	 * 
+	 * @param attributeIndex the index of a discrete attribute
+	 * @return the codes of the values of the attribute, by example index.
+	 */
+	public int[] getDiscreteColumn(int attributeIndex) {
+		return codes[attributeIndex];
+	}
+
+	/**
+	 * This function returns the weight of an example, that is the number of rows
+	 * of the table it stands for.
+	 * 
+	 * @param exampleIndex The index of the example in the data list.
+	 * @return the weight of the example, 1 if the data has not been loaded in
+	 *         WEIGHTED mode.
+	 */
+	public int getWeight(int exampleIndex) {
+		return weights[exampleIndex];
+	}
+
+	/**
+	 * This function returns the weights of the examples. The array may be longer
+	 * than the number of examples and must not be modified.
+	 * 
+	 * @return the weight of each example, by example index.
+	 */
+	int[] getWeights() {
+		return weights;
 	}
 
 	/**
@@ -125,7 +682,7 @@ public class Data {
 	public String toString() {
 		String str = "";
 		for (int i = 0; i < getNumberOfExamples(); i++) {
-			Example example = data.get(i);
+			Example example = getExample(i);
 			str += (i + 1) + ":" + example.toString() + "\n";
 		}
 		return str;
@@ -144,20 +701,105 @@ public class Data {
 	 */
 	public Tuple getItemSet(int index) {
 		Tuple tuple = new Tuple(getNumberOfAttributes());
-		Example example = data.get(index);
 		for (int i = 0; i < getNumberOfAttributes(); i++) {
 			Attribute attribute = attributeSet.get(i);
-			Object value = example.get(i);
 			if (attribute instanceof DiscreteAttribute) {
-				tuple.add(new DiscreteItem((DiscreteAttribute) attribute, (String) value), i);
+				tuple.add(new DiscreteItem((DiscreteAttribute) attribute,
+						((DiscreteAttribute) attribute).getValue(codes[i][index])), i);
 			} else if (attribute instanceof ContinuousAttribute) {
-				tuple.add(new ContinuousItem((ContinuousAttribute) attribute, (double) value), i);
+				tuple.add(new ContinuousItem((ContinuousAttribute) attribute, values[i][index]), i);
 			}
 		}
 
 		return tuple;
 	}
 
+	/**
+	 * The function returns the version of the content of the data: the first 64
+	 * bits of a SHA-256 digest of the attributes, the values and the weights of
+	 * the examples, in order. Data objects with the same version have the same
+	 * content, up to the negligible probability of a collision of the digest, so
+	 * a deterministic clustering of one is valid for the others. The digest is
+	 * computed once and again after a reload.
+	 * 
+	 * @return the digest of the data.
+	 */
+	public synchronized long getVersion() {
+		if (versionValid) {
+			return version;
+		}
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(8 * 1024);
+		buffer.putInt(numberOfExamples).putInt(getNumberOfAttributes());
+		for (Attribute attribute : attributeSet) {
+			updateVersion(buffer, digest, attribute.getName());
+			if (attribute instanceof ContinuousAttribute) {
+				buffer.putDouble(((ContinuousAttribute) attribute).getMin());
+				buffer.putDouble(((ContinuousAttribute) attribute).getMax());
+			} else {
+				String[] dictionary = ((DiscreteAttribute) attribute).getDictionary();
+				buffer.putInt(dictionary.length);
+				for (String value : dictionary) {
+					updateVersion(buffer, digest, value);
+				}
+			}
+			for (int i = 0; i < numberOfExamples; i++) {
+				if (buffer.remaining() < 8) {
+					updateVersion(buffer, digest);
+				}
+				if (attribute instanceof ContinuousAttribute) {
+					buffer.putDouble(values[attribute.getIndex()][i]);
+				} else {
+					buffer.putInt(codes[attribute.getIndex()][i]);
+				}
+			}
+		}
+		for (int i = 0; i < numberOfExamples; i++) {
+			if (buffer.remaining() < 4) {
+				updateVersion(buffer, digest);
+			}
+			buffer.putInt(weights[i]);
+		}
+		updateVersion(buffer, digest);
+		version = ByteBuffer.wrap(digest.digest()).getLong();
+		versionValid = true;
+		return version;
+	}
+
+	/**
+	 * This function adds the content of a buffer to the digest of the version,
+	 * then clears the buffer.
+	 * 
+	 * @param buffer the buffer, in write mode
+	 * @param digest the digest
+	 */
+	private static void updateVersion(ByteBuffer buffer, MessageDigest digest) {
+		buffer.flip();
+		digest.update(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * This function adds the content of a buffer, then the length and the UTF-8
+	 * bytes of a string to the digest of the version, and clears the buffer. The
+	 * length keeps apart strings which only differ by where they are split.
+	 * 
+	 * @param buffer the buffer, in write mode
+	 * @param digest the digest
+	 * @param text   the string
+	 */
+	private static void updateVersion(ByteBuffer buffer, MessageDigest digest, String text) {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		buffer.putInt(bytes.length);
+		updateVersion(buffer, digest);
+		digest.update(bytes);
+	}
+
 	/**
 	 * The function "sampling" returns an array of k random indexes from a data list
 	 * example, with error handling for out of range sample sizes.
@@ -169,6 +811,20 @@ public class Data {
 	 *         of the randomly chosen centroids.
 	 */
 	public int[] sampling(int k) throws OutOfRangeSampleSize {
+		return sampling(k, System.currentTimeMillis());
+	}
+
+	/**
+	 * The function "sampling" returns an array of k random indexes from a data list
+	 * example, chosen by a random generator with the given seed: the same seed on
+	 * the same data always gives the same indexes.
+	 * 
+	 * @param k    The number of centroids to be selected randomly from the data.
+	 * @param seed The seed of the random choice.
+	 * @return The method is returning an array of integers, which are the indexes
+	 *         of the randomly chosen centroids.
+	 */
+	public int[] sampling(int k, long seed) throws OutOfRangeSampleSize {
 		if (k <= 0) {
 			throw new OutOfRangeSampleSize("Error:\tk <= 0\n");
 		} else if (k >= getNumberOfExamples()) {
@@ -178,7 +834,7 @@ public class Data {
 		int[] centroidIndexes = new int[k];
 		// choose k random different centroids in data.
 		Random rand = new Random();
-		rand.setSeed(System.currentTimeMillis());
+		rand.setSeed(seed);
 		for (int i = 0; i < k; i++) {
 			boolean found;
 			int c;
@@ -209,7 +865,7 @@ public class Data {
 	 */
 	private boolean compare(int i, int j) {
 		for (int k = 0; k < getNumberOfAttributes(); k++) {
-			if (!data.get(i).get(k).equals(data.get(j).get(k))) {
+			if (values[k] != null ? values[k][i] != values[k][j] : codes[k][i] != codes[k][j]) {
 				return false;
 			}
 		}
@@ -243,43 +899,29 @@ public class Data {
 	}
 
 	/**
-	 * This function computes the prototype of a continuous attribute based on the
-	 * frequency of its values in a given set of IDs. Determines the most frequently
-	 * needed value for attributes in the subset of attributes identified by idList.
+	 * This function computes the prototype of a continuous attribute as the mean
+	 * of its values in the examples identified by idList, where each example
+	 * counts as many times as its weight.
 	 * 
 	 * @param idList    A set of integers representing the indices of examples in a
 	 *                  dataset.
 	 * @param attribute a ContinuousAttribute object representing the attribute for
 	 *                  which the prototype value needs to be computed.
-	 * @return The method returns a Double object, which represents the prototype
-	 *         value of a continuous attribute computed from a list of examples. If
-	 *         the computation is successful, the prototype value is returned as a
-	 *         scaled Double value. If the computation fails, the method returns
-	 *         null.
+	 * @return The method returns the weighted mean of the attribute values, or 0
+	 *         if idList is empty.
 	 */
 	public double computePrototype(Set<Integer> idList, ContinuousAttribute attribute) {
 		double sum = 0;
-		int count = 0;
+		long count = 0;
 
+		double[] column = values[attribute.getIndex()];
 		for (Integer index : idList) {
-			Example example = data.get(index);
-			for (int i = 0; i < getNumberOfAttributes(); i++) {
-				Object value = example.get(i);
-				if (value instanceof Double) {
-					double value1 = (double) value;
-					ContinuousItem item = new ContinuousItem(attribute, value1);
-
-					if (item != null) {
-						sum += (double) item.getValue();
-						count++;
-					}
-				}
-			}
+			sum += column[index] * weights[index];
+			count += weights[index];
 		}
 
 		if (count > 0) {
-			double prototypeValue = sum / count;
-			return attribute.getScaledValue(prototypeValue);
+			return sum / count;
 		}
 
 		return 0;
@@ -289,6 +931,11 @@ public class Data {
 	 * This function computes the prototype of a discrete attribute based on the
 	 * frequency of its values in a given set of IDs. Determines the most frequently
 	 * needed value for attributes in the subset of attributes identified by idList.
+	 * The frequency of a value is the sum of the weights of the examples. The
+	 * frequencies are counted in a single pass over idList, in a histogram
+	 * indexed by the codes of the values; since the codes follow the sorted order
+	 * of the values, a tie is won by the smallest value, as when the values are
+	 * scanned in the order of 'DiscreteAttribute.getValues'.
 	 * 
 	 * @param idList    A set of integers representing the IDs of the instances in a
 	 *                  dataset.
@@ -299,15 +946,21 @@ public class Data {
 	 *         given set of IDs and discrete attribute.
 	 */
 	public String computePrototype(Set<Integer> idList, DiscreteAttribute attribute) {
-		String prototype = null;
-		int maxFrequency = -1;
-		for (String value : attribute.getValues()) {
-			int frequency = attribute.frequency(this, idList, value);
-			if (frequency > maxFrequency) {
-				maxFrequency = frequency;
-				prototype = value;
+		DiscreteAttribute dictionary = (DiscreteAttribute) attributeSet.get(attribute.getIndex());
+		long[] histogram = new long[dictionary.getNumberOfDistinctValues()];
+		int[] column = codes[attribute.getIndex()];
+		for (Integer index : idList) {
+			histogram[column[index]] += weights[index];
+		}
+
+		int prototype = -1;
+		long maxFrequency = -1;
+		for (int code = 0; code < histogram.length; code++) {
+			if (histogram[code] > maxFrequency) {
+				maxFrequency = histogram[code];
+				prototype = code;
 			}
 		}
-		return prototype;
+		return prototype < 0 ? null : dictionary.getValue(prototype);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,413 @@
+package data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+
+/**
+ * The DataSnapshot class writes and reads the binary columnar snapshot of a
+ * Data object. The layout of the file is: <br>
+ * <br>
+ * a header with the magic number, the version, the length and the CRC32 of
+ * the schema; <br>
+ * the schema: the table name, the number of examples and, for each attribute,
+ * its type, its name and its minimum and maximum value, its sorted
+ * dictionary of values or, for a hashed attribute (version 2), its number of
+ * buckets; <br>
+ * a directory with the offset, the length and the CRC32 of each column; <br>
+ * the columns, each one aligned to 8 bytes: the values of each continuous
+ * attribute as doubles, the codes of each discrete attribute as ints, then the
+ * weights as ints. <br>
+ * <br>
+ * Numbers in the header, the directory and the columns are little-endian, so
+ * the columns are copied from the memory mapped file to the arrays of Data
+ * with bulk operations. The strings of the schema (names and values) are
+ * written by 'writeUTF' in version 1, and as their length followed by their
+ * UTF-8 bytes in version 2, so they have no length limit.
+ */
+class DataSnapshot {
+	private static final int MAGIC = 0x4B4D4453; // "KMDS"
+	private static final int VERSION = 2;
+	/** Version of the snapshots whose strings are written by 'writeUTF' */
+	private static final int VERSION_1 = 1;
+	private static final int HEADER_LENGTH = 16;
+	private static final int DIRECTORY_ENTRY_LENGTH = 24;
+	private static final byte CONTINUOUS = 0;
+	private static final byte DISCRETE = 1;
+	private static final byte HASHED = 2;
+	/** Size of the buffer used to write the columns */
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * This function writes the snapshot of the data to a temporary file, which is
+	 * then renamed to the given name, so a failed write never leaves a truncated
+	 * snapshot. The temporary file is created with the default permissions of a
+	 * new file, or those of the snapshot it replaces, as the rename keeps them;
+	 * the directory is forced to the disk after the rename, where the file system
+	 * allows it.
+	 *
+	 * @param data     the data to save
+	 * @param fileName the path name of the snapshot file
+	 * @throws IOException
+	 */
+	static void write(Data data, String fileName) throws IOException {
+		int n = data.getNumberOfExamples();
+		List<Attribute> attributes = data.getAttributeSchema();
+		int columns = attributes.size() + 1;
+
+		ByteArrayOutputStream schemaBytes = new ByteArrayOutputStream();
+		DataOutputStream schema = new DataOutputStream(schemaBytes);
+		writeText(schema, data.getTableName());
+		schema.writeInt(n);
+		schema.writeInt(attributes.size());
+		for (Attribute attribute : attributes) {
+			if (attribute instanceof ContinuousAttribute) {
+				schema.writeByte(CONTINUOUS);
+				writeText(schema, attribute.getName());
+				schema.writeDouble(((ContinuousAttribute) attribute).getMin());
+				schema.writeDouble(((ContinuousAttribute) attribute).getMax());
+			} else if (attribute instanceof HashedDiscreteAttribute) {
+				// The values are the labels of the buckets, rebuilt from their number
+				schema.writeByte(HASHED);
+				writeText(schema, attribute.getName());
+				schema.writeInt(((HashedDiscreteAttribute) attribute).getNumberOfBuckets());
+			} else {
+				String[] dictionary = ((DiscreteAttribute) attribute).getDictionary();
+				schema.writeByte(DISCRETE);
+				writeText(schema, attribute.getName());
+				schema.writeInt(dictionary.length);
+				for (String value : dictionary) {
+					writeText(schema, value);
+				}
+			}
+		}
+		schema.close();
+		byte[] schemaArray = schemaBytes.toByteArray();
+
+		Path path = Paths.get(fileName).toAbsolutePath();
+		// Not 'Files.createTempFile', whose files can only be read by their owner
+		Path temp = path.resolveSibling(
+				path.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(schemaArray.length).putInt(crc(schemaArray));
+			header.flip();
+			channel.write(header);
+			channel.write(ByteBuffer.wrap(schemaArray));
+
+			// The directory is written after the columns, when the checksums are known
+			long directoryOffset = HEADER_LENGTH + schemaArray.length;
+			ByteBuffer directory = ByteBuffer.allocate(columns * DIRECTORY_ENTRY_LENGTH)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			long offset = align(directoryOffset + directory.capacity());
+
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			for (Attribute attribute : attributes) {
+				int index = attribute.getIndex();
+				long length;
+				int checksum;
+				if (attribute instanceof ContinuousAttribute) {
+					length = 8L * n;
+					checksum = writeColumn(channel, offset, buffer, data.getContinuousColumn(index), n);
+				} else {
+					length = 4L * n;
+					checksum = writeColumn(channel, offset, buffer, data.getDiscreteColumn(index), n);
+				}
+				directory.putLong(offset).putLong(length).putInt(checksum).putInt(0);
+				offset = align(offset + length);
+			}
+			int checksum = writeColumn(channel, offset, buffer, data.getWeights(), n);
+			directory.putLong(offset).putLong(4L * n).putInt(checksum).putInt(0);
+
+			directory.flip();
+			channel.write(directory, directoryOffset);
+			channel.force(true);
+			if (Files.exists(path)
+					&& Files.getFileStore(path).supportsFileAttributeView(PosixFileAttributeView.class)) {
+				Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(path));
+			}
+		} catch (IOException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+		try {
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+		syncDirectory(path.getParent());
+	}
+
+	/**
+	 * This function forces the entries of a directory to the disk, so a renamed
+	 * file survives a crash. Some systems cannot open a directory (Windows), the
+	 * function does nothing there.
+	 *
+	 * @param directory the directory
+	 */
+	private static void syncDirectory(Path directory) {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// The directory cannot be synchronized on this system
+		}
+	}
+
+	/**
+	 * This function reads a snapshot written by 'write'. The file is memory
+	 * mapped, the checksum of the schema and of each column is verified and the
+	 * columns are copied to the arrays of the new Data object.
+	 *
+	 * @param fileName the path name of the snapshot file
+	 * @return the data saved in the file.
+	 * @throws IOException if the file cannot be read or is not a valid snapshot
+	 */
+	static Data read(String fileName) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_LENGTH);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getInt() != MAGIC) {
+				throw new IOException("Not a data snapshot: " + fileName);
+			}
+			int version = header.getInt();
+			if (version != VERSION && version != VERSION_1) {
+				throw new IOException("Unsupported data snapshot version: " + version);
+			}
+			int schemaLength = header.getInt();
+			int schemaChecksum = header.getInt();
+
+			MappedByteBuffer schemaBuffer = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_LENGTH,
+					schemaLength);
+			byte[] schemaArray = new byte[schemaLength];
+			schemaBuffer.get(schemaArray);
+			if (crc(schemaArray) != schemaChecksum) {
+				throw new IOException("Corrupted data snapshot schema: " + fileName);
+			}
+
+			DataInputStream schema = new DataInputStream(new ByteArrayInputStream(schemaArray));
+			String tableName = readText(schema, version);
+			int n = schema.readInt();
+			int numberOfAttributes = schema.readInt();
+			List<Attribute> attributes = new ArrayList<Attribute>();
+			for (int i = 0; i < numberOfAttributes; i++) {
+				byte type = schema.readByte();
+				String name = readText(schema, version);
+				if (type == CONTINUOUS) {
+					double min = schema.readDouble();
+					double max = schema.readDouble();
+					attributes.add(new ContinuousAttribute(name, i, min, max));
+				} else if (type == HASHED && version != VERSION_1) {
+					int buckets = schema.readInt();
+					if (buckets < 1) {
+						throw new IOException("Invalid number of buckets: " + buckets);
+					}
+					attributes.add(new HashedDiscreteAttribute(name, i, buckets));
+				} else if (type == DISCRETE) {
+					String[] dictionary = new String[schema.readInt()];
+					for (int j = 0; j < dictionary.length; j++) {
+						dictionary[j] = readText(schema, version);
+					}
+					attributes.add(new DiscreteAttribute(name, i, dictionary));
+				} else {
+					throw new IOException("Unknown attribute type " + type + " in the data snapshot: " + fileName);
+				}
+			}
+
+			MappedByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_LENGTH + schemaLength,
+					(long) (numberOfAttributes + 1) * DIRECTORY_ENTRY_LENGTH);
+			directory.order(ByteOrder.LITTLE_ENDIAN);
+
+			double[][] values = new double[numberOfAttributes][];
+			int[][] codes = new int[numberOfAttributes][];
+			for (Attribute attribute : attributes) {
+				ByteBuffer column = mapColumn(channel, directory, fileName);
+				if (attribute instanceof ContinuousAttribute) {
+					values[attribute.getIndex()] = new double[n];
+					column.asDoubleBuffer().get(values[attribute.getIndex()]);
+				} else {
+					codes[attribute.getIndex()] = new int[n];
+					column.asIntBuffer().get(codes[attribute.getIndex()]);
+				}
+			}
+			int[] weights = new int[n];
+			mapColumn(channel, directory, fileName).asIntBuffer().get(weights);
+
+			return new Data(tableName, attributes, values, codes, weights, n);
+		}
+	}
+
+	/**
+	 * This function writes a string of the schema as its length followed by its
+	 * UTF-8 bytes.
+	 *
+	 * @param out   the stream of the schema
+	 * @param value the string
+	 * @throws IOException
+	 */
+	private static void writeText(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * This function reads a string of the schema, written by 'writeUTF' in
+	 * version 1 and by 'writeText' since.
+	 *
+	 * @param in      the stream of the schema
+	 * @param version the version of the snapshot
+	 * @return the string.
+	 * @throws IOException if the length of the string is not valid
+	 */
+	private static String readText(DataInputStream in, int version) throws IOException {
+		if (version == VERSION_1) {
+			return in.readUTF();
+		}
+		int length = in.readInt();
+		if (length < 0 || length > in.available()) {
+			throw new IOException("Invalid string length: " + length);
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * This function maps the column described by the next entry of the directory
+	 * and verifies its checksum.
+	 *
+	 * @param channel   the channel of the snapshot file
+	 * @param directory the directory, positioned on the entry of the column
+	 * @param fileName  the path name of the file, used in the error message
+	 * @return the little-endian buffer of the column.
+	 * @throws IOException if the checksum is not valid
+	 */
+	private static ByteBuffer mapColumn(FileChannel channel, ByteBuffer directory, String fileName)
+			throws IOException {
+		long offset = directory.getLong();
+		long length = directory.getLong();
+		int checksum = directory.getInt();
+		directory.getInt();
+
+		MappedByteBuffer column = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+		CRC32 crc = new CRC32();
+		crc.update(column.duplicate());
+		if ((int) crc.getValue() != checksum) {
+			throw new IOException("Corrupted data snapshot column: " + fileName);
+		}
+		column.order(ByteOrder.LITTLE_ENDIAN);
+		return column;
+	}
+
+	/**
+	 * This function writes the first n values of a column of doubles at the
+	 * given position of the file.
+	 *
+	 * @param channel  the channel of the snapshot file
+	 * @param position position of the column in the file
+	 * @param buffer   little-endian buffer used to write the values
+	 * @param column   the values
+	 * @param n        number of values to write
+	 * @return the CRC32 of the bytes written.
+	 * @throws IOException
+	 */
+	private static int writeColumn(FileChannel channel, long position, ByteBuffer buffer, double[] column, int n)
+			throws IOException {
+		CRC32 crc = new CRC32();
+		for (int from = 0; from < n;) {
+			int length = Math.min(n - from, buffer.capacity() / 8);
+			buffer.clear();
+			buffer.asDoubleBuffer().put(column, from, length);
+			buffer.limit(length * 8);
+			crc.update(buffer.duplicate());
+			position += writeFully(channel, buffer, position);
+			from += length;
+		}
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * This function writes the first n values of a column of ints at the given
+	 * position of the file.
+	 *
+	 * @param channel  the channel of the snapshot file
+	 * @param position position of the column in the file
+	 * @param buffer   little-endian buffer used to write the values
+	 * @param column   the values
+	 * @param n        number of values to write
+	 * @return the CRC32 of the bytes written.
+	 * @throws IOException
+	 */
+	private static int writeColumn(FileChannel channel, long position, ByteBuffer buffer, int[] column, int n)
+			throws IOException {
+		CRC32 crc = new CRC32();
+		for (int from = 0; from < n;) {
+			int length = Math.min(n - from, buffer.capacity() / 4);
+			buffer.clear();
+			buffer.asIntBuffer().put(column, from, length);
+			buffer.limit(length * 4);
+			crc.update(buffer.duplicate());
+			position += writeFully(channel, buffer, position);
+			from += length;
+		}
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * This function writes all the remaining bytes of the buffer at the given
+	 * position of the file.
+	 *
+	 * @param channel  the channel of the file
+	 * @param buffer   the bytes to write
+	 * @param position position in the file
+	 * @return the number of bytes written.
+	 * @throws IOException
+	 */
+	private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		int written = 0;
+		while (buffer.hasRemaining()) {
+			written += channel.write(buffer, position + written);
+		}
+		return written;
+	}
+
+	/**
+	 * This function rounds a position up to a multiple of 8.
+	 *
+	 * @param position a position in the file
+	 * @return the aligned position.
+	 */
+	private static long align(long position) {
+		return (position + 7) & ~7L;
+	}
+
+	/**
+	 * This function computes the CRC32 checksum of an array of bytes.
+	 *
+	 * @param bytes the bytes
+	 * @return the checksum, truncated to an int.
+	 */
+	private static int crc(byte[] bytes) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		return (int) crc.getValue();
+	}
+}
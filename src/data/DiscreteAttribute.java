@@ -1,5 +1,6 @@
 package data;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.TreeSet;
@@ -13,7 +14,10 @@ import java.util.TreeSet;
  * This class implement the Iterable interface
  */
 public class DiscreteAttribute extends Attribute implements Iterable<String> {
+	private static final long serialVersionUID = -6604322576295281781L;
 	private TreeSet<String> values;
+	/** The values in sorted order: the code of a value is its position */
+	private transient String[] dictionary;
 
 	/**
 	 * The constructor for the 'DiscreteAttribute' class. It is used to create a new
@@ -43,6 +47,60 @@ public class DiscreteAttribute extends Attribute implements Iterable<String> {
 		return values;
 	}
 
+	/**
+	 * This function adds a value to the set of values of the attribute.
+	 * 
+	 * @param value the value to add
+	 * @return true if the value was not already a value of the attribute.
+	 */
+	public boolean addValue(String value) {
+		if (values.add(value)) {
+			dictionary = null;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * This function returns the code of a value, that is its position in the
+	 * sorted set of values of the attribute. The code of a value changes when a
+	 * smaller value is added to the attribute.
+	 * 
+	 * @param value a value of the attribute
+	 * @return the code of the value, or -1 if it is not a value of the attribute.
+	 */
+	public int getCode(String value) {
+		if (value == null) {
+			return -1;
+		}
+		int code = Arrays.binarySearch(getDictionary(), value);
+		return code >= 0 ? code : -1;
+	}
+
+	/**
+	 * This function returns the value which has the given code.
+	 * 
+	 * @param code the position of the value in the sorted set of values
+	 * @return the value with the given code.
+	 */
+	public String getValue(int code) {
+		return getDictionary()[code];
+	}
+
+	/**
+	 * The function returns the values of the attribute in sorted order, the
+	 * position of each value being its code. The array is built when it is first
+	 * needed after a change of the values, and must not be modified.
+	 * 
+	 * @return the sorted array of the values.
+	 */
+	public String[] getDictionary() {
+		if (dictionary == null) {
+			dictionary = values.toArray(new String[values.size()]);
+		}
+		return dictionary;
+	}
+
 	/**
 	 * This function returns the number of distinct values in a collection.
 	 * 
@@ -55,7 +113,7 @@ public class DiscreteAttribute extends Attribute implements Iterable<String> {
 	/**
 	 * This Java function calculates the frequency (number of ocurrences) of a given
 	 * string value in a set of integers based on a specific attribute in a Data
-	 * list of examples.
+	 * list of examples. Each example counts as many times as its weight.
 	 * 
 	 * @param data   The data object contains information about the examples, such
 	 *               as the attributes and their values for each instance.
@@ -71,7 +129,7 @@ public class DiscreteAttribute extends Attribute implements Iterable<String> {
 		int count = 0;
 		for (Integer i : idList) {
 			if (v.equals(data.getAttributeValue(i, getIndex()))) {
-				count++;
+				count += data.getWeight(i);
 			}
 		}
 		return count;
@@ -8,6 +8,8 @@ package data;
  * <Attributo discreto-valore discreto>
  */
 public class DiscreteItem extends Item {
+	private static final long serialVersionUID = 2745901835975686022L;
+
 	public DiscreteItem(DiscreteAttribute attribute, String value) {
 		super(attribute, value);
 	}
@@ -24,7 +26,9 @@ public class DiscreteItem extends Item {
 	 */
 	@Override
 	public double distance(Object a) {
-		if (getValue().equals(((DiscreteItem) a).getValue()))
+		// The values of the items of an attribute are usually the same strings
+		Object value = ((DiscreteItem) a).getValue();
+		if (getValue() == value || getValue().equals(value))
 			return 0.0;
 		else
 			return 1.0;
@@ -0,0 +1,92 @@
+package data;
+
+import java.util.Locale;
+
+/**
+ * The HashedDiscreteAttribute class represents a discrete attribute whose
+ * values are hashed into a fixed number of buckets when the data is loaded,
+ * for columns with too many distinct values (user agents, product codes...).
+ * The values of the attribute are the labels of the buckets, "#0" to "#(n-1)"
+ * padded with zeros to the same length, so their sorted order is the order of
+ * the buckets and the code of a label is its bucket. The memory of the
+ * attribute and the cost of a centroid are bounded by the number of buckets,
+ * whatever the number of distinct values of the column; values which fall in
+ * the same bucket are no longer distinguished by the clustering.
+ */
+public class HashedDiscreteAttribute extends DiscreteAttribute {
+	private static final long serialVersionUID = 4139208531178860342L;
+	private int buckets;
+
+	/**
+	 * The constructor for the 'HashedDiscreteAttribute' class.
+	 *
+	 * @param name    as a string representing the name of the attribute
+	 * @param index   as an integer representing the identifier of the tuple
+	 * @param buckets the number of buckets, at least 1
+	 */
+	public HashedDiscreteAttribute(String name, int index, int buckets) {
+		super(name, index, labels(buckets));
+		this.buckets = buckets;
+	}
+
+	/**
+	 * The function returns the number of buckets of the attribute.
+	 *
+	 * @return the value of the variable 'buckets'.
+	 */
+	public int getNumberOfBuckets() {
+		return buckets;
+	}
+
+	/**
+	 * This function returns the bucket of a value of the column. The bucket only
+	 * depends on the value and the number of buckets: it is computed from
+	 * 'String.hashCode', whose result is specified by the language, so the same
+	 * value falls in the same bucket on every server and after a restart.
+	 *
+	 * @param value a value of the column
+	 * @return the bucket of the value, between 0 and the number of buckets - 1.
+	 */
+	public int getBucket(String value) {
+		// Final mix of MurmurHash3, so close strings are spread over the buckets
+		int hash = value.hashCode();
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+		return Math.floorMod(hash, buckets);
+	}
+
+	/**
+	 * This function returns the value of the attribute which stands for a value
+	 * of the column, that is the label of its bucket. 'Data' removes the rows
+	 * with a NULL string before hashing them, so it never hashes null; null is
+	 * only accepted for the other callers.
+	 *
+	 * @param value a value of the column, may be null
+	 * @return the label of the bucket of the value, or null if the value is null.
+	 */
+	public String hash(String value) {
+		return value == null ? null : getValue(getBucket(value));
+	}
+
+	/**
+	 * This function builds the labels of the buckets, in sorted order.
+	 *
+	 * @param buckets the number of buckets
+	 * @return the array of the labels.
+	 * @throws IllegalArgumentException if the number of buckets is not positive
+	 */
+	private static String[] labels(int buckets) {
+		if (buckets < 1) {
+			throw new IllegalArgumentException("The number of buckets must be positive: " + buckets);
+		}
+		String format = "#%0" + Integer.toString(buckets - 1).length() + "d";
+		String[] labels = new String[buckets];
+		for (int b = 0; b < buckets; b++) {
+			labels[b] = String.format(Locale.ROOT, format, b);
+		}
+		return labels;
+	}
+}
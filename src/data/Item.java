@@ -9,6 +9,7 @@ import java.util.Set;
  * updating the value.
  */
 public abstract class Item implements Serializable{
+	private static final long serialVersionUID = -6599077751305563557L;
 	private Attribute attribute;
 	private Object value;
 
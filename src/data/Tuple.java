@@ -9,6 +9,7 @@ import java.io.Serializable;
  * represents a tuple as a sequence of attribute-value pairs.
  */
 public class Tuple implements Serializable{
+	private static final long serialVersionUID = 2713777039615162078L;
 	private Item[] tuple;
 
 	/**
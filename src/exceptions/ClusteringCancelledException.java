@@ -0,0 +1,18 @@
+package exceptions;
+
+/**
+ * The class "ClusteringCancelledException" is a custom exception class thrown
+ * by the k-means when its run has been cancelled, for example because the
+ * client which was waiting for the result has disconnected.
+ */
+public class ClusteringCancelledException extends Exception {
+	/**
+	 * Constructor for the exception 'ClusteringCancelledException' class that
+	 * takes a String parameter 'message', the message of the error.
+	 * 
+	 * @param message String representing the message error.
+	 */
+	public ClusteringCancelledException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,22 @@
+package exceptions;
+
+/**
+ * The class "ServerBusyException" is a custom exception class in Java
+ * that extends the "ServerException" class and is used when a request is
+ * rejected because the server has no capacity left to handle it. Unlike the
+ * other errors, it does not end the session of the client, which can retry
+ * the request later.
+ */
+public class ServerBusyException extends ServerException {
+
+	/**
+	 * Constructor for the exception 'ServerBusyException' class that takes
+	 * a String parameter 'msg'. Calls the constructor parent class with 'msg'
+	 * parameter, which sets the error message for the exception.
+	 * 
+	 * @param msg String representing the message error.
+	 */
+	public ServerBusyException(String msg) {
+		super(msg);
+	}
+}
@@ -0,0 +1,451 @@
+package main;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import data.Attribute;
+import data.ContinuousAttribute;
+import data.Data;
+import data.Tuple;
+import mining.Cluster;
+import mining.ClusterSet;
+import mining.IterationEvent;
+
+/**
+ * The BinaryCodec class is the binary protocol of the server. The client
+ * starts with a handshake: the magic number, the highest version it supports
+ * and the features it asks for; the server answers with the magic number, the
+ * version and the features it accepts. Then every request and every answer is
+ * a frame: its length as an int, followed by its payload. <br>
+ * <br>
+ * A request is the option as a byte, followed by its arguments: ints and longs
+ * in big-endian order, strings as their length and their UTF-8 bytes, the load
+ * options as a number of entries, each one a string key and a tagged value.
+ * <br>
+ * An answer starts with a status byte: OK followed by the results, BUSY or
+ * ERROR followed by the message. A clustering which sends its progress answers
+ * with a PROGRESS frame for each iteration before its OK: the iteration and
+ * the examples moved as ints, the SSE, the largest shift of a centroid and the
+ * milliseconds as doubles, the distances computed as a long. The clusters are
+ * sent as a schema (the type and the name of each attribute) followed, for
+ * each cluster, by the values of the centroid, the size and, after a
+ * clustering of the loaded data, the ids of the examples and their average
+ * distance from the centroid. <br>
+ * <br>
+ * If the client asks for the DEFLATE feature, every answer frame starts with
+ * an encoding byte: RAW followed by the payload, or DEFLATED followed by the
+ * length of the payload and the payload compressed with 'Deflater'. Only the
+ * payloads of at least kmeans.protocol.deflateThreshold bytes (1 KB by default)
+ * are compressed, with the level kmeans.protocol.deflateLevel (the default
+ * level of 'Deflater'), and only if the compression makes them shorter. <br>
+ * <br>
+ * A request frame is at most kmeans.protocol.maxFrame bytes long (1 MB by
+ * default), and its buffer grows as its bytes arrive, so a length alone does
+ * not allocate memory. The lists of the load options are nested at most
+ * MAX_LIST_DEPTH times.
+ */
+class BinaryCodec extends ProtocolCodec {
+	static final int MAGIC = 0x4B4D4250; // "KMBP"
+	static final int VERSION = 1;
+	/** Feature of the answers compressed with deflate */
+	static final int FEATURE_DEFLATE = 1;
+	/** Features the server supports */
+	static final int SUPPORTED_FEATURES = FEATURE_DEFLATE;
+	private static final int DEFLATE_THRESHOLD = Integer.getInteger("kmeans.protocol.deflateThreshold", 1024);
+	private static final int DEFLATE_LEVEL = Integer.getInteger("kmeans.protocol.deflateLevel",
+			Deflater.DEFAULT_COMPRESSION);
+	/** Maximum length of a request frame */
+	private static final int MAX_FRAME_LENGTH = Integer.getInteger("kmeans.protocol.maxFrame", 1024 * 1024);
+	/** Size of the chunks in which a request frame is read */
+	private static final int READ_CHUNK = 8192;
+	/** Maximum number of nested lists in a value of the load options */
+	static final int MAX_LIST_DEPTH = 8;
+
+	static final byte STATUS_OK = 0;
+	static final byte STATUS_ERROR = 1;
+	static final byte STATUS_BUSY = 2;
+	static final byte STATUS_PROGRESS = 3;
+
+	static final byte ENCODING_RAW = 0;
+	static final byte ENCODING_DEFLATED = 1;
+
+	static final byte TYPE_CONTINUOUS = 0;
+	static final byte TYPE_DISCRETE = 1;
+
+	static final byte TAG_NULL = 0;
+	static final byte TAG_STRING = 1;
+	static final byte TAG_INT = 2;
+	static final byte TAG_LONG = 3;
+	static final byte TAG_DOUBLE = 4;
+	static final byte TAG_BOOLEAN = 5;
+	static final byte TAG_TIMESTAMP = 6;
+	static final byte TAG_LIST = 7;
+
+	/** Flag of the clusters sent with the ids of their examples */
+	private static final byte WITH_EXAMPLES = 1;
+
+	private DataInputStream in;
+	private DataOutputStream out;
+	private DataInputStream request;
+	private ByteArrayOutputStream responseBytes = new ByteArrayOutputStream();
+	private DataOutputStream response = new DataOutputStream(responseBytes);
+	private int version;
+	private int features;
+	/** The compressor of the answers, null if the client has not asked for it */
+	private Deflater deflater;
+	private ByteArrayOutputStream compressedBytes;
+
+	/**
+	 * Constructor for the 'BinaryCodec' class. It reads the handshake of the
+	 * client and answers it.
+	 *
+	 * @param in  the stream of the requests, starting with the handshake
+	 * @param out the stream of the answers
+	 * @throws IOException if the handshake is not valid
+	 */
+	BinaryCodec(DataInputStream in, OutputStream out) throws IOException {
+		this.in = in;
+		this.out = new DataOutputStream(new BufferedOutputStream(out));
+		in.readInt();
+		int clientVersion = in.readInt();
+		int clientFeatures = in.readInt();
+		if (clientVersion < 1) {
+			throw new IOException("Unsupported protocol version: " + clientVersion);
+		}
+		version = Math.min(VERSION, clientVersion);
+		features = clientFeatures & SUPPORTED_FEATURES;
+		this.out.writeInt(MAGIC);
+		this.out.writeInt(version);
+		this.out.writeInt(features);
+		this.out.flush();
+		if ((features & FEATURE_DEFLATE) != 0) {
+			deflater = new Deflater(DEFLATE_LEVEL);
+			compressedBytes = new ByteArrayOutputStream();
+		}
+	}
+
+	/**
+	 * This function reads the frame of the next request, then its option. The
+	 * payload is read in chunks, so the memory of a frame is the memory of the
+	 * bytes actually received, whatever the length announced.
+	 */
+	@Override
+	public int readOption() throws IOException {
+		int length = in.readInt();
+		if (length < 1 || length > MAX_FRAME_LENGTH) {
+			throw new IOException("Invalid frame length: " + length);
+		}
+		ByteArrayOutputStream payload = new ByteArrayOutputStream(Math.min(length, READ_CHUNK));
+		byte[] chunk = new byte[Math.min(length, READ_CHUNK)];
+		int remaining = length;
+		while (remaining > 0) {
+			int n = in.read(chunk, 0, Math.min(remaining, chunk.length));
+			if (n < 0) {
+				throw new EOFException("Frame truncated: " + (length - remaining) + " of " + length + " bytes");
+			}
+			payload.write(chunk, 0, n);
+			remaining -= n;
+		}
+		request = new DataInputStream(new ByteArrayInputStream(payload.toByteArray()));
+		return request.readUnsignedByte();
+	}
+
+	@Override
+	public String readString() throws IOException {
+		return readText(request);
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		return request.readInt();
+	}
+
+	@Override
+	public long readLong() throws IOException {
+		return request.readLong();
+	}
+
+	@Override
+	public Object readOptions() throws IOException {
+		int entries = request.readInt();
+		if (entries < 0) {
+			return null;
+		}
+		Map<String, Object> options = new HashMap<String, Object>();
+		for (int i = 0; i < entries; i++) {
+			String key = readText(request);
+			options.put(key, readValue(request, 0));
+		}
+		return options;
+	}
+
+	@Override
+	public void writeOk() throws IOException {
+		response.writeByte(STATUS_OK);
+	}
+
+	@Override
+	public void writeString(String value) throws IOException {
+		writeText(response, value);
+	}
+
+	@Override
+	public void writeInt(int value) throws IOException {
+		response.writeInt(value);
+	}
+
+	@Override
+	public void writeLong(long value) throws IOException {
+		response.writeLong(value);
+	}
+
+	@Override
+	public void writeBoolean(boolean value) throws IOException {
+		response.writeBoolean(value);
+	}
+
+	/**
+	 * This function writes the number of iterations, then the clusters with the
+	 * ids of their examples and their average distance.
+	 */
+	@Override
+	public void writeClustering(int iterations, Data data, ClusterSet C) throws IOException {
+		response.writeInt(iterations);
+		writeClusters(C, data, null);
+	}
+
+	@Override
+	public void writeModel(ClusterSet C) throws IOException {
+		writeClusters(C, null, null);
+	}
+
+	@Override
+	public void writeDatabaseClustering(int iterations, ClusterSet C, long[] sizes) throws IOException {
+		response.writeInt(iterations);
+		writeClusters(C, null, sizes);
+	}
+
+	@Override
+	public void writeBusy(String message) throws IOException {
+		responseBytes.reset();
+		response.writeByte(STATUS_BUSY);
+		writeText(response, message);
+	}
+
+	@Override
+	public void writeProgress(IterationEvent event) throws IOException {
+		responseBytes.reset();
+		response.writeByte(STATUS_PROGRESS);
+		response.writeInt(event.getIteration());
+		response.writeInt(event.getPointsMoved());
+		response.writeDouble(event.getSse());
+		response.writeDouble(event.getMaxShift());
+		response.writeDouble(event.getElapsedMillis());
+		response.writeLong(event.getDistanceEvaluations());
+	}
+
+	@Override
+	public void writeError(String message) throws IOException {
+		responseBytes.reset();
+		response.writeByte(STATUS_ERROR);
+		writeText(response, message);
+	}
+
+	/**
+	 * This function sends the answer written since the last call as a frame,
+	 * compressed if the client has asked for it and the answer is long enough.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (responseBytes.size() > 0) {
+			if (deflater == null) {
+				out.writeInt(responseBytes.size());
+				responseBytes.writeTo(out);
+			} else if (responseBytes.size() < DEFLATE_THRESHOLD || !compress()) {
+				out.writeInt(1 + responseBytes.size());
+				out.writeByte(ENCODING_RAW);
+				responseBytes.writeTo(out);
+			} else {
+				out.writeInt(1 + 4 + compressedBytes.size());
+				out.writeByte(ENCODING_DEFLATED);
+				out.writeInt(responseBytes.size());
+				compressedBytes.writeTo(out);
+			}
+			responseBytes.reset();
+		}
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (deflater != null) {
+			deflater.end();
+		}
+		in.close();
+		out.close();
+	}
+
+	/**
+	 * This function compresses the answer written since the last flush into
+	 * 'compressedBytes'.
+	 *
+	 * @return true if the compressed answer is shorter than the answer.
+	 */
+	private boolean compress() {
+		byte[] buffer = new byte[8192];
+		deflater.reset();
+		deflater.setInput(responseBytes.toByteArray());
+		deflater.finish();
+		compressedBytes.reset();
+		while (!deflater.finished()) {
+			int n = deflater.deflate(buffer);
+			compressedBytes.write(buffer, 0, n);
+			if (compressedBytes.size() >= responseBytes.size()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * This function writes a set of clusters: the schema of the centroids, then
+	 * for each cluster the values of its centroid and its size and, if the data
+	 * is given, the ids of its examples and their average distance.
+	 *
+	 * @param C     the clusters
+	 * @param data  the data clustered, or null to send the centroids only
+	 * @param sizes the size of each cluster, or null to use the number of
+	 *              examples of the clusters
+	 * @throws IOException
+	 */
+	private void writeClusters(ClusterSet C, Data data, long[] sizes) throws IOException {
+		int k = C.getNumberOfClusters();
+		Tuple first = C.get(0).getCentroid();
+		int d = first.getLength();
+		response.writeByte(data != null ? WITH_EXAMPLES : 0);
+		response.writeInt(k);
+		response.writeInt(d);
+		boolean[] continuous = new boolean[d];
+		for (int j = 0; j < d; j++) {
+			Attribute attribute = first.get(j).getAttribute();
+			continuous[j] = attribute instanceof ContinuousAttribute;
+			response.writeByte(continuous[j] ? TYPE_CONTINUOUS : TYPE_DISCRETE);
+			writeText(response, attribute.getName());
+		}
+		for (int i = 0; i < k; i++) {
+			Cluster cluster = C.get(i);
+			for (int j = 0; j < d; j++) {
+				Object value = cluster.getCentroid().get(j).getValue();
+				if (continuous[j]) {
+					response.writeDouble((Double) value);
+				} else {
+					writeText(response, (String) value);
+				}
+			}
+			response.writeLong(sizes != null ? sizes[i] : cluster.getSize());
+			if (data != null) {
+				int[] ids = cluster.getClusteredData();
+				response.writeInt(ids.length);
+				for (int id : ids) {
+					response.writeInt(id);
+				}
+				response.writeDouble(cluster.getCentroid().avgDistance(data, ids));
+			}
+		}
+	}
+
+	/**
+	 * This function reads a tagged value of the load options.
+	 *
+	 * @param in    the payload of the request
+	 * @param depth the number of lists the value is nested in
+	 * @return the value: a String, Integer, Long, Double, Boolean, Timestamp or a
+	 *         List of values.
+	 * @throws IOException if the tag is not known or the lists are nested more
+	 *                     than MAX_LIST_DEPTH times
+	 */
+	private static Object readValue(DataInputStream in, int depth) throws IOException {
+		byte tag = in.readByte();
+		switch (tag) {
+			case TAG_NULL:
+				return null;
+			case TAG_STRING:
+				return readText(in);
+			case TAG_INT:
+				return in.readInt();
+			case TAG_LONG:
+				return in.readLong();
+			case TAG_DOUBLE:
+				return in.readDouble();
+			case TAG_BOOLEAN:
+				return in.readBoolean();
+			case TAG_TIMESTAMP:
+				return new Timestamp(in.readLong());
+			case TAG_LIST:
+				if (depth >= MAX_LIST_DEPTH) {
+					throw new IOException("Lists nested more than " + MAX_LIST_DEPTH + " times");
+				}
+				int size = in.readInt();
+				if (size < 0 || size > in.available()) {
+					throw new IOException("Invalid list size: " + size);
+				}
+				List<Object> list = new ArrayList<Object>();
+				for (int i = 0; i < size; i++) {
+					list.add(readValue(in, depth + 1));
+				}
+				return list;
+			default:
+				throw new IOException("Unknown value tag: " + tag);
+		}
+	}
+
+	/**
+	 * This function reads a string as its length and its UTF-8 bytes.
+	 *
+	 * @param in the stream
+	 * @return the string, or null if the length is negative.
+	 * @throws IOException
+	 */
+	private static String readText(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		} else if (length > in.available()) {
+			throw new IOException("Invalid string length: " + length);
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * This function writes a string as its length and its UTF-8 bytes, without
+	 * the limit of 64 KB of 'writeUTF'.
+	 *
+	 * @param out   the stream
+	 * @param value the string, or null
+	 * @throws IOException
+	 */
+	private static void writeText(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+}
@@ -0,0 +1,965 @@
+package main;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.SocketException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import agent.DbAccess;
+import agent.LOAD_MODE;
+import agent.LoadRequest;
+import agent.QueryFilter;
+import exceptions.ClusteringCancelledException;
+import exceptions.DatabaseConnectionException;
+import exceptions.EmptySetException;
+import exceptions.NoValueException;
+import exceptions.OutOfRangeSampleSize;
+import exceptions.ServerBusyException;
+import exceptions.ServerException;
+import data.Data;
+import metrics.Metrics;
+import metrics.PhaseEvent;
+import metrics.Timer;
+import mining.IterationEvent;
+import mining.KMeansMiner;
+import mining.ModelRegistry;
+import mining.ModelStore;
+import mining.SAVE_STATUS;
+
+/**
+ * The ClientSession class handles the requests of a client for clustering
+ * data using the KMeans algorithm and saving or opening serialised files. It
+ * keeps the state of the client between the requests (the loaded data and the
+ * last clustering) and reads the requests through a 'ProtocolCodec', so it is
+ * used both by the thread of 'ServerOneClient' and by the connections of
+ * 'NioServer', with any of the protocols of the server.
+ */
+public class ClientSession {
+	private static final AtomicLong SESSIONS = new AtomicLong();
+	private static final AtomicInteger ACTIVE = new AtomicInteger();
+	/** Names of the options of the requests, used by the metrics */
+	private static final String[] REQUESTS = { "load", "cluster", "save", "open", "loadWithOptions",
+			"clusterInDatabase", "reload", "saveSnapshot", "openSnapshot", "saveAsync", "saveStatus", "submitJob",
+			"jobStatus", "jobResult", "clusterWithOptions", "cancelJob", "stopClustering" };
+	/** Option of the request which stops a clustering sending its progress */
+	private static final int STOP_REQUEST = 16;
+	/** Milliseconds between two checks of the connection while waiting for a job */
+	private static final long PROBE_INTERVAL = Long.getLong("kmeans.cancel.probeMs", 250);
+	/** Largest number of buckets of a hashed column, since a label is built for each one */
+	private static final int MAX_BUCKETS = Integer.getInteger("kmeans.load.maxBuckets", 65536);
+
+	private long id = SESSIONS.incrementAndGet();
+	private ProtocolCodec codec;
+	private DisconnectProbe probe;
+	private AtomicBoolean closed = new AtomicBoolean();
+	private Data data;
+	private KMeansMiner kmeans;
+
+	/**
+	 * The constructor of the 'ClientSession' class.
+	 * 
+	 * @param codec the codec the requests of the client are read from and the
+	 *              answers are written to
+	 * @param probe the probe of the connection, which tells if the client has
+	 *              disconnected while a clustering is running
+	 */
+	public ClientSession(ProtocolCodec codec, DisconnectProbe probe) {
+		this.codec = codec;
+		this.probe = probe;
+		ACTIVE.incrementAndGet();
+	}
+
+	/**
+	 * This function ends the session: the clustering jobs of the client which are
+	 * still queued or running, and are not shared with other clients, are
+	 * cancelled.
+	 */
+	public void close() {
+		if (!closed.compareAndSet(false, true)) {
+			return;
+		}
+		ACTIVE.decrementAndGet();
+		int count = JobScheduler.getInstance().cancelAll(id);
+		if (count > 0) {
+			System.out.println("Session " + id + " closed, " + count + " jobs cancelled");
+		}
+	}
+
+	/**
+	 * The function returns the number of sessions currently open.
+	 * 
+	 * @return the number of sessions not yet closed.
+	 */
+	public static int getActiveSessions() {
+		return ACTIVE.get();
+	}
+
+	/**
+	 * The function returns the number of sessions opened since the start of the
+	 * server.
+	 * 
+	 * @return the number of sessions.
+	 */
+	public static long getTotalSessions() {
+		return SESSIONS.get();
+	}
+
+	/**
+	 * This function handles one request of the client and flushes the answer. An
+	 * error ends the session: it is printed and false is returned, so the caller
+	 * closes the connection. A request rejected because the server is busy does
+	 * not end the session: the message of the error is sent instead of OK.
+	 * 
+	 * @return true if the request has been handled, false if the session has
+	 *         ended.
+	 */
+	public boolean process() {
+		try {
+			handleRequest();
+			long start = System.nanoTime();
+			PhaseEvent event = new PhaseEvent();
+			event.begin();
+			codec.flush();
+			Metrics.timer("report", "flush").recordSince(start);
+			event.commit("report", "flush", data == null ? null : data.getTableName(), 0, 0, 0);
+			return true;
+		} catch (IOException e) {
+			System.out.println("Error: " + e);
+			// Nothing can be sent on a connection closed by the client
+			if (!(e instanceof EOFException) && !(e instanceof SocketException)) {
+				reportError(e);
+			}
+		} catch (ClassNotFoundException e) {
+			System.out.println("Error: " + e);
+			reportError(e);
+		} catch (SQLException e) {
+			System.out.println("Error: " + e);
+			reportError(e);
+		} catch (NoValueException e) {
+			System.out.println("Error: " + e);
+			reportError(e);
+		} catch (EmptySetException e) {
+			System.out.println("Error: " + e);
+			reportError(e);
+		} catch (DatabaseConnectionException e) {
+			System.out.println("Error: " + e);
+			reportError(e);
+		} catch (OutOfRangeSampleSize e) {
+			System.out.println("Error: " + e);
+			reportError(e);
+		} catch (ServerBusyException e) {
+			try {
+				codec.writeBusy(e.getMessage());
+				codec.flush();
+				return true;
+			} catch (IOException e1) {
+				System.out.println("Error: " + e1);
+			}
+		} catch (ServerException e) {
+			System.out.println("Error: " + e);
+			reportError(e);
+		}
+		return false;
+	}
+
+	/**
+	 * This function sends the error which ends the session, if the protocol of
+	 * the client can report errors.
+	 * 
+	 * @param e the error
+	 */
+	private void reportError(Exception e) {
+		try {
+			codec.writeError(e.getMessage() == null || e instanceof IOException ? e.toString() : e.getMessage().trim());
+			codec.flush();
+		} catch (IOException e1) {
+			System.out.println("Error: " + e1);
+		}
+	}
+
+	/**
+	 * This function reads the option of a request and handles it: 0 loads a
+	 * table, 1 clusters the loaded data, 2 saves the clustering, 3 opens a saved
+	 * clustering, 4 loads a part of a table, 5 clusters a table in the database,
+	 * 6 reloads the new rows, 7 saves a data snapshot, 8 opens a data snapshot, 9
+	 * saves the clustering with a ticket, 10 asks the status of a save, 11
+	 * submits a clustering job, 12 asks the status of a job, 13 fetches the
+	 * result of a job, 14 clusters the loaded data with options, 15 cancels a
+	 * job and 16 stops the clustering whose progress is being sent (a 16 which
+	 * arrives after the end of the clustering is ignored, with no answer). The
+	 * time of the request, or its failure, is recorded by the timer of
+	 * its option in the 'Metrics' and by a 'PhaseEvent' of the group "request".
+	 * 
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 * @throws SQLException
+	 * @throws NoValueException
+	 * @throws EmptySetException
+	 * @throws DatabaseConnectionException
+	 * @throws OutOfRangeSampleSize
+	 * @throws ServerException
+	 */
+	private void handleRequest() throws IOException, ClassNotFoundException, SQLException, NoValueException,
+			EmptySetException, DatabaseConnectionException, OutOfRangeSampleSize, ServerException {
+		int option = codec.readOption();
+		String name = option >= 0 && option < REQUESTS.length ? REQUESTS[option] : "invalid";
+		Timer timer = Metrics.timer("request", name);
+		long start = System.nanoTime();
+		PhaseEvent event = new PhaseEvent();
+		event.begin();
+		boolean handled = false;
+		try {
+			switch (option) {
+				case 0:
+					data = getConnection();
+					break;
+				case 1:
+					clustering(data);
+					break;
+				case 2:
+					saveFile();
+					break;
+				case 3:
+					openFile();
+					break;
+				case 4:
+					data = getConnectionWithOptions();
+					break;
+				case 5:
+					clusteringInDatabase();
+					break;
+				case 6:
+					reloadData(data);
+					break;
+				case 7:
+					saveSnapshot(data);
+					break;
+				case 8:
+					data = openSnapshot();
+					break;
+				case 9:
+					saveFileAsync();
+					break;
+				case 10:
+					saveStatus();
+					break;
+				case 11:
+					submitJob(data);
+					break;
+				case 12:
+					jobStatus();
+					break;
+				case 13:
+					jobResult();
+					break;
+				case 14:
+					clusteringWithOptions(data);
+					break;
+				case 15:
+					cancelJob();
+					break;
+				case STOP_REQUEST:
+					// The clustering has ended before the stop request was read
+					break;
+				default:
+					System.out.println("Invalid request");
+					codec.writeError("Invalid request: " + option);
+			}
+			handled = true;
+		} finally {
+			if (handled) {
+				timer.recordSince(start);
+			} else {
+				timer.error();
+			}
+			event.commit("request", name, data == null ? null : data.getTableName(), 0,
+					data == null ? 0 : data.getNumberOfExamples(), data == null ? 0 : data.getNumberOfAttributes());
+		}
+	}
+
+	/**
+	 * This function saves the KMeans clustering discovered to a file with the
+	 * given file name by the client with the 'in' stream. The model is written by
+	 * the 'ModelStore', after the saves of the same file issued before, and OK is
+	 * sent once it is on the disk, so the clients of this option can read the
+	 * file as soon as they get the answer.
+	 * 
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 * @throws ServerException        if no clustering has been discovered or the
+	 *                                model cannot be written
+	 */
+	private void saveFile() throws IOException, ClassNotFoundException, ServerException {
+		String fileName = codec.readString();
+		if (kmeans == null) {
+			throw new ServerException("No clustering to save");
+		}
+		ModelStore store = ModelStore.getInstance();
+		long ticket = kmeans.saveAsync(fileName);
+		if (store.await(ticket) == SAVE_STATUS.FAILED) {
+			throw new ServerException("Error saving " + fileName + ": " + store.getError(ticket));
+		}
+		codec.writeOk();
+	}
+
+	/**
+	 * This function saves the KMeans clustering discovered as 'saveFile', but
+	 * sends OK and the Long ticket of the save without waiting for the disk; the
+	 * client can use the ticket to ask its status.
+	 * 
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 * @throws ServerException        if no clustering has been discovered
+	 */
+	private void saveFileAsync() throws IOException, ClassNotFoundException, ServerException {
+		String fileName = codec.readString();
+		if (kmeans == null) {
+			throw new ServerException("No clustering to save");
+		}
+		long ticket = kmeans.saveAsync(fileName);
+		codec.writeOk();
+		codec.writeLong(ticket);
+	}
+
+	/**
+	 * This function receives the Long ticket of a save by the client and sends OK
+	 * and the status of the save: PENDING, RUNNING, DONE, FAILED followed by the
+	 * error, or UNKNOWN.
+	 * 
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private void saveStatus() throws IOException, ClassNotFoundException {
+		long ticket = codec.readLong();
+		ModelStore store = ModelStore.getInstance();
+		String status = store.getStatus(ticket).toString();
+		if (store.getError(ticket) != null) {
+			status += ": " + store.getError(ticket);
+		}
+		codec.writeOk();
+		codec.writeString(status);
+	}
+
+	/**
+	 * This function performs clustering using the KMeans algorithm on a given
+	 * dataset and sends the results to the client via an output stream. The
+	 * k-means runs as a job of the 'JobScheduler', with the default priority,
+	 * and the session waits for it.
+	 * 
+	 * @param data a dataset of examples to be clustered
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 * @throws OutOfRangeSampleSize
+	 * @throws ServerException        if no data has been loaded or the server is
+	 *                                busy
+	 */
+	private void clustering(Data data)
+			throws IOException, ClassNotFoundException, OutOfRangeSampleSize, ServerException {
+		int k = codec.readInt();
+		if (data == null) {
+			throw new ServerException("No data loaded");
+		}
+		ClusteringJob job = JobScheduler.getInstance().submit(id, data, k, 0);
+		kmeans = awaitJob(job, false);
+
+		// All this ok, send message
+		codec.writeOk();
+		writeClustering(job.getIterations(), data);
+	}
+
+	/**
+	 * This function writes the result of a clustering, timing the rendering of
+	 * the report.
+	 * 
+	 * @param iterations the number of iterations of the k-means
+	 * @param data       the data clustered
+	 * @throws IOException
+	 */
+	private void writeClustering(int iterations, Data data) throws IOException {
+		long start = System.nanoTime();
+		PhaseEvent event = new PhaseEvent();
+		event.begin();
+		codec.writeClustering(iterations, data, kmeans.getC());
+		Metrics.timer("report", "clustering").recordSince(start);
+		event.commit("report", "clustering", data.getTableName(), kmeans.getC().getNumberOfClusters(),
+				data.getNumberOfExamples(), data.getNumberOfAttributes());
+	}
+
+	/**
+	 * This function receives the number of clusters and a Map of options by the
+	 * client, and clusters the loaded data as 'clustering'. The options are
+	 * "seed", a Long or Integer which makes the run deterministic, "priority", an
+	 * Integer priority of the job, "async", a Boolean which is true to send OK
+	 * and the Long id of the job at once, as 'submitJob', "progress", a Boolean
+	 * which is true to send the progress of the k-means at the end of each
+	 * iteration before OK (see 'ProtocolCodec.writeProgress'), and "projection",
+	 * an Integer number of attributes to run the k-means on a random projection
+	 * of the continuous attributes of the data (see 'KMeansMiner.setProjection').
+	 * While the progress is sent, the client can send the request 16 to end the
+	 * k-means after its current iteration: the clusters found so far are sent as the
+	 * result, unless the run is shared with other clients. A run with a seed is
+	 * shared with the identical requests of all the clients through the
+	 * 'ResultCache' of the 'JobScheduler', so the k-means is only run once for
+	 * them. The result is written with the examples of the data of the client,
+	 * which has the same content as the data of the shared job.
+	 * 
+	 * @param data a dataset of examples to be clustered
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 * @throws OutOfRangeSampleSize
+	 * @throws ServerException        if no data has been loaded, an option is
+	 *                                not valid or the k-means has failed
+	 */
+	private void clusteringWithOptions(Data data)
+			throws IOException, ClassNotFoundException, OutOfRangeSampleSize, ServerException {
+		int k = codec.readInt();
+		Object value = codec.readOptions();
+		if (value != null && !(value instanceof Map)) {
+			throw new ServerException("Clustering options must be a Map");
+		} else if (data == null) {
+			throw new ServerException("No data loaded");
+		}
+		Map<?, ?> options = value == null ? new HashMap<Object, Object>() : (Map<?, ?>) value;
+		Object seed = options.get("seed");
+		Object priority = options.get("priority");
+		Object async = options.get("async");
+		Object progress = options.get("progress");
+		Object projection = options.get("projection");
+		if (seed != null && !(seed instanceof Long) && !(seed instanceof Integer)) {
+			throw new ServerException("The seed must be an integer");
+		} else if (priority != null && !(priority instanceof Integer)) {
+			throw new ServerException("The priority must be an Integer");
+		} else if (async != null && !(async instanceof Boolean)) {
+			throw new ServerException("The async option must be a Boolean");
+		} else if (progress != null && !(progress instanceof Boolean)) {
+			throw new ServerException("The progress option must be a Boolean");
+		} else if (projection != null && (!(projection instanceof Integer) || (Integer) projection < 0)) {
+			throw new ServerException("The projection must be a non-negative Integer");
+		}
+
+		ClusteringJob job = JobScheduler.getInstance().submit(id, data, k,
+				priority == null ? 0 : (Integer) priority, seed == null ? null : ((Number) seed).longValue(),
+				projection == null ? 0 : (Integer) projection);
+		if (Boolean.TRUE.equals(async)) {
+			codec.writeOk();
+			codec.writeLong(job.getId());
+			return;
+		}
+		kmeans = awaitJob(job, Boolean.TRUE.equals(progress));
+
+		codec.writeOk();
+		writeClustering(job.getIterations(), data);
+	}
+
+	/**
+	 * This function waits until a clustering job is finished with success. While
+	 * waiting, the connection is checked every PROBE_INTERVAL milliseconds: if
+	 * the client has disconnected, the job is given up, so it is cancelled unless
+	 * other clients share it. If the progress is asked, each iteration of the
+	 * k-means is sent as soon as it is completed, and a stop request of the
+	 * client ends the k-means after its current iteration.
+	 * 
+	 * @param job      the job
+	 * @param progress true to send the progress of the k-means
+	 * @return the clustering of the job.
+	 * @throws IOException          if the client has disconnected or sent a
+	 *                              request which is not a stop request
+	 * @throws ClassNotFoundException
+	 * @throws OutOfRangeSampleSize if k is not valid for the data
+	 * @throws ServerException      if the job has failed, the wait has been
+	 *                              interrupted or the result has been released
+	 */
+	private KMeansMiner awaitJob(ClusteringJob job, boolean progress)
+			throws IOException, ClassNotFoundException, OutOfRangeSampleSize, ServerException {
+		try {
+			int sent = 0;
+			while (true) {
+				if (progress) {
+					IterationEvent event = job.awaitEvent(sent, PROBE_INTERVAL);
+					if (event != null) {
+						codec.writeProgress(event);
+						codec.flush();
+						sent++;
+					} else if (job.isFinished()) {
+						break;
+					}
+				} else if (job.await(PROBE_INTERVAL)) {
+					break;
+				}
+				if (probe.isDisconnected()) {
+					JobScheduler.getInstance().cancel(id, job);
+					throw new EOFException("Client disconnected while waiting for job " + job.getId());
+				} else if (progress && probe.hasInput()) {
+					int option = codec.readOption();
+					if (option != STOP_REQUEST) {
+						JobScheduler.getInstance().cancel(id, job);
+						throw new IOException("Request " + option + " sent during the clustering");
+					}
+					JobScheduler.getInstance().stop(id, job);
+				}
+			}
+		} catch (InterruptedException e) {
+			JobScheduler.getInstance().cancel(id, job);
+			Thread.currentThread().interrupt();
+			throw new ServerException("Interrupted while waiting for the clustering");
+		}
+		if (job.getError() instanceof OutOfRangeSampleSize) {
+			throw (OutOfRangeSampleSize) job.getError();
+		} else if (job.getStatus() != JOB_STATUS.DONE) {
+			throw new ServerException("Clustering failed: " + job.getError());
+		}
+		KMeansMiner miner = job.getMiner();
+		if (miner == null) {
+			throw new ServerException("The result of job " + job.getId() + " is no longer available");
+		}
+		return miner;
+	}
+
+	/**
+	 * This function receives the number of clusters and the priority of a
+	 * clustering job by the client, submits the job on the loaded data to the
+	 * 'JobScheduler' and sends OK and the Long id of the job, without waiting for
+	 * the k-means.
+	 * 
+	 * @param data a dataset of examples to be clustered
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 * @throws ServerException        if no data has been loaded or the queue of
+	 *                                the jobs is full
+	 */
+	private void submitJob(Data data) throws IOException, ClassNotFoundException, ServerException {
+		int k = codec.readInt();
+		int priority = codec.readInt();
+		if (data == null) {
+			throw new ServerException("No data loaded");
+		}
+		ClusteringJob job = JobScheduler.getInstance().submit(id, data, k, priority);
+		codec.writeOk();
+		codec.writeLong(job.getId());
+	}
+
+	/**
+	 * This function receives the Long id of a job by the client and sends OK, the
+	 * status of the job (QUEUED, RUNNING, DONE, FAILED followed by the error, or
+	 * UNKNOWN) and the Integer number of its current iteration. The jobs of the
+	 * other clients are UNKNOWN.
+	 * 
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private void jobStatus() throws IOException, ClassNotFoundException {
+		JobScheduler scheduler = JobScheduler.getInstance();
+		ClusteringJob job = scheduler.get(codec.readLong());
+		if (job != null && !scheduler.isClient(id, job)) {
+			job = null;
+		}
+		String status = job == null ? JOB_STATUS.UNKNOWN.toString() : job.getStatus().toString();
+		if (job != null && job.getError() != null) {
+			status += ": " + job.getError().getMessage();
+		}
+		codec.writeOk();
+		codec.writeString(status);
+		codec.writeInt(job == null ? 0 : job.getIteration());
+	}
+
+	/**
+	 * This function receives the Long id of a job submitted by the client and
+	 * gives it up: the job is cancelled unless it is finished or shared with
+	 * other clients. It sends OK and a Boolean which is true if the job has been
+	 * cancelled.
+	 * 
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 * @throws ServerException        if the job is not known or has not been
+	 *                                submitted by the client
+	 */
+	private void cancelJob() throws IOException, ClassNotFoundException, ServerException {
+		long jobId = codec.readLong();
+		JobScheduler scheduler = JobScheduler.getInstance();
+		ClusteringJob job = scheduler.get(jobId);
+		if (job == null) {
+			throw new ServerException("Job " + jobId + " is " + JOB_STATUS.UNKNOWN);
+		}
+		if (!job.isFinished() && !scheduler.isClient(id, job)) {
+			throw new ServerException("Job " + jobId + " has not been submitted by this client");
+		}
+		boolean cancelled = scheduler.cancel(id, job);
+		codec.writeOk();
+		codec.writeBoolean(cancelled);
+	}
+
+	/**
+	 * This function receives the Long id of a finished job of the client and
+	 * sends OK and the result of the clustering, as 'clustering', written with
+	 * the data the client has submitted the job with. The clustering becomes the
+	 * one saved by the next save request.
+	 * 
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 * @throws ServerException        if the job is not DONE, has not been
+	 *                                submitted by the client, its result has
+	 *                                been released or the data has been
+	 *                                reloaded since
+	 */
+	private void jobResult() throws IOException, ClassNotFoundException, ServerException {
+		long jobId = codec.readLong();
+		JobScheduler scheduler = JobScheduler.getInstance();
+		ClusteringJob job = scheduler.get(jobId);
+		if (job != null && !scheduler.isClient(id, job)) {
+			job = null;
+		}
+		if (job == null || job.getStatus() != JOB_STATUS.DONE) {
+			throw new ServerException("Job " + jobId + " is " + (job == null ? JOB_STATUS.UNKNOWN : job.getStatus()));
+		}
+		Data data = scheduler.getData(id, job);
+		KMeansMiner miner = job.getMiner();
+		if (data == null || miner == null) {
+			throw new ServerException("The result of job " + jobId + " is no longer available");
+		}
+		kmeans = miner;
+		codec.writeOk();
+		writeClustering(job.getIterations(), data);
+	}
+
+	/**
+	 * This function opens a serialise file, it reads the table name, creates a
+	 * KMeansMiner object with the model of the file, obtains the clusters, and
+	 * writes them to an output stream. The model is taken from the
+	 * 'ModelRegistry', so a popular model is only read from disk once.
+	 * 
+	 * @throws FileNotFoundException
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 * @throws OutOfRangeSampleSize
+	 */
+	private void openFile() throws FileNotFoundException, ClassNotFoundException, IOException, OutOfRangeSampleSize {
+		String tableName = codec.readString();
+
+		kmeans = new KMeansMiner(ModelRegistry.getInstance().get(tableName));
+		codec.writeOk();
+		codec.writeModel(kmeans.getC());
+	}
+
+	/**
+	 * This function receives a name of a table in a database by the client
+	 * and establishes a database connection, it returns a Data object filled with
+	 * the examples for the specified table name.
+	 * 
+	 * @return returns the Data
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 * @throws DatabaseConnectionException
+	 * @throws SQLException
+	 * @throws NoValueException
+	 * @throws EmptySetException
+	 * @throws OutOfRangeSampleSize
+	 * @throws ServerBusyException         if the server is busy
+	 */
+	private Data getConnection() throws IOException, ClassNotFoundException, DatabaseConnectionException, SQLException,
+			NoValueException, EmptySetException, OutOfRangeSampleSize, ServerBusyException {
+		String tableName = codec.readString();
+		Data data;
+		ComputeGate.getInstance().acquire();
+		try {
+			DbAccess db = new DbAccess();
+			db.initConnection();
+			data = new Data(tableName, db);
+			db.closeConnection();
+		} finally {
+			ComputeGate.getInstance().release();
+		}
+
+		codec.writeOk();
+		return data;
+	}
+
+	/**
+	 * This function receives a name of a table and a map of load options by the
+	 * client, it returns a Data object filled with only the requested part of the
+	 * table. The supported options are: <br>
+	 * <br>
+	 * "columns": a String[] (or a List) with the names of the columns to load.
+	 * <br>
+	 * "filter": an Object[] (or a List) of predicates, each one an Object[] with
+	 * the column name, the operator and the value, e.g. {"day", "&gt;=", date}.
+	 * The predicates are combined with AND and bound as parameters of a
+	 * 'PreparedStatement'.
+	 * <br>
+	 * "mode": "distinct" (default) or "weighted", to group the duplicated rows
+	 * into weighted examples.
+	 * <br>
+	 * "watermark": the name of an auto-increment id or timestamp column, to be
+	 * able to reload only the newer rows later.
+	 * <br>
+	 * "hash": a Map from the names of non-numeric columns to a number of buckets
+	 * (or a list of pairs, e.g. {"user_agent", 1024}), to hash the values of
+	 * columns with too many distinct values into that number of buckets (see
+	 * 'HashedDiscreteAttribute'). The number of buckets is at most the system
+	 * property kmeans.load.maxBuckets (65536 by default), and a hashed column
+	 * must be a non-numeric column of the table.
+	 * 
+	 * @return returns the Data
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 * @throws DatabaseConnectionException
+	 * @throws SQLException
+	 * @throws NoValueException
+	 * @throws EmptySetException
+	 * @throws ServerException             if the options are not valid
+	 */
+	private Data getConnectionWithOptions() throws IOException, ClassNotFoundException,
+			DatabaseConnectionException, SQLException, NoValueException, EmptySetException, ServerException {
+		LoadRequest request = readLoadRequest();
+
+		Data data;
+		ComputeGate.getInstance().acquire();
+		try {
+			DbAccess db = new DbAccess();
+			db.initConnection();
+			try {
+				data = new Data(request, db);
+			} finally {
+				db.closeConnection();
+			}
+		} finally {
+			ComputeGate.getInstance().release();
+		}
+
+		codec.writeOk();
+		return data;
+	}
+
+	/**
+	 * This function performs clustering using the KMeans algorithm inside the
+	 * database: it receives a name of a table and a map of load options, as
+	 * 'getConnectionWithOptions', and the number of clusters by the client, then
+	 * sends the centroids and the size of each cluster. The examples are never
+	 * loaded by the server, so the "hash" option is not supported.
+	 * 
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 * @throws DatabaseConnectionException
+	 * @throws SQLException
+	 * @throws NoValueException
+	 * @throws OutOfRangeSampleSize
+	 * @throws ServerException
+	 */
+	private void clusteringInDatabase() throws IOException, ClassNotFoundException, DatabaseConnectionException,
+			SQLException, NoValueException, OutOfRangeSampleSize, ServerException {
+		LoadRequest request = readLoadRequest();
+		int k = codec.readInt();
+		if (!request.getHashBuckets().isEmpty()) {
+			throw new ServerException("Hashed columns cannot be clustered in the database");
+		}
+
+		KMeansMiner miner = new KMeansMiner(k);
+		int numIter;
+		ComputeGate.getInstance().acquire();
+		try {
+			DbAccess db = new DbAccess();
+			db.initConnection();
+			try {
+				numIter = miner.kmeans(db, request);
+			} catch (ClusteringCancelledException e) {
+				throw new ServerException(e.getMessage());
+			} finally {
+				db.closeConnection();
+			}
+		} finally {
+			ComputeGate.getInstance().release();
+		}
+		kmeans = miner;
+
+		codec.writeOk();
+		codec.writeDatabaseClustering(numIter, kmeans.getC(), kmeans.getClusterSizes());
+	}
+
+	/**
+	 * This function appends to the loaded data the rows inserted in the table
+	 * since it was loaded, using the watermark column given in the load options.
+	 * It sends OK, the number of new examples and a Boolean which is true if the
+	 * scaling of a continuous attribute has changed, so the current clustering
+	 * should be computed again. The results of the finished jobs of the client
+	 * on the data are no longer available.
+	 * 
+	 * @param data the data loaded by the client
+	 * @throws IOException
+	 * @throws DatabaseConnectionException
+	 * @throws SQLException
+	 * @throws ServerException             if the data has not been loaded with a
+	 *                                     watermark column, or is being
+	 *                                     clustered by a job
+	 */
+	private void reloadData(Data data)
+			throws IOException, DatabaseConnectionException, SQLException, ServerException {
+		if (data == null || !data.hasWatermark()) {
+			throw new ServerException("No data loaded with a watermark column");
+		} else if (JobScheduler.getInstance().isInUse(id, data)) {
+			throw new ServerBusyException("The data is being clustered, try again later");
+		}
+		int numberOfExamples = data.getNumberOfExamples();
+
+		boolean scalingChanged;
+		ComputeGate.getInstance().acquire();
+		try {
+			DbAccess db = new DbAccess();
+			db.initConnection();
+			try {
+				scalingChanged = data.reload(db);
+			} finally {
+				db.closeConnection();
+			}
+		} finally {
+			ComputeGate.getInstance().release();
+		}
+		JobScheduler.getInstance().reloaded(id, data);
+
+		codec.writeOk();
+		codec.writeInt(data.getNumberOfExamples() - numberOfExamples);
+		codec.writeBoolean(scalingChanged);
+	}
+
+	/**
+	 * This function saves the loaded data to a binary snapshot file with the name
+	 * given by the client, so it can be opened after a restart without reading
+	 * the table again. Sends OK if it is correct.
+	 * 
+	 * @param data the data loaded by the client
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 * @throws ServerException        if no data has been loaded
+	 */
+	private void saveSnapshot(Data data) throws IOException, ClassNotFoundException, ServerException {
+		String fileName = codec.readString();
+		if (data == null) {
+			throw new ServerException("No data loaded");
+		}
+		data.saveSnapshot(fileName);
+		codec.writeOk();
+	}
+
+	/**
+	 * This function opens a data snapshot file with the name given by the client
+	 * and returns the data saved in it. Sends OK if it is correct.
+	 * 
+	 * @return returns the Data
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 * @throws ServerBusyException    if the server is busy
+	 */
+	private Data openSnapshot() throws IOException, ClassNotFoundException, ServerBusyException {
+		String fileName = codec.readString();
+		Data data;
+		ComputeGate.getInstance().acquire();
+		try {
+			data = Data.loadSnapshot(fileName);
+		} finally {
+			ComputeGate.getInstance().release();
+		}
+		codec.writeOk();
+		return data;
+	}
+
+	/**
+	 * This function receives a name of a table and a map of load options by the
+	 * client and builds the load request they describe.
+	 * 
+	 * @return the 'LoadRequest' described by the options.
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 * @throws ServerException        if an option has not the expected type or
+	 *                                a number of buckets is too large
+	 */
+	private LoadRequest readLoadRequest() throws IOException, ClassNotFoundException, ServerException {
+		String tableName = codec.readString();
+		Object value = codec.readOptions();
+		if (value != null && !(value instanceof Map)) {
+			throw new ServerException("Load options must be a Map");
+		}
+		Map<?, ?> options = (Map<?, ?>) value;
+		List<String> columns = new ArrayList<String>();
+		QueryFilter filter = new QueryFilter();
+		if (options == null) {
+			return new LoadRequest(tableName, columns, filter);
+		}
+
+		for (Object column : toList(options.get("columns"), "columns")) {
+			if (!(column instanceof String)) {
+				throw new ServerException("Column names must be strings");
+			}
+			columns.add((String) column);
+		}
+
+		for (Object predicate : toList(options.get("filter"), "filter")) {
+			List<Object> terms = toList(predicate, "filter predicate");
+			if (terms.size() != 3 || !(terms.get(0) instanceof String) || !(terms.get(1) instanceof String)
+					|| !QueryFilter.isSupportedOperator((String) terms.get(1))) {
+				throw new ServerException("Invalid filter predicate: " + terms);
+			}
+			filter.add((String) terms.get(0), (String) terms.get(1), terms.get(2));
+		}
+
+		LoadRequest request = new LoadRequest(tableName, columns, filter);
+		Object mode = options.get("mode");
+		if (mode != null) {
+			try {
+				request.setMode(LOAD_MODE.valueOf(mode.toString().toUpperCase()));
+			} catch (IllegalArgumentException e) {
+				throw new ServerException("Unknown load mode: " + mode);
+			}
+		}
+		Object watermark = options.get("watermark");
+		if (watermark != null && !(watermark instanceof String)) {
+			throw new ServerException("The watermark column name must be a string");
+		}
+		request.setWatermarkColumn((String) watermark);
+		Object hash = options.get("hash");
+		List<Object> hashed = new ArrayList<Object>();
+		if (hash instanceof Map) {
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) hash).entrySet()) {
+				hashed.add(Arrays.asList(entry.getKey(), entry.getValue()));
+			}
+		} else {
+			hashed = toList(hash, "hash");
+		}
+		for (Object column : hashed) {
+			List<Object> terms = toList(column, "hashed column");
+			if (terms.size() != 2 || !(terms.get(0) instanceof String) || !(terms.get(1) instanceof Integer)
+					|| (Integer) terms.get(1) < 1) {
+				throw new ServerException("Invalid hashed column: " + terms);
+			} else if ((Integer) terms.get(1) > MAX_BUCKETS) {
+				throw new ServerException("Too many buckets for column " + terms.get(0) + ", at most " + MAX_BUCKETS);
+			}
+			request.setHashBuckets((String) terms.get(0), (Integer) terms.get(1));
+		}
+		return request;
+	}
+
+	/**
+	 * This function converts an option which is an array or a list into a list.
+	 * 
+	 * @param value the value of the option, may be null
+	 * @param name  name of the option, used in the error message
+	 * @return the elements of the option, empty if the option is null.
+	 * @throws ServerException if the option is neither an array nor a list
+	 */
+	private List<Object> toList(Object value, String name) throws ServerException {
+		if (value == null) {
+			return new ArrayList<Object>();
+		} else if (value instanceof Object[]) {
+			return Arrays.asList((Object[]) value);
+		} else if (value instanceof List) {
+			return new ArrayList<Object>((List<?>) value);
+		}
+		throw new ServerException("Option " + name + " must be an array or a list");
+	}
+}
\ No newline at end of file
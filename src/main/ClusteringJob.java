@@ -0,0 +1,521 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import data.Data;
+import exceptions.ClusteringCancelledException;
+import exceptions.OutOfRangeSampleSize;
+import metrics.Metrics;
+import mining.IterationEvent;
+import mining.IterationListener;
+import mining.KMeansMiner;
+
+/**
+ * The ClusteringJob class is a k-means run submitted to the 'JobScheduler'.
+ * The jobs waiting for a worker are ordered by priority, then by the number of
+ * jobs their client had already submitted (so a client with many jobs does
+ * not delay the jobs of the others), then by their estimated cost (so short
+ * jobs are not delayed by long ones), then in submission order. <br>
+ * <br>
+ * A job can be shared by several clients (see 'ResultCache'): it is cancelled
+ * when the last of them gives it up. <br>
+ * <br>
+ * The job keeps the events of the iterations of its k-means, so its clients
+ * can follow the convergence while it runs (see 'awaitEvent'). Once finished,
+ * the job may be released by the scheduler: it forgets its data and its
+ * clustering, and only keeps its status.
+ */
+public class ClusteringJob implements Runnable, Comparable<ClusteringJob>, IterationListener {
+	private long id;
+	private long clientId;
+	private int priority;
+	private int rank;
+	private long cost;
+	private volatile Data data;
+	private int examples;
+	private int k;
+	/** The seed of the initial centroids, null for a random one */
+	private Long seed;
+	/** The dimension of the random projection of the data, 0 for none */
+	private int projection;
+	private JobScheduler scheduler;
+	private volatile JOB_STATUS status = JOB_STATUS.QUEUED;
+	private volatile KMeansMiner miner;
+	private int iterations;
+	private Exception error;
+	private long submitted = System.currentTimeMillis();
+	private volatile long started;
+	private volatile long finished;
+	/** The ids of the sessions which want the result, guarded by the scheduler */
+	private Set<Long> clients = new HashSet<Long>();
+	/**
+	 * The ids of the sessions which have asked for the result, with the data each
+	 * has submitted (null once reloaded), guarded by the scheduler
+	 */
+	private Map<Long, Data> requesters = new HashMap<Long, Data>();
+	private volatile boolean cancelled;
+	private volatile boolean stopped;
+	/** The events of the iterations run so far, guarded by the job */
+	private List<IterationEvent> events = new ArrayList<IterationEvent>();
+
+	/**
+	 * Constructor for the 'ClusteringJob' class.
+	 *
+	 * @param id         the id of the job
+	 * @param clientId   the id of the session which has submitted the job
+	 * @param priority   the priority of the job, the higher the sooner
+	 * @param rank       the number of unfinished jobs of the client when the job
+	 *                   was submitted
+	 * @param data       the data to cluster, which must not change until the job
+	 *                   is finished
+	 * @param k          the number of clusters
+	 * @param seed       the seed of the choice of the initial centroids, or null
+	 *                   for a random choice
+	 * @param projection the dimension of the random projection of the data, 0
+	 *                   to cluster the data itself (see
+	 *                   'KMeansMiner.setProjection')
+	 * @param scheduler  the scheduler which runs the job
+	 */
+	ClusteringJob(long id, long clientId, int priority, int rank, Data data, int k, Long seed, int projection,
+			JobScheduler scheduler) {
+		this.id = id;
+		this.clientId = clientId;
+		this.priority = priority;
+		this.rank = rank;
+		this.data = data;
+		this.k = k;
+		this.seed = seed;
+		this.projection = projection;
+		this.scheduler = scheduler;
+		this.examples = data.getNumberOfExamples();
+		this.cost = (long) examples * k;
+		this.clients.add(clientId);
+		this.requesters.put(clientId, data);
+	}
+
+	/**
+	 * This function runs the k-means on a worker of the scheduler.
+	 */
+	@Override
+	public void run() {
+		started = System.currentTimeMillis();
+		status = JOB_STATUS.RUNNING;
+		Metrics.timer("clustering", "queue").record((started - submitted) * 1000000L);
+		long start = System.nanoTime();
+		JOB_STATUS result = JOB_STATUS.FAILED;
+		try {
+			KMeansMiner created = seed == null ? new KMeansMiner(k) : new KMeansMiner(k, seed);
+			created.setListener(this);
+			created.setProjection(projection);
+			miner = created;
+			// A cancellation or a stop before the miner existed is passed on here
+			if (cancelled) {
+				created.cancel();
+			}
+			if (stopped) {
+				created.stop();
+			}
+			iterations = miner.kmeans(data);
+			result = JOB_STATUS.DONE;
+			Metrics.timer("clustering", "run").recordSince(start);
+		} catch (ClusteringCancelledException e) {
+			error = e;
+			result = JOB_STATUS.CANCELLED;
+		} catch (OutOfRangeSampleSize e) {
+			error = e;
+			Metrics.timer("clustering", "run").error();
+		} catch (RuntimeException e) {
+			Metrics.timer("clustering", "run").error();
+			error = e;
+			System.out.println("Error in job " + id + ": " + e);
+		} finally {
+			finish(result);
+		}
+	}
+
+	/**
+	 * This function ends a job which has been removed from the queue of the
+	 * scheduler before it started.
+	 */
+	void abort() {
+		cancelled = true;
+		synchronized (this) {
+			error = new ClusteringCancelledException("Clustering cancelled before it started");
+		}
+		finish(JOB_STATUS.CANCELLED);
+	}
+
+	/**
+	 * This function records the end of the job and wakes up the threads waiting
+	 * for it.
+	 *
+	 * @param result the final status of the job
+	 */
+	private void finish(JOB_STATUS result) {
+		finished = System.currentTimeMillis();
+		status = result;
+		scheduler.finished(this);
+		synchronized (this) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * This function stops the k-means of the job, if it is running, at its next
+	 * check of the cancellation.
+	 */
+	void cancel() {
+		cancelled = true;
+		KMeansMiner running = miner;
+		if (running != null) {
+			running.cancel();
+		}
+	}
+
+	/**
+	 * This function asks the k-means of the job to end after its current
+	 * iteration: the job is DONE with the clusters found so far.
+	 */
+	void stop() {
+		stopped = true;
+		KMeansMiner running = miner;
+		if (running != null) {
+			running.stop();
+		}
+	}
+
+	/**
+	 * The function tells if the job has been asked to stop early, so its result
+	 * may not have converged.
+	 *
+	 * @return true if 'stop' has been called.
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 * This function records the event of an iteration of the k-means and wakes
+	 * up the threads waiting for it. It is called by the worker running the
+	 * job.
+	 *
+	 * @param event the iteration completed
+	 */
+	@Override
+	public synchronized void iterationCompleted(IterationEvent event) {
+		events.add(event);
+		notifyAll();
+	}
+
+	/**
+	 * This function waits until the job has an event after the ones already
+	 * read, or is finished, at most the given time.
+	 *
+	 * @param index  the number of events already read
+	 * @param millis the maximum time to wait, in milliseconds
+	 * @return the event at the given index, or null if there is none yet.
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public synchronized IterationEvent awaitEvent(int index, long millis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + millis;
+		long wait = millis;
+		while (events.size() <= index && !isFinished() && wait > 0) {
+			wait(wait);
+			wait = deadline - System.currentTimeMillis();
+		}
+		return events.size() > index ? events.get(index) : null;
+	}
+
+	/**
+	 * This function records that a client wants the result of the job. It is
+	 * called with the lock of the scheduler.
+	 *
+	 * @param clientId the id of the session
+	 * @param data     the data submitted by the client, with the same content as
+	 *                 the data of the job
+	 */
+	void addClient(long clientId, Data data) {
+		clients.add(clientId);
+		requesters.put(clientId, data);
+	}
+
+	/**
+	 * This function records that a client does not want the result of the job
+	 * any more. It is called with the lock of the scheduler.
+	 *
+	 * @param clientId the id of the session
+	 * @return true if no client wants the result any more.
+	 */
+	boolean removeClient(long clientId) {
+		clients.remove(clientId);
+		return clients.isEmpty();
+	}
+
+	/**
+	 * The function tells if a client wants the result of the job. It is called
+	 * with the lock of the scheduler.
+	 *
+	 * @param clientId the id of the session
+	 * @return true if the client has submitted the job or shares it.
+	 */
+	boolean hasClient(long clientId) {
+		return clients.contains(clientId);
+	}
+
+	/**
+	 * The function tells if a client has submitted or shared the job, even if it
+	 * has given it up since. It is called with the lock of the scheduler.
+	 *
+	 * @param clientId the id of the session
+	 * @return true if the client has asked for the result of the job.
+	 */
+	boolean hasRequested(long clientId) {
+		return requesters.containsKey(clientId);
+	}
+
+	/**
+	 * The function returns the data a client has submitted the job with: the
+	 * data of the job, or the data of another client with the same content if
+	 * the job is shared. It is called with the lock of the scheduler.
+	 *
+	 * @param clientId the id of the session
+	 * @return the data of the client, null if the job has been released or the
+	 *         client has reloaded its data since.
+	 */
+	Data getData(long clientId) {
+		return data == null ? null : requesters.get(clientId);
+	}
+
+	/**
+	 * This function records that a client has reloaded its data, so the result
+	 * of the job does not describe the data of the client any more. It is called
+	 * with the lock of the scheduler.
+	 *
+	 * @param clientId the id of the session
+	 * @param data     the data reloaded by the client
+	 */
+	void reloaded(long clientId, Data data) {
+		if (requesters.get(clientId) == data) {
+			requesters.put(clientId, null);
+		}
+	}
+
+	/**
+	 * The function tells if a client is the only one which wants the result of
+	 * the job. It is called with the lock of the scheduler.
+	 *
+	 * @param clientId the id of the session
+	 * @return true if no other client shares the job.
+	 */
+	boolean isOnlyClient(long clientId) {
+		return clients.size() == 1 && clients.contains(clientId);
+	}
+
+	/**
+	 * This function orders the jobs waiting for a worker: the first one is run
+	 * first.
+	 *
+	 * @param other the job to compare with
+	 * @return a negative number if this job has to run before the other one.
+	 */
+	@Override
+	public int compareTo(ClusteringJob other) {
+		if (priority != other.priority) {
+			return Integer.compare(other.priority, priority);
+		} else if (rank != other.rank) {
+			return Integer.compare(rank, other.rank);
+		} else if (cost != other.cost) {
+			return Long.compare(cost, other.cost);
+		}
+		return Long.compare(id, other.id);
+	}
+
+	/**
+	 * This function waits until the job is finished.
+	 *
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public synchronized void await() throws InterruptedException {
+		while (!isFinished()) {
+			wait();
+		}
+	}
+
+	/**
+	 * This function waits until the job is finished, at most the given time.
+	 *
+	 * @param millis the maximum time to wait, in milliseconds
+	 * @return true if the job is finished.
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public synchronized boolean await(long millis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + millis;
+		long wait = millis;
+		while (!isFinished() && wait > 0) {
+			wait(wait);
+			wait = deadline - System.currentTimeMillis();
+		}
+		return isFinished();
+	}
+
+	/**
+	 * The function tells if the job is finished, with or without success.
+	 *
+	 * @return true if the job is DONE, FAILED or CANCELLED.
+	 */
+	public boolean isFinished() {
+		return status == JOB_STATUS.DONE || status == JOB_STATUS.FAILED || status == JOB_STATUS.CANCELLED;
+	}
+
+	/**
+	 * The function returns the id of the job.
+	 *
+	 * @return the value of the variable 'id'.
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * The function returns the id of the session which has submitted the job.
+	 *
+	 * @return the value of the variable 'clientId'.
+	 */
+	public long getClientId() {
+		return clientId;
+	}
+
+	/**
+	 * The function returns the status of the job.
+	 *
+	 * @return the 'JOB_STATUS' of the job.
+	 */
+	public JOB_STATUS getStatus() {
+		return status;
+	}
+
+	/**
+	 * The function returns the iteration of the k-means which is running.
+	 *
+	 * @return the current iteration, 0 if the job has not started, the number
+	 *         of iterations if it has been released.
+	 */
+	public int getIteration() {
+		KMeansMiner running = miner;
+		return running == null ? getIterations() : running.getIteration();
+	}
+
+	/**
+	 * The function returns the data clustered by the job.
+	 *
+	 * @return the value of the variable 'data', null if the job has been
+	 *         released.
+	 */
+	public Data getData() {
+		return data;
+	}
+
+	/**
+	 * The function returns the clustering discovered by the job.
+	 *
+	 * @return the 'KMeansMiner' of the job, null if the job is not DONE or has
+	 *         been released.
+	 */
+	public KMeansMiner getMiner() {
+		return status == JOB_STATUS.DONE ? miner : null;
+	}
+
+	/**
+	 * The function returns the number of examples of the data clustered by the
+	 * job.
+	 *
+	 * @return the value of the variable 'examples'.
+	 */
+	public int getNumberOfExamples() {
+		return examples;
+	}
+
+	/**
+	 * This function forgets the data and the clustering of a finished job, so
+	 * they can be garbage collected. It is called with the lock of the
+	 * scheduler.
+	 */
+	void release() {
+		data = null;
+		miner = null;
+	}
+
+	/**
+	 * The function tells if the job has been released, so its result is not
+	 * available any more.
+	 *
+	 * @return true if 'release' has been called.
+	 */
+	public boolean isReleased() {
+		return data == null;
+	}
+
+	/**
+	 * The function returns the number of iterations of the k-means.
+	 *
+	 * @return the number of iterations, valid if the job is DONE.
+	 */
+	public synchronized int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * The function returns the error of a failed job.
+	 *
+	 * @return the exception thrown by the k-means, null if the job has not
+	 *         failed.
+	 */
+	public synchronized Exception getError() {
+		return error;
+	}
+
+	/**
+	 * The function returns the milliseconds the job has waited for a worker.
+	 *
+	 * @return the time in the queue, up to now if the job has not started.
+	 */
+	public long getQueueTime() {
+		return (started == 0 ? System.currentTimeMillis() : started) - submitted;
+	}
+
+	/**
+	 * The function returns the milliseconds the k-means has run.
+	 *
+	 * @return the time of the run, up to now if the job is running.
+	 */
+	public long getRunTime() {
+		if (started == 0) {
+			return 0;
+		}
+		return (finished == 0 ? System.currentTimeMillis() : finished) - started;
+	}
+
+	/**
+	 * The function returns the time the job has finished.
+	 *
+	 * @return the time in milliseconds, 0 if the job is not finished.
+	 */
+	public long getFinishTime() {
+		return finished;
+	}
+
+	/**
+	 * This function returns a string representation of the job.
+	 *
+	 * @return the id, the status and the progress of the job.
+	 */
+	@Override
+	public String toString() {
+		return "Job " + id + " " + status + " k=" + k + " iteration=" + getIteration();
+	}
+}
@@ -0,0 +1,134 @@
+package main;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import exceptions.ServerBusyException;
+
+/**
+ * The ComputeGate class admits the CPU-heavy work of the sessions (the loading
+ * of the data and the clustering) with a permit for each core, so the requests
+ * running at the same time do not slow down each other. The other requests
+ * wait in a queue of bounded length, for a bounded time; when the queue is
+ * full, or the time has expired, the request is rejected at once with a
+ * 'ServerBusyException'. <br>
+ * <br>
+ * The sizes are configured with the system properties kmeans.compute.permits
+ * (the number of cores by default), kmeans.compute.queue (four times the
+ * permits) and kmeans.compute.maxWaitMs (30 seconds).
+ */
+public class ComputeGate {
+	private static final ComputeGate INSTANCE = new ComputeGate(
+			Integer.getInteger("kmeans.compute.permits", Runtime.getRuntime().availableProcessors()),
+			Integer.getInteger("kmeans.compute.queue", 4 * Runtime.getRuntime().availableProcessors()),
+			Long.getLong("kmeans.compute.maxWaitMs", 30000));
+
+	private Semaphore permits;
+	private int permitCount;
+	private int queueLimit;
+	private long maxWait;
+	private AtomicInteger waiting = new AtomicInteger();
+	private AtomicLong admitted = new AtomicLong();
+	private AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Constructor for the 'ComputeGate' class.
+	 *
+	 * @param permits    the number of requests running at the same time
+	 * @param queueLimit the number of requests waiting for a permit
+	 * @param maxWait    the milliseconds a request waits for a permit
+	 */
+	public ComputeGate(int permits, int queueLimit, long maxWait) {
+		this.permits = new Semaphore(permits, true);
+		this.permitCount = permits;
+		this.queueLimit = queueLimit;
+		this.maxWait = maxWait;
+	}
+
+	/**
+	 * The function returns the gate shared by the whole server.
+	 *
+	 * @return the server-wide 'ComputeGate'.
+	 */
+	public static ComputeGate getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * This function waits for a permit to run a CPU-heavy request. Every call
+	 * which returns normally must be followed by a call to 'release', in a
+	 * finally block.
+	 *
+	 * @throws ServerBusyException if the queue is full or no permit has been
+	 *                             released in time
+	 */
+	public void acquire() throws ServerBusyException {
+		if (permits.tryAcquire()) {
+			admitted.incrementAndGet();
+			return;
+		}
+		if (waiting.incrementAndGet() > queueLimit) {
+			waiting.decrementAndGet();
+			rejected.incrementAndGet();
+			throw new ServerBusyException("Server busy, try again later");
+		}
+		try {
+			if (!permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS)) {
+				rejected.incrementAndGet();
+				throw new ServerBusyException("Server busy, try again later");
+			}
+			admitted.incrementAndGet();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			rejected.incrementAndGet();
+			throw new ServerBusyException("Interrupted while waiting for the server");
+		} finally {
+			waiting.decrementAndGet();
+		}
+	}
+
+	/**
+	 * This function releases the permit taken by 'acquire'.
+	 */
+	public void release() {
+		permits.release();
+	}
+
+	/**
+	 * The function returns the number of requests running.
+	 *
+	 * @return the number of permits taken.
+	 */
+	public int getActive() {
+		return permitCount - permits.availablePermits();
+	}
+
+	/**
+	 * The function returns the number of requests waiting for a permit.
+	 *
+	 * @return the length of the queue.
+	 */
+	public int getWaiting() {
+		return waiting.get();
+	}
+
+	/**
+	 * The function returns the number of requests admitted.
+	 *
+	 * @return the number of permits given.
+	 */
+	public long getAdmitted() {
+		return admitted.get();
+	}
+
+	/**
+	 * The function returns the number of requests rejected.
+	 *
+	 * @return the number of requests rejected because the server was busy.
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+}
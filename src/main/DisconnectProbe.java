@@ -0,0 +1,25 @@
+package main;
+
+/**
+ * The DisconnectProbe interface is implemented by the connections of the
+ * server, so a 'ClientSession' waiting for a long computation can find out
+ * that its client has gone away and stop the computation.
+ */
+public interface DisconnectProbe {
+	/**
+	 * The function tells if the client has closed the connection. It must not
+	 * consume the bytes of the next request.
+	 *
+	 * @return true if the client has disconnected.
+	 */
+	boolean isDisconnected();
+
+	/**
+	 * The function tells if the client has sent bytes which have not been read
+	 * yet, for example a request to stop a computation whose progress is being
+	 * sent. It must not consume the bytes.
+	 *
+	 * @return true if bytes can be read without blocking.
+	 */
+	boolean hasInput();
+}
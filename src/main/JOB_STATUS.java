@@ -0,0 +1,13 @@
+package main;
+
+/**
+ * Enumeration class called 'JOB_STATUS' with the states of a clustering job
+ * submitted to the 'JobScheduler': 'QUEUED' while it waits for a worker,
+ * 'RUNNING' while the k-means runs, 'DONE' when the result is ready, 'FAILED'
+ * if the k-means has failed, 'CANCELLED' if no client wants the result any
+ * more and 'UNKNOWN' for an id which was never issued or whose job has been
+ * forgotten.
+ */
+public enum JOB_STATUS {
+	QUEUED, RUNNING, DONE, FAILED, CANCELLED, UNKNOWN
+}
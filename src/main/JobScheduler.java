@@ -0,0 +1,476 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import data.Data;
+import exceptions.ServerBusyException;
+
+/**
+ * The JobScheduler class runs the clustering jobs of all the clients on a
+ * bounded pool of workers. The jobs waiting for a worker are kept in a
+ * priority queue, in the order of 'ClusteringJob.compareTo', which gives
+ * precedence to the jobs of the clients with fewer jobs. When the queue is
+ * full a job is rejected at once. The finished jobs are kept, with their
+ * result, until they are among the oldest ones. The jobs submitted with a seed
+ * are deterministic, so they are shared through a 'ResultCache': an identical
+ * request gets the job already submitted instead of a new one. A job is
+ * cancelled when all the clients which want its result give it up, by a cancel
+ * request or by disconnecting: a queued job is removed from the queue at once,
+ * a running one stops at the next check of its k-means. <br>
+ * <br>
+ * A finished job keeps its data and its clustering until it is released: the
+ * failed and cancelled jobs at once, the others when the examples of the jobs
+ * kept in the history are too many, oldest first, or when their client
+ * disconnects and no other client shares them. A released job only keeps its
+ * status, and is removed from the cache. <br>
+ * <br>
+ * The sizes are configured with the system properties kmeans.jobs.workers (the
+ * number of cores by default), kmeans.jobs.queue (1000 jobs),
+ * kmeans.jobs.history (1000 finished jobs) and kmeans.jobs.historyExamples (10
+ * million examples in the data of the finished jobs not released).
+ */
+public class JobScheduler {
+	private static final JobScheduler INSTANCE = new JobScheduler(
+			Integer.getInteger("kmeans.jobs.workers", Runtime.getRuntime().availableProcessors()),
+			Integer.getInteger("kmeans.jobs.queue", 1000), Integer.getInteger("kmeans.jobs.history", 1000),
+			Long.getLong("kmeans.jobs.historyExamples", 10000000L));
+
+	private ThreadPoolExecutor workers;
+	private int queueLimit;
+	private int historyLimit;
+	private long maxHistoryExamples;
+	/** The number of examples of the finished jobs not released */
+	private long historyExamples;
+	private long nextId = 1;
+	/** The queued and running jobs */
+	private Map<Long, ClusteringJob> active = new HashMap<Long, ClusteringJob>();
+	/** The number of queued and running jobs of each client */
+	private Map<Long, Integer> clientJobs = new HashMap<Long, Integer>();
+	/** The finished jobs, the oldest ones first */
+	private LinkedHashMap<Long, ClusteringJob> history = new LinkedHashMap<Long, ClusteringJob>();
+	private ResultCache cache = new ResultCache(Long.getLong("kmeans.cache.ttlMs", 10 * 60 * 1000L),
+			Integer.getInteger("kmeans.cache.entries", 256), Long.getLong("kmeans.cache.maxExamples", 10000000L));
+	private long completed;
+	private long failed;
+	private long rejected;
+	private long cancelled;
+
+	/**
+	 * Constructor for the 'JobScheduler' class.
+	 *
+	 * @param workers      the number of jobs running at the same time
+	 * @param queueLimit   the number of jobs waiting for a worker
+	 * @param historyLimit the number of finished jobs kept with their result
+	 */
+	public JobScheduler(int workers, int queueLimit, int historyLimit) {
+		this(workers, queueLimit, historyLimit, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Constructor for the 'JobScheduler' class which bounds the data kept by the
+	 * finished jobs.
+	 *
+	 * @param workers            the number of jobs running at the same time
+	 * @param queueLimit         the number of jobs waiting for a worker
+	 * @param historyLimit       the number of finished jobs kept
+	 * @param maxHistoryExamples the number of examples of the finished jobs kept
+	 *                           with their data and their result
+	 */
+	public JobScheduler(int workers, int queueLimit, int historyLimit, long maxHistoryExamples) {
+		AtomicInteger count = new AtomicInteger();
+		this.workers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+				new PriorityBlockingQueue<Runnable>(), runnable -> {
+					Thread thread = new Thread(runnable, "kmeans-worker-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		this.queueLimit = queueLimit;
+		this.historyLimit = historyLimit;
+		this.maxHistoryExamples = maxHistoryExamples;
+	}
+
+	/**
+	 * The function returns the scheduler shared by the whole server.
+	 *
+	 * @return the server-wide 'JobScheduler'.
+	 */
+	public static JobScheduler getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * This function submits a k-means run on a dataset.
+	 *
+	 * @param clientId the id of the session which submits the job
+	 * @param data     the data to cluster, which must not change until the job is
+	 *                 finished
+	 * @param k        the number of clusters
+	 * @param priority the priority of the job, the higher the sooner; 0 by
+	 *                 default
+	 * @return the job, queued.
+	 * @throws ServerBusyException if the queue is full
+	 */
+	public ClusteringJob submit(long clientId, Data data, int k, int priority) throws ServerBusyException {
+		return submit(clientId, data, k, priority, null);
+	}
+
+	/**
+	 * This function submits a k-means run on a dataset. If a seed is given the
+	 * run is deterministic: when a job with the same seed and k on a dataset of
+	 * the same version is in the 'ResultCache', that job is returned, whether it
+	 * is still queued, running or finished.
+	 *
+	 * @param clientId the id of the session which submits the job
+	 * @param data     the data to cluster, which must not change until the job is
+	 *                 finished
+	 * @param k        the number of clusters
+	 * @param priority the priority of the job, the higher the sooner; 0 by
+	 *                 default
+	 * @param seed     the seed of the initial centroids, or null for a random
+	 *                 choice
+	 * @return the job, new or shared with identical requests.
+	 * @throws ServerBusyException if the queue is full
+	 */
+	public ClusteringJob submit(long clientId, Data data, int k, int priority, Long seed)
+			throws ServerBusyException {
+		return submit(clientId, data, k, priority, seed, 0);
+	}
+
+	/**
+	 * This function submits a k-means run on a dataset, as 'submit' with a seed,
+	 * which may be run on a random projection of the data. Runs with different
+	 * projections are not shared.
+	 *
+	 * @param clientId   the id of the session which submits the job
+	 * @param data       the data to cluster, which must not change until the job
+	 *                   is finished
+	 * @param k          the number of clusters
+	 * @param priority   the priority of the job, the higher the sooner; 0 by
+	 *                   default
+	 * @param seed       the seed of the initial centroids and of the projection,
+	 *                   or null for a random choice
+	 * @param projection the dimension of the random projection of the data, 0
+	 *                   to cluster the data itself (see
+	 *                   'KMeansMiner.setProjection')
+	 * @return the job, new or shared with identical requests.
+	 * @throws ServerBusyException if the queue is full
+	 */
+	public ClusteringJob submit(long clientId, Data data, int k, int priority, Long seed, int projection)
+			throws ServerBusyException {
+		// The digest reads the whole data, so it is computed out of the lock
+		ResultCache.Key key = seed == null ? null
+				: new ResultCache.Key(data.getVersion(), k, seed,
+						projection > 0 ? "local projection=" + projection : "local");
+		ClusteringJob job;
+		synchronized (this) {
+			if (key != null) {
+				job = cache.get(key);
+				if (job != null) {
+					job.addClient(clientId, data);
+					return job;
+				}
+			}
+			if (workers.getQueue().size() >= queueLimit) {
+				rejected++;
+				throw new ServerBusyException("Too many clustering jobs, try again later");
+			}
+			Integer jobs = clientJobs.get(clientId);
+			int rank = jobs == null ? 0 : jobs;
+			job = new ClusteringJob(nextId++, clientId, priority, rank, data, k, seed, projection, this);
+			active.put(job.getId(), job);
+			clientJobs.put(clientId, rank + 1);
+			if (key != null) {
+				cache.put(key, job);
+			}
+		}
+		workers.execute(job);
+		return job;
+	}
+
+	/**
+	 * The function returns a job, queued, running or finished.
+	 *
+	 * @param id the id of the job
+	 * @return the job, or null if the id is not known.
+	 */
+	public synchronized ClusteringJob get(long id) {
+		ClusteringJob job = active.get(id);
+		return job != null ? job : history.get(id);
+	}
+
+	/**
+	 * This function is called by a job when it is finished: it moves the job to
+	 * the history, forgets the oldest finished jobs and releases the oldest
+	 * results beyond the limit of examples. The job just finished is not
+	 * released, so its clients can read its result.
+	 *
+	 * @param job the finished job
+	 */
+	synchronized void finished(ClusteringJob job) {
+		active.remove(job.getId());
+		int jobs = clientJobs.get(job.getClientId()) - 1;
+		if (jobs == 0) {
+			clientJobs.remove(job.getClientId());
+		} else {
+			clientJobs.put(job.getClientId(), jobs);
+		}
+		if (job.getStatus() == JOB_STATUS.DONE) {
+			completed++;
+		} else if (job.getStatus() == JOB_STATUS.CANCELLED) {
+			cancelled++;
+			release(job);
+		} else {
+			failed++;
+			release(job);
+		}
+		history.put(job.getId(), job);
+		if (!job.isReleased()) {
+			historyExamples += job.getNumberOfExamples();
+		}
+		while (history.size() > historyLimit) {
+			ClusteringJob oldest = history.remove(history.keySet().iterator().next());
+			if (!oldest.isReleased()) {
+				historyExamples -= oldest.getNumberOfExamples();
+			}
+		}
+		Iterator<ClusteringJob> iterator = history.values().iterator();
+		while (historyExamples > maxHistoryExamples && iterator.hasNext()) {
+			ClusteringJob oldest = iterator.next();
+			if (oldest != job) {
+				release(oldest);
+			}
+		}
+	}
+
+	/**
+	 * This function releases the data and the result of a finished job and
+	 * removes it from the cache.
+	 *
+	 * @param job the finished job
+	 */
+	private void release(ClusteringJob job) {
+		cache.remove(job);
+		if (!job.isReleased()) {
+			if (history.containsKey(job.getId())) {
+				historyExamples -= job.getNumberOfExamples();
+			}
+			job.release();
+		}
+	}
+
+	/**
+	 * This function gives up the result of a job for a client. If no other client
+	 * wants the result, the job is cancelled: removed from the queue if it has
+	 * not started, otherwise removed from the cache and stopped at the next
+	 * check of the k-means.
+	 *
+	 * @param clientId the id of the session
+	 * @param job      the job
+	 * @return true if the job has been cancelled, false if it is finished or
+	 *         other clients still want its result.
+	 */
+	public synchronized boolean cancel(long clientId, ClusteringJob job) {
+		if (job.isFinished() || !job.removeClient(clientId)) {
+			return false;
+		}
+		if (workers.remove(job)) {
+			job.abort();
+		} else {
+			// The job runs until its next check, no identical request must share it
+			cache.remove(job);
+			job.cancel();
+		}
+		return true;
+	}
+
+	/**
+	 * This function ends the k-means of a job after its current iteration, for a
+	 * client which does not want to wait for the convergence. Only the single
+	 * client of a job can stop it, since the others want a converged result. The
+	 * job is removed from the cache, so an identical request runs the k-means
+	 * again.
+	 *
+	 * @param clientId the id of the session
+	 * @param job      the job
+	 * @return true if the job will stop, false if it is finished or shared with
+	 *         other clients.
+	 */
+	public synchronized boolean stop(long clientId, ClusteringJob job) {
+		if (job.isFinished() || !job.isOnlyClient(clientId)) {
+			return false;
+		}
+		cache.remove(job);
+		job.stop();
+		return true;
+	}
+
+	/**
+	 * This function gives up the results of all the jobs of a client, for
+	 * example when it disconnects: its unfinished jobs are cancelled, and its
+	 * finished jobs are released unless they are shared with other clients or
+	 * kept in the cache for the next identical requests.
+	 *
+	 * @param clientId the id of the session
+	 * @return the number of jobs cancelled.
+	 */
+	public synchronized int cancelAll(long clientId) {
+		int count = 0;
+		for (ClusteringJob job : new ArrayList<ClusteringJob>(active.values())) {
+			if (job.hasClient(clientId) && cancel(clientId, job)) {
+				count++;
+			}
+		}
+		for (ClusteringJob job : history.values()) {
+			if (!job.isReleased() && job.isOnlyClient(clientId) && !cache.contains(job)) {
+				release(job);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * The function tells if a client has asked for the result of a job, queued,
+	 * running or finished: only these clients can read its status and its
+	 * result.
+	 *
+	 * @param clientId the id of the session
+	 * @param job      the job
+	 * @return true if the client has submitted the job or shared it.
+	 */
+	public synchronized boolean isClient(long clientId, ClusteringJob job) {
+		return job.hasRequested(clientId);
+	}
+
+	/**
+	 * The function returns the data a client has submitted a job with. A shared
+	 * job clusters the data of the client which has submitted it first, the
+	 * result of another client is written with its own data, which has the same
+	 * content.
+	 *
+	 * @param clientId the id of the session
+	 * @param job      the job
+	 * @return the data of the client, null if the client has not asked for the
+	 *         result, the job has been released or the client has reloaded its
+	 *         data since.
+	 */
+	public synchronized Data getData(long clientId, ClusteringJob job) {
+		return job.getData(clientId);
+	}
+
+	/**
+	 * This function records that a client has reloaded a dataset: the results
+	 * of its jobs on the dataset do not describe it any more and are no longer
+	 * available to the client. They stay valid for the other clients which
+	 * share the jobs, since the reload does not change the attributes the
+	 * centroids refer to (see 'Data.reload').
+	 *
+	 * @param clientId the id of the session
+	 * @param data     the dataset reloaded by the client
+	 */
+	public synchronized void reloaded(long clientId, Data data) {
+		for (ClusteringJob job : active.values()) {
+			job.reloaded(clientId, data);
+		}
+		for (ClusteringJob job : history.values()) {
+			job.reloaded(clientId, data);
+		}
+	}
+
+	/**
+	 * The function tells if a client has a queued or running job on a dataset.
+	 *
+	 * @param clientId the id of the session
+	 * @param data     the dataset
+	 * @return true if a job of the client uses the dataset.
+	 */
+	public synchronized boolean isInUse(long clientId, Data data) {
+		for (ClusteringJob job : active.values()) {
+			if (job.getClientId() == clientId && job.getData() == data) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The function returns the cache of the deterministic jobs.
+	 *
+	 * @return the 'ResultCache' of the scheduler.
+	 */
+	public ResultCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * The function returns the number of jobs waiting for a worker.
+	 *
+	 * @return the length of the queue.
+	 */
+	public int getQueued() {
+		return workers.getQueue().size();
+	}
+
+	/**
+	 * The function returns the number of workers.
+	 *
+	 * @return the number of jobs which can run at the same time.
+	 */
+	public int getWorkers() {
+		return workers.getMaximumPoolSize();
+	}
+
+	/**
+	 * The function returns the number of jobs running.
+	 *
+	 * @return the number of busy workers.
+	 */
+	public int getRunning() {
+		return workers.getActiveCount();
+	}
+
+	/**
+	 * The function returns the number of jobs finished with success.
+	 *
+	 * @return the number of jobs DONE.
+	 */
+	public synchronized long getCompleted() {
+		return completed;
+	}
+
+	/**
+	 * The function returns the number of jobs failed.
+	 *
+	 * @return the number of jobs FAILED.
+	 */
+	public synchronized long getFailed() {
+		return failed;
+	}
+
+	/**
+	 * The function returns the number of jobs cancelled, before or while they
+	 * were running.
+	 *
+	 * @return the number of jobs CANCELLED.
+	 */
+	public synchronized long getCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * The function returns the number of jobs rejected because the queue was
+	 * full.
+	 *
+	 * @return the number of jobs rejected.
+	 */
+	public synchronized long getRejected() {
+		return rejected;
+	}
+}
@@ -3,53 +3,98 @@ package main;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.concurrent.ExecutorService;
 
 /**
  * The MultiServer class creates a server that listens for incoming client
- * connections on a specified port and creates a new thread for each client
- * connection that will be handle by the class 'ServerOneClient'.
+ * connections on a specified port. By default the connections are handled by
+ * the non-blocking 'NioServer'; with the argument "threads" each client
+ * connection is handled by the class 'ServerOneClient' on its own thread, a
+ * virtual thread when the Java runtime supports it.
  */
 public class MultiServer {
 	/** The port in which the server is listening */
 	private static final int PORT = 8080;
 
+	private int port;
+	private boolean nio;
+
 	/**
 	 * This is the main function that creates a new MultiServer object with a
-	 * specified port number.
+	 * specified port number. The argument "threads" selects the server with a
+	 * thread for each client instead of the non-blocking one.
 	 */
 	public static void main(String[] args) {
-		new MultiServer(PORT);
+		boolean threads = args.length > 0 && args[0].equalsIgnoreCase("threads");
+		new MultiServer(PORT, !threads);
 	}
 
 	/**
 	 * Constructor method that takes in an integer 'port' as a parameter. When an
 	 * instance of the 'Multiserver class' is created with a specific port, this
-	 * constructor is called and calls the 'run()' method, that creates a
-	 * `ServerSocket` and listens for incoming client connections on the port.
+	 * constructor is called and calls the 'run()' method, that listens for
+	 * incoming client connections on the port with the non-blocking server, the
+	 * default of 'main'.
 	 * 
 	 * @param port integer 'port' where the server is run
 	 */
 	public MultiServer(int port) {
+		this(port, true);
+	}
+
+	/**
+	 * Constructor method that takes in an integer 'port' and the kind of server.
+	 * It calls the 'run()' method, which listens for incoming client connections
+	 * on the port.
+	 * 
+	 * @param port integer 'port' where the server is run
+	 * @param nio  true to handle the connections with the non-blocking
+	 *             'NioServer', false to create a thread for each client
+	 */
+	public MultiServer(int port, boolean nio) {
+		this.port = port;
+		this.nio = nio;
+		ServerStatus.register();
 		run();
 	}
 
 	/**
 	 * This function creates a server socket on the 'port' and waits for client
-	 * connections, when a client connects the server on the port, a thread handle
-	 * by the class 'ServerOneClient' is created, then the thread is started.
+	 * connections, when a client connects the server on the port, a session handle
+	 * by the class 'ServerOneClient' is created, then it is run by the executor
+	 * of the sessions, on a virtual thread if possible. If
+	 * the non-blocking server is selected, the connections are handled by a
+	 * 'NioServer' instead.
 	 * 
 	 * @throws IOException
 	 */
 	public void run() {
 		ServerSocket serverSocket;
 		try {
-			serverSocket = new ServerSocket(PORT);
-			System.out.println("Server waiting for response on port " + PORT);
+			if (nio) {
+				new NioServer(port).run();
+				return;
+			}
+			serverSocket = new ServerSocket(port);
+			ExecutorService sessions = SessionExecutors.create();
+			System.out.println("Server waiting for response on port " + port
+					+ (SessionExecutors.isVirtual() ? " (virtual threads)" : ""));
 			while (true) {
 				Socket socket = serverSocket.accept();
 				System.out.println("Client conected: " + socket.getInetAddress().getHostAddress());
-				ServerOneClient oneClient = new ServerOneClient(socket);
-				oneClient.start();
+				sessions.execute(() -> {
+					try {
+						// The streams are opened on the session thread, not on the accepting one
+						new ServerOneClient(socket).run();
+					} catch (IOException e) {
+						System.out.println("Error: " + e);
+						try {
+							socket.close();
+						} catch (IOException e1) {
+							System.out.println("Socket not closed: " + e1.getMessage());
+						}
+					}
+				});
 			}
 		} catch (IOException e) {
 			System.out.println("Error starting the server: " + e.getMessage());
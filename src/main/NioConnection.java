@@ -0,0 +1,345 @@
+package main;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The NioConnection class is a client connection of the 'NioServer'. The I/O
+ * thread of the connection appends the bytes received to an inbound buffer
+ * and, when no request of the connection is being handled, hands the
+ * connection to the compute pool, which handles the buffered requests with a
+ * 'ClientSession' and then releases the thread. An idle connection holds no
+ * thread. The answers are queued and written by the I/O thread when the
+ * channel is writable.
+ */
+class NioConnection implements DisconnectProbe {
+	/** Maximum number of received bytes not yet read by the session */
+	private static final int MAX_INBOUND_BYTES = 16 * 1024 * 1024;
+
+	/**
+	 * The "Inbound" class is the stream the session reads the requests from: the
+	 * bytes received by the I/O thread. A read waits for the rest of a partial
+	 * request, at most the read timeout. It is an inner class of 'NioConnection'.
+	 */
+	private class Inbound extends InputStream {
+		private Deque<byte[]> chunks = new ArrayDeque<byte[]>();
+		private int position;
+		private int buffered;
+		private boolean endOfStream;
+		/** True while the connection is handed to the compute pool */
+		private boolean running;
+
+		/**
+		 * This function appends the bytes received by the I/O thread.
+		 *
+		 * @param bytes the bytes received
+		 * @return true if the connection must be handed to the compute pool.
+		 * @throws IOException if too many bytes are waiting to be read
+		 */
+		synchronized boolean offer(byte[] bytes) throws IOException {
+			if (buffered + bytes.length > MAX_INBOUND_BYTES) {
+				throw new IOException("Request too large");
+			}
+			chunks.add(bytes);
+			buffered += bytes.length;
+			notifyAll();
+			if (running) {
+				return false;
+			}
+			running = true;
+			return true;
+		}
+
+		/**
+		 * This function records that the client has closed the connection.
+		 *
+		 * @return true if no request is being handled, so the connection can be
+		 *         closed at once.
+		 */
+		synchronized boolean finish() {
+			endOfStream = true;
+			notifyAll();
+			return !running;
+		}
+
+		/**
+		 * This function releases the compute pool if no more bytes are buffered.
+		 *
+		 * @return true if the connection has been released, false if another
+		 *         request has been received in the meantime or the client has
+		 *         closed the connection, so the session must read again.
+		 */
+		synchronized boolean release() {
+			if (buffered > 0 || endOfStream) {
+				return false;
+			}
+			running = false;
+			return true;
+		}
+
+		@Override
+		public synchronized int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public synchronized int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			long deadline = System.currentTimeMillis() + readTimeout;
+			while (buffered == 0 && !endOfStream) {
+				long wait = deadline - System.currentTimeMillis();
+				if (wait <= 0) {
+					throw new SocketTimeoutException("Incomplete request");
+				}
+				try {
+					wait(wait);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while reading the request");
+				}
+			}
+			if (buffered == 0) {
+				return -1;
+			}
+			int count = 0;
+			while (count < len && buffered > 0) {
+				byte[] chunk = chunks.peek();
+				int n = Math.min(len - count, chunk.length - position);
+				System.arraycopy(chunk, position, b, off + count, n);
+				count += n;
+				position += n;
+				buffered -= n;
+				if (position == chunk.length) {
+					chunks.poll();
+					position = 0;
+				}
+			}
+			return count;
+		}
+
+		@Override
+		public synchronized int available() {
+			return buffered;
+		}
+
+		/**
+		 * The function tells if the client has closed the connection.
+		 *
+		 * @return true if the end of the stream has been received.
+		 */
+		synchronized boolean isFinished() {
+			return endOfStream;
+		}
+	}
+
+	/**
+	 * The "Outbound" class is the stream the session writes the answers to: the
+	 * bytes written are queued when the stream is flushed, and the I/O thread is
+	 * asked to write them. It is an inner class of 'NioConnection'.
+	 */
+	private class Outbound extends OutputStream {
+		private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+		@Override
+		public void write(int b) {
+			pending.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			pending.write(b, off, len);
+		}
+
+		@Override
+		public void flush() {
+			if (pending.size() > 0) {
+				enqueue(ByteBuffer.wrap(pending.toByteArray()));
+				pending.reset();
+			}
+		}
+	}
+
+	private SocketChannel channel;
+	private NioServer.IoLoop loop;
+	private ExecutorService computePool;
+	private long readTimeout;
+	private SelectionKey key;
+	private Inbound inbound = new Inbound();
+	private Outbound outbound = new Outbound();
+	private volatile ClientSession session;
+	/** The answers not yet written to the channel */
+	private Deque<ByteBuffer> writeQueue = new ArrayDeque<ByteBuffer>();
+	private boolean closeAfterWrite;
+
+	/**
+	 * Constructor for the 'NioConnection' class.
+	 *
+	 * @param channel     the channel of the client, in non-blocking mode
+	 * @param loop        the I/O thread of the connection
+	 * @param computePool the pool the requests are handled by
+	 * @param readTimeout milliseconds to wait for the rest of a partial request
+	 * @throws IOException
+	 */
+	NioConnection(SocketChannel channel, NioServer.IoLoop loop, ExecutorService computePool, long readTimeout) {
+		this.channel = channel;
+		this.loop = loop;
+		this.computePool = computePool;
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * The function returns the channel of the client.
+	 *
+	 * @return the 'SocketChannel' of the connection.
+	 */
+	SocketChannel getChannel() {
+		return channel;
+	}
+
+	/**
+	 * The function sets the key of the channel in the selector of the I/O thread.
+	 *
+	 * @param key the 'SelectionKey' of the connection
+	 */
+	void setKey(SelectionKey key) {
+		this.key = key;
+	}
+
+	/**
+	 * This function is called by the I/O thread with the bytes received, it hands
+	 * the connection to the compute pool if it is idle.
+	 *
+	 * @param bytes the bytes received
+	 * @throws IOException if too many bytes are waiting to be read
+	 */
+	void received(byte[] bytes) throws IOException {
+		if (inbound.offer(bytes)) {
+			computePool.execute(this::drain);
+		}
+	}
+
+	/**
+	 * This function is called by the I/O thread when the client has closed the
+	 * connection.
+	 */
+	void endOfStream() {
+		if (inbound.finish()) {
+			close();
+		}
+	}
+
+	/**
+	 * This function runs on the compute pool: it handles the requests buffered by
+	 * the connection, then releases the thread. If a request fails, or the client
+	 * disconnects, the connection is closed once the answers have been written.
+	 */
+	private void drain() {
+		boolean open = true;
+		try {
+			// A read is started only if bytes are buffered, an idle session holds no thread
+			while (open && !inbound.release()) {
+				if (session == null) {
+					// The first bytes of the client tell the protocol of the session
+					session = new ClientSession(ProtocolCodec.negotiate(inbound, outbound), this);
+				} else {
+					open = session.process();
+				}
+			}
+		} catch (IOException e) {
+			open = false;
+			System.out.println("Error: " + e);
+		} catch (RuntimeException e) {
+			open = false;
+			System.out.println("Error: " + e);
+		} finally {
+			if (!open) {
+				synchronized (this) {
+					closeAfterWrite = true;
+				}
+				loop.requestWrite(this);
+			}
+		}
+	}
+
+	/**
+	 * This function queues an answer and asks the I/O thread to write it.
+	 *
+	 * @param buffer the bytes of the answer
+	 */
+	private void enqueue(ByteBuffer buffer) {
+		synchronized (this) {
+			writeQueue.add(buffer);
+		}
+		loop.requestWrite(this);
+	}
+
+	/**
+	 * This function is called by the I/O thread to write the queued answers,
+	 * until the queue is empty or the channel is full.
+	 *
+	 * @return true if everything has been written.
+	 * @throws IOException
+	 */
+	synchronized boolean writeQueued() throws IOException {
+		while (!writeQueue.isEmpty()) {
+			ByteBuffer buffer = writeQueue.peek();
+			channel.write(buffer);
+			if (buffer.hasRemaining()) {
+				return false;
+			}
+			writeQueue.poll();
+		}
+		if (closeAfterWrite) {
+			close();
+		}
+		return true;
+	}
+
+	/**
+	 * This function tells if the client has closed the connection, as recorded
+	 * by the I/O thread, which goes on reading while a request is handled.
+	 */
+	@Override
+	public boolean isDisconnected() {
+		return inbound.isFinished() || !channel.isOpen();
+	}
+
+	/**
+	 * This function tells if the I/O thread has received bytes which the session
+	 * has not read yet.
+	 */
+	@Override
+	public boolean hasInput() {
+		return inbound.available() > 0;
+	}
+
+	/**
+	 * This function closes the channel of the client and ends its session.
+	 */
+	void close() {
+		ClientSession ended = session;
+		if (ended != null) {
+			ended.close();
+		}
+		try {
+			if (key != null) {
+				key.cancel();
+			}
+			channel.close();
+		} catch (IOException e) {
+			System.out.println("Socket not closed: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,243 @@
+package main;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The NioServer class is the non-blocking front end of the server: an acceptor
+ * thread accepts the client connections and assigns them, in turn, to a few
+ * I/O threads, each one multiplexing its connections with a 'Selector'. The
+ * requests are handled by a separate compute pool, so the number of threads
+ * does not grow with the number of connected clients, most of which are idle.
+ * The protocol is the same as the one of 'ServerOneClient'. <br>
+ * <br>
+ * The sizes are configured with the system properties kmeans.nio.ioThreads,
+ * kmeans.nio.computeThreads and kmeans.nio.readTimeoutMs (the time a partial
+ * request is waited for). Without kmeans.nio.computeThreads the requests run
+ * on the executor of 'SessionExecutors'.
+ */
+public class NioServer {
+	/** Size of the buffer of each I/O thread */
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The "IoLoop" class is an I/O thread: it reads the bytes received by its
+	 * connections and writes their queued answers. It is an inner class of
+	 * 'NioServer'.
+	 */
+	class IoLoop extends Thread {
+		private Selector selector;
+		private Queue<NioConnection> registrations = new ConcurrentLinkedQueue<NioConnection>();
+		private Queue<NioConnection> writes = new ConcurrentLinkedQueue<NioConnection>();
+		private ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+		/**
+		 * Constructor for the inner class 'IoLoop'.
+		 *
+		 * @param name the name of the thread
+		 * @throws IOException
+		 */
+		IoLoop(String name) throws IOException {
+			super(name);
+			selector = Selector.open();
+		}
+
+		/**
+		 * This function hands a new connection to the thread.
+		 *
+		 * @param connection the connection accepted
+		 */
+		void register(NioConnection connection) {
+			registrations.add(connection);
+			selector.wakeup();
+		}
+
+		/**
+		 * This function asks the thread to write the queued answers of a connection.
+		 *
+		 * @param connection the connection with queued answers
+		 */
+		void requestWrite(NioConnection connection) {
+			writes.add(connection);
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				try {
+					selector.select();
+					registerConnections();
+					writeConnections();
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while (keys.hasNext()) {
+						SelectionKey key = keys.next();
+						keys.remove();
+						handle(key);
+					}
+				} catch (IOException e) {
+					System.out.println("Error: " + e);
+				}
+			}
+		}
+
+		/**
+		 * This function registers the new connections in the selector.
+		 */
+		private void registerConnections() {
+			NioConnection connection;
+			while ((connection = registrations.poll()) != null) {
+				try {
+					connection.setKey(connection.getChannel().register(selector, SelectionKey.OP_READ, connection));
+				} catch (IOException | RuntimeException e) {
+					System.out.println("Error: " + e);
+					connection.close();
+				}
+			}
+		}
+
+		/**
+		 * This function writes the answers queued since the last selection, and
+		 * waits for the channels which are full to be writable.
+		 */
+		private void writeConnections() {
+			NioConnection connection;
+			while ((connection = writes.poll()) != null) {
+				SelectionKey key = connection.getChannel().keyFor(selector);
+				if (key != null && key.isValid()) {
+					write(key, connection);
+				}
+			}
+		}
+
+		/**
+		 * This function handles a channel which is readable or writable. An error
+		 * on the channel, or in the handling of the bytes received, closes the
+		 * connection only: the thread goes on with the other ones.
+		 *
+		 * @param key the key of the channel
+		 */
+		private void handle(SelectionKey key) {
+			NioConnection connection = (NioConnection) key.attachment();
+			if (key.isValid() && key.isWritable()) {
+				write(key, connection);
+			}
+			if (key.isValid() && key.isReadable()) {
+				try {
+					buffer.clear();
+					int n = connection.getChannel().read(buffer);
+					if (n < 0) {
+						key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+						connection.endOfStream();
+					} else if (n > 0) {
+						buffer.flip();
+						byte[] bytes = new byte[n];
+						buffer.get(bytes);
+						connection.received(bytes);
+					}
+				} catch (IOException | RuntimeException e) {
+					System.out.println("Error: " + e);
+					connection.close();
+				}
+			}
+		}
+
+		/**
+		 * This function writes the queued answers of a connection, and waits for
+		 * the channel to be writable if it is full.
+		 *
+		 * @param key        the key of the channel
+		 * @param connection the connection
+		 */
+		private void write(SelectionKey key, NioConnection connection) {
+			try {
+				boolean done = connection.writeQueued();
+				if (key.isValid()) {
+					key.interestOps(done ? key.interestOps() & ~SelectionKey.OP_WRITE
+							: key.interestOps() | SelectionKey.OP_WRITE);
+				}
+			} catch (IOException | RuntimeException e) {
+				System.out.println("Error: " + e);
+				connection.close();
+			}
+		}
+	}
+
+	private int port;
+	private IoLoop[] loops;
+	private ExecutorService computePool;
+	private long readTimeout;
+	private AtomicInteger nextLoop = new AtomicInteger();
+
+	/**
+	 * Constructor for the 'NioServer' class, with the sizes given by the system
+	 * properties.
+	 *
+	 * @param port the port in which the server is listening
+	 * @throws IOException
+	 */
+	public NioServer(int port) throws IOException {
+		int cores = Runtime.getRuntime().availableProcessors();
+		this.port = port;
+		this.readTimeout = Long.getLong("kmeans.nio.readTimeoutMs", 60000);
+		this.loops = new IoLoop[Integer.getInteger("kmeans.nio.ioThreads", Math.max(1, Math.min(4, cores / 2)))];
+		for (int i = 0; i < loops.length; i++) {
+			loops[i] = new IoLoop("nio-io-" + i);
+			loops[i].setDaemon(true);
+		}
+		Integer computeThreads = Integer.getInteger("kmeans.nio.computeThreads");
+		// The CPU-heavy work is bounded by the 'ComputeGate', so by default a request never waits for a thread
+		this.computePool = computeThreads == null ? SessionExecutors.create()
+				: Executors.newFixedThreadPool(computeThreads);
+	}
+
+	/**
+	 * This function starts the I/O threads, then accepts the client connections
+	 * and assigns each one to an I/O thread. It never returns.
+	 *
+	 * @throws IOException if the server socket cannot be opened
+	 */
+	public void run() throws IOException {
+		for (IoLoop loop : loops) {
+			loop.start();
+		}
+		ServerSocketChannel server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(port));
+		System.out.println("Server waiting for response on port " + port + " (" + loops.length + " I/O threads)");
+		while (true) {
+			SocketChannel channel = server.accept();
+			System.out.println("Client conected: " + channel.socket().getInetAddress().getHostAddress());
+			try {
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+				IoLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+				loop.register(new NioConnection(channel, loop, computePool, readTimeout));
+			} catch (IOException e) {
+				System.out.println("Error: " + e);
+				channel.close();
+			}
+		}
+	}
+
+	/**
+	 * This function returns a string representation of the server.
+	 *
+	 * @return the port and the I/O threads.
+	 */
+	@Override
+	public String toString() {
+		return "NioServer:" + port + Arrays.toString(loops);
+	}
+}
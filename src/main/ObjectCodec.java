@@ -0,0 +1,151 @@
+package main;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+import data.Data;
+import mining.ClusterSet;
+import mining.IterationEvent;
+
+/**
+ * The ObjectCodec class is the protocol of the first versions of the server:
+ * every argument and answer is a serialised object, the options are boxed
+ * Integers and the clustering results are sent as text. The stream of the
+ * answers is reset after each answer, so its table of handles does not grow
+ * for the whole session.
+ */
+class ObjectCodec extends ProtocolCodec {
+	private ObjectInputStream in;
+	private ObjectOutputStream out;
+
+	/**
+	 * Constructor for the 'ObjectCodec' class. It reads the header of the object
+	 * stream of the client and sends the header of the answers.
+	 *
+	 * @param in  the stream of the requests, starting with the header
+	 * @param out the stream of the answers
+	 * @throws IOException
+	 */
+	ObjectCodec(InputStream in, OutputStream out) throws IOException {
+		this.in = new ObjectInputStream(in);
+		this.out = new ObjectOutputStream(out);
+		this.out.flush();
+	}
+
+	@Override
+	public int readOption() throws IOException, ClassNotFoundException {
+		return (int) in.readObject();
+	}
+
+	@Override
+	public String readString() throws IOException, ClassNotFoundException {
+		return (String) in.readObject();
+	}
+
+	@Override
+	public int readInt() throws IOException, ClassNotFoundException {
+		return (int) in.readObject();
+	}
+
+	@Override
+	public long readLong() throws IOException, ClassNotFoundException {
+		return (Long) in.readObject();
+	}
+
+	@Override
+	public Object readOptions() throws IOException, ClassNotFoundException {
+		return in.readObject();
+	}
+
+	@Override
+	public void writeOk() throws IOException {
+		out.writeObject("OK");
+	}
+
+	@Override
+	public void writeString(String value) throws IOException {
+		out.writeObject(value);
+	}
+
+	@Override
+	public void writeInt(int value) throws IOException {
+		out.writeObject(value);
+	}
+
+	@Override
+	public void writeLong(long value) throws IOException {
+		out.writeObject(value);
+	}
+
+	@Override
+	public void writeBoolean(boolean value) throws IOException {
+		out.writeObject(value);
+	}
+
+	/**
+	 * This function writes the result of the clustering as two texts: the
+	 * examples of the data with the number of iterations and the clusters, then
+	 * the clusters alone.
+	 */
+	@Override
+	public void writeClustering(int iterations, Data data, ClusterSet C) throws IOException {
+		String text = "Data Examples:\n" + data + "\n\n";
+		text += "Numero di Iterazione:" + iterations + "\n\n" + C.toString(data) + "\n";
+		out.writeObject(text);
+		out.writeObject(C.toString(data));
+	}
+
+	@Override
+	public void writeModel(ClusterSet C) throws IOException {
+		out.writeObject(C.toString());
+	}
+
+	@Override
+	public void writeDatabaseClustering(int iterations, ClusterSet C, long[] sizes) throws IOException {
+		String text = "Numero di Iterazione:" + iterations + "\n\n";
+		for (int i = 0; i < C.getNumberOfClusters(); i++) {
+			text += i + ":" + C.get(i) + " size=" + sizes[i] + "\n";
+		}
+		out.writeObject(text);
+	}
+
+	/**
+	 * This function writes the iteration as a text starting with "Iteration ",
+	 * which the client can tell from the acknowledgement "OK".
+	 */
+	@Override
+	public void writeProgress(IterationEvent event) throws IOException {
+		out.writeObject(event.toString());
+	}
+
+	/**
+	 * This function writes the message of the error in place of OK.
+	 */
+	@Override
+	public void writeBusy(String message) throws IOException {
+		out.writeObject(message);
+	}
+
+	/**
+	 * This function writes nothing: the clients of this protocol only see the
+	 * connection closed.
+	 */
+	@Override
+	public void writeError(String message) {
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.reset();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+		out.close();
+	}
+}
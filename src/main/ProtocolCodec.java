@@ -0,0 +1,206 @@
+package main;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+
+import data.Data;
+import mining.ClusterSet;
+import mining.IterationEvent;
+
+/**
+ * The ProtocolCodec class reads the requests of a client and writes the
+ * answers, hiding the encoding used on the connection from the
+ * 'ClientSession'. Two protocols are supported, chosen by the first bytes sent
+ * by the client: the Java serialization of the first versions of the server
+ * ('ObjectCodec') and a binary protocol of length-prefixed frames
+ * ('BinaryCodec'), which sends the clustering results as structured data
+ * instead of text.
+ */
+public abstract class ProtocolCodec {
+	/** First bytes of a Java serialization stream */
+	static final int SERIALIZATION_MAGIC = 0xACED0005;
+
+	/**
+	 * This function reads the first bytes sent by the client, and returns the
+	 * codec of the protocol they announce after the handshake of the protocol.
+	 * Only the bytes of the handshake are read, so the requests sent by the
+	 * client are left in the stream.
+	 *
+	 * @param in  the stream of the requests
+	 * @param out the stream of the answers
+	 * @return the codec of the protocol used by the client.
+	 * @throws IOException if the first bytes announce no known protocol
+	 */
+	public static ProtocolCodec negotiate(InputStream in, OutputStream out) throws IOException {
+		PushbackInputStream pushback = new PushbackInputStream(in, 4);
+		byte[] magic = new byte[4];
+		new DataInputStream(pushback).readFully(magic);
+		pushback.unread(magic);
+		int value = ((magic[0] & 0xFF) << 24) | ((magic[1] & 0xFF) << 16) | ((magic[2] & 0xFF) << 8) | (magic[3] & 0xFF);
+		if (value == SERIALIZATION_MAGIC) {
+			return new ObjectCodec(pushback, out);
+		} else if (value == BinaryCodec.MAGIC) {
+			return new BinaryCodec(new DataInputStream(pushback), out);
+		}
+		throw new IOException("Unknown protocol: 0x" + Integer.toHexString(value));
+	}
+
+	/**
+	 * This function reads the option of the next request.
+	 *
+	 * @return the option.
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public abstract int readOption() throws IOException, ClassNotFoundException;
+
+	/**
+	 * This function reads a string argument of the request.
+	 *
+	 * @return the string.
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public abstract String readString() throws IOException, ClassNotFoundException;
+
+	/**
+	 * This function reads an integer argument of the request.
+	 *
+	 * @return the integer.
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public abstract int readInt() throws IOException, ClassNotFoundException;
+
+	/**
+	 * This function reads a long argument of the request.
+	 *
+	 * @return the long.
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public abstract long readLong() throws IOException, ClassNotFoundException;
+
+	/**
+	 * This function reads the load options of the request.
+	 *
+	 * @return a Map from the names of the options to their values, or null;
+	 *         another object if the client has not sent a Map.
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public abstract Object readOptions() throws IOException, ClassNotFoundException;
+
+	/**
+	 * This function writes the acknowledgement of a request which has succeeded,
+	 * before the results of the request.
+	 *
+	 * @throws IOException
+	 */
+	public abstract void writeOk() throws IOException;
+
+	/**
+	 * This function writes a string result.
+	 *
+	 * @param value the string
+	 * @throws IOException
+	 */
+	public abstract void writeString(String value) throws IOException;
+
+	/**
+	 * This function writes an integer result.
+	 *
+	 * @param value the integer
+	 * @throws IOException
+	 */
+	public abstract void writeInt(int value) throws IOException;
+
+	/**
+	 * This function writes a long result.
+	 *
+	 * @param value the long
+	 * @throws IOException
+	 */
+	public abstract void writeLong(long value) throws IOException;
+
+	/**
+	 * This function writes a boolean result.
+	 *
+	 * @param value the boolean
+	 * @throws IOException
+	 */
+	public abstract void writeBoolean(boolean value) throws IOException;
+
+	/**
+	 * This function writes the result of the clustering of the loaded data.
+	 *
+	 * @param iterations the number of iterations of the k-means
+	 * @param data       the data clustered
+	 * @param C          the clusters discovered
+	 * @throws IOException
+	 */
+	public abstract void writeClustering(int iterations, Data data, ClusterSet C) throws IOException;
+
+	/**
+	 * This function writes the clusters of a saved model.
+	 *
+	 * @param C the clusters of the model
+	 * @throws IOException
+	 */
+	public abstract void writeModel(ClusterSet C) throws IOException;
+
+	/**
+	 * This function writes the result of the clustering in the database.
+	 *
+	 * @param iterations the number of iterations of the k-means
+	 * @param C          the clusters discovered, without examples
+	 * @param sizes      the number of rows of each cluster
+	 * @throws IOException
+	 */
+	public abstract void writeDatabaseClustering(int iterations, ClusterSet C, long[] sizes) throws IOException;
+
+	/**
+	 * This function writes the progress of a clustering in progress, before its
+	 * acknowledgement: the answer is complete, so it is sent by 'flush' while
+	 * the clustering goes on.
+	 *
+	 * @param event the iteration of the k-means completed
+	 * @throws IOException
+	 */
+	public abstract void writeProgress(IterationEvent event) throws IOException;
+
+	/**
+	 * This function writes the answer to a request rejected because the server is
+	 * busy, in place of the acknowledgement. The session goes on.
+	 *
+	 * @param message the message of the error
+	 * @throws IOException
+	 */
+	public abstract void writeBusy(String message) throws IOException;
+
+	/**
+	 * This function writes the answer to a request which has failed, if the
+	 * protocol can report errors.
+	 *
+	 * @param message the message of the error
+	 * @throws IOException
+	 */
+	public abstract void writeError(String message) throws IOException;
+
+	/**
+	 * This function sends the answer written since the last call.
+	 *
+	 * @throws IOException
+	 */
+	public abstract void flush() throws IOException;
+
+	/**
+	 * This function closes the streams of the codec.
+	 *
+	 * @throws IOException
+	 */
+	public abstract void close() throws IOException;
+}
@@ -0,0 +1,265 @@
+package main;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The ResultCache class keeps the clustering jobs run with an explicit seed,
+ * so a request identical to a previous one (same version of the data, same k,
+ * same seed and options) gets the result of the previous job instead of
+ * running the k-means again. A job is put in the cache when it is submitted,
+ * so identical requests arriving while it is queued or running wait for the
+ * same job. A failed job is removed, and a finished one is forgotten after a
+ * time to live. The least recently used jobs are forgotten when there are too
+ * many of them, or when their results hold too many examples. <br>
+ * <br>
+ * The limits are configured with the system properties kmeans.cache.ttlMs (10
+ * minutes), kmeans.cache.entries (256 jobs) and kmeans.cache.maxExamples (10
+ * million examples in all the cached results).
+ */
+public class ResultCache {
+	private long ttl;
+	private int maxEntries;
+	private long maxExamples;
+	private long examples;
+	private LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+	private long hits;
+	private long misses;
+	private long coalesced;
+	private long evictions;
+
+	/**
+	 * The Key class identifies a deterministic clustering. It is an inner class
+	 * of 'ResultCache'.
+	 */
+	static class Key {
+		private long version;
+		private int k;
+		private long seed;
+		private String options;
+
+		/**
+		 * Constructor for the 'Key' class.
+		 *
+		 * @param version the version of the data, see 'Data.getVersion'
+		 * @param k       the number of clusters
+		 * @param seed    the seed of the choice of the initial centroids
+		 * @param options the other options of the algorithm, as a string
+		 */
+		Key(long version, int k, long seed, String options) {
+			this.version = version;
+			this.k = k;
+			this.seed = seed;
+			this.options = options;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return version == other.version && k == other.k && seed == other.seed && options.equals(other.options);
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = Long.hashCode(version);
+			hash = 31 * hash + k;
+			hash = 31 * hash + Long.hashCode(seed);
+			return 31 * hash + options.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return "v" + Long.toHexString(version) + " k=" + k + " seed=" + seed + " " + options;
+		}
+	}
+
+	/**
+	 * The Entry class is a job in the cache with the number of examples of its
+	 * data. It is an inner class of 'ResultCache'.
+	 */
+	private static class Entry {
+		private ClusteringJob job;
+		private long examples;
+
+		/**
+		 * Constructor for the 'Entry' class.
+		 *
+		 * @param job the job
+		 */
+		Entry(ClusteringJob job) {
+			this.job = job;
+			this.examples = job.getData().getNumberOfExamples();
+		}
+	}
+
+	/**
+	 * Constructor for the 'ResultCache' class.
+	 *
+	 * @param ttl         the milliseconds a finished job is kept
+	 * @param maxEntries  the number of jobs kept
+	 * @param maxExamples the number of examples of all the jobs kept
+	 */
+	public ResultCache(long ttl, int maxEntries, long maxExamples) {
+		this.ttl = ttl;
+		this.maxEntries = maxEntries;
+		this.maxExamples = maxExamples;
+	}
+
+	/**
+	 * The function returns the job of a clustering, queued, running or finished
+	 * with success.
+	 *
+	 * @param key the clustering
+	 * @return the job, or null if the clustering is not in the cache.
+	 */
+	synchronized ClusteringJob get(Key key) {
+		Entry entry = entries.get(key);
+		if (entry != null && (entry.job.getStatus() == JOB_STATUS.FAILED || isExpired(entry.job))) {
+			remove(key);
+			entry = null;
+		}
+		if (entry == null) {
+			misses++;
+			return null;
+		} else if (!entry.job.isFinished()) {
+			coalesced++;
+		}
+		hits++;
+		return entry.job;
+	}
+
+	/**
+	 * This function puts the job of a clustering in the cache, then forgets the
+	 * least recently used jobs beyond the limits.
+	 *
+	 * @param key the clustering
+	 * @param job the job which computes it
+	 */
+	synchronized void put(Key key, ClusteringJob job) {
+		Entry entry = new Entry(job);
+		if (entry.examples > maxExamples || maxEntries <= 0) {
+			return;
+		}
+		Entry old = entries.put(key, entry);
+		if (old != null) {
+			examples -= old.examples;
+		}
+		examples += entry.examples;
+		Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+		while ((entries.size() > maxEntries || examples > maxExamples) && iterator.hasNext()) {
+			Entry eldest = iterator.next().getValue();
+			if (eldest != entry) {
+				iterator.remove();
+				examples -= eldest.examples;
+				evictions++;
+			}
+		}
+	}
+
+	/**
+	 * This function removes a job from the cache, if it is there: it is called
+	 * when a job fails, so the next identical request runs the k-means again.
+	 *
+	 * @param job the job
+	 */
+	synchronized void remove(ClusteringJob job) {
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (iterator.hasNext()) {
+			Entry entry = iterator.next();
+			if (entry.job == job) {
+				iterator.remove();
+				examples -= entry.examples;
+			}
+		}
+	}
+
+	/**
+	 * The function tells if a job is in the cache.
+	 *
+	 * @param job the job
+	 * @return true if a request identical to the one of the job gets it.
+	 */
+	synchronized boolean contains(ClusteringJob job) {
+		for (Entry entry : entries.values()) {
+			if (entry.job == job) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * This function removes a clustering from the cache.
+	 *
+	 * @param key the clustering
+	 */
+	private void remove(Key key) {
+		Entry entry = entries.remove(key);
+		if (entry != null) {
+			examples -= entry.examples;
+		}
+	}
+
+	/**
+	 * The function tells if a job has been finished for longer than the time to
+	 * live.
+	 *
+	 * @param job the job
+	 * @return true if the job has to be forgotten.
+	 */
+	private boolean isExpired(ClusteringJob job) {
+		return job.isFinished() && System.currentTimeMillis() - job.getFinishTime() > ttl;
+	}
+
+	/**
+	 * The function returns the number of requests answered by the cache,
+	 * including the ones which have waited for a job in progress.
+	 *
+	 * @return the number of hits.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * The function returns the number of requests not found in the cache.
+	 *
+	 * @return the number of misses.
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * The function returns the number of requests which have waited for an
+	 * identical job in progress.
+	 *
+	 * @return the number of requests coalesced.
+	 */
+	public synchronized long getCoalesced() {
+		return coalesced;
+	}
+
+	/**
+	 * The function returns the number of jobs forgotten because of the limits of
+	 * the cache.
+	 *
+	 * @return the number of evictions.
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * The function returns the number of jobs in the cache.
+	 *
+	 * @return the number of entries.
+	 */
+	public synchronized int getEntries() {
+		return entries.size();
+	}
+}
@@ -1,183 +1,100 @@
 package main;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.PushbackInputStream;
 import java.net.Socket;
-import java.sql.SQLException;
-
-import agent.DbAccess;
-import exceptions.DatabaseConnectionException;
-import exceptions.EmptySetException;
-import exceptions.NoValueException;
-import exceptions.OutOfRangeSampleSize;
-import data.Data;
-import mining.KMeansMiner;
+import java.net.SocketTimeoutException;
 
 /**
  * The ServerOneClient class is a thread that handles client requests for
  * clustering data using the KMeans algorithm and saving or opening serialised
- * files.
+ * files. It blocks on the socket of its client for the whole connection; the
+ * requests themselves are handled by a 'ClientSession'.
  */
-public class ServerOneClient extends Thread {
+public class ServerOneClient extends Thread implements DisconnectProbe {
 	private Socket socket;
-	private ObjectInputStream in;
-	private ObjectOutputStream out;
-	private KMeansMiner kmeans;
+	/** The stream of the socket, under the codec, used to probe the connection */
+	private PushbackInputStream in;
+	private ProtocolCodec codec;
 
 	/**
 	 * The constructor of the 'ServerOneClient' class. It takes a 'Socket' as a
 	 * parameter and initializes the 'socket' with it. It also initializes
-	 * the 'in' and 'out' with 'ObjectInputStream' and 'ObjectOutputStream'
-	 * objects respectively, which are obtained from the 'socket' object.These
-	 * streams are used to communicate with the client over the network. The
-	 * constructor throws an 'IOException' if there is an error while creating the
-	 * input and output streams.
+	 * the 'codec' with the protocol announced by the first bytes the client sends
+	 * on the 'socket': the object streams of the first versions or the binary
+	 * protocol. The codec is used to communicate with the client over the
+	 * network. The constructor throws an 'IOException' if there is an error while
+	 * creating the input and output streams.
 	 * 
 	 * @param socket
 	 * @throws IOException
 	 */
 	public ServerOneClient(Socket socket) throws IOException {
 		this.socket = socket;
-		this.in = new ObjectInputStream(socket.getInputStream());
-		this.out = new ObjectOutputStream(socket.getOutputStream());
+		this.in = new PushbackInputStream(socket.getInputStream(), 1);
+		this.codec = ProtocolCodec.negotiate(in, socket.getOutputStream());
 	}
 
+	/**
+	 * This function tells if the client has closed the connection while the
+	 * session is waiting for a clustering: it reads a byte of the socket with a
+	 * short timeout and puts it back, so the next request is not changed.
+	 */
 	@Override
-	public void run() {
-		Data data = null;
+	public boolean isDisconnected() {
 		try {
-			while (true) {
-				int option = (int) in.readObject();
-				switch (option) {
-					case 0:
-						data = getConnection();
-						break;
-					case 1:
-						clustering(data);
-						break;
-					case 2:
-						saveFile();
-						break;
-					case 3:
-						openFile();
-						break;
-					default:
-						System.out.println("Invalid request");
+			if (in.available() > 0) {
+				return false;
+			}
+			int timeout = socket.getSoTimeout();
+			socket.setSoTimeout(1);
+			try {
+				int b = in.read();
+				if (b < 0) {
+					return true;
 				}
+				in.unread(b);
+				return false;
+			} catch (SocketTimeoutException e) {
+				return false;
+			} finally {
+				socket.setSoTimeout(timeout);
 			}
+		} catch (IOException e) {
+			return true;
+		}
+	}
 
+	/**
+	 * This function tells if the client has sent bytes which have not been read:
+	 * the probe of 'isDisconnected' puts back the byte it reads, so it is
+	 * counted by the stream.
+	 */
+	@Override
+	public boolean hasInput() {
+		try {
+			return !isDisconnected() && in.available() > 0;
 		} catch (IOException e) {
-			System.out.println("Error: " + e);
-		} catch (ClassNotFoundException e) {
-			System.out.println("Error: " + e);
-		} catch (SQLException e) {
-			System.out.println("Error: " + e);
-		} catch (NoValueException e) {
-			System.out.println("Error: " + e);
-		} catch (EmptySetException e) {
-			System.out.println("Error: " + e);
-		} catch (DatabaseConnectionException e) {
-			System.out.println("Error: " + e);
-		} catch (OutOfRangeSampleSize e) {
-			System.out.println("Error: " + e);
+			return false;
+		}
+	}
+
+	@Override
+	public void run() {
+		ClientSession session = new ClientSession(codec, this);
+		try {
+			while (session.process()) {
+				// Handle the requests until the client disconnects or an error occurs
+			}
 		} finally {
 			// In any case, closing resources
+			session.close();
 			try {
-				in.close();
-				out.close();
+				codec.close();
 				socket.close();
 			} catch (IOException e) {
 				System.out.println("Socket not closed: " + e.getMessage());
 			}
 		}
 	}
-
-	/**
-	 * This function saves the KMeans clustering discovered to a file with the
-	 * given file name by the client with the 'in' stream. Sends OK if it is
-	 * correct.
-	 * 
-	 * @throws FileNotFoundException
-	 * @throws IOException
-	 * @throws ClassNotFoundException
-	 */
-	private void saveFile() throws FileNotFoundException, IOException, ClassNotFoundException {
-		String fileName = (String) in.readObject();
-		kmeans.save(fileName);
-		out.writeObject("OK");
-	}
-
-	/**
-	 * This function performs clustering using the KMeans algorithm on a given
-	 * dataset and sends the results to the client via an output stream.
-	 * 
-	 * @param data a dataset of examples to be clustered
-	 * @throws IOException
-	 * @throws ClassNotFoundException
-	 * @throws OutOfRangeSampleSize
-	 */
-	private void clustering(Data data) throws IOException, ClassNotFoundException, OutOfRangeSampleSize {
-		int k = (int) in.readObject();
-		kmeans = new KMeansMiner(k);
-		int numIter = kmeans.kmeans(data);
-		String text = "Data Examples:\n" + data + "\n\n";
-
-		text += "Numero di Iterazione:" + numIter + "\n\n" + kmeans.getC().toString(data) + "\n";
-
-		// All this ok, send message
-		out.writeObject("OK");
-
-		out.writeObject(text);
-
-		String clusters = kmeans.getC().toString(data);
-		out.writeObject(clusters);
-	}
-
-	/**
-	 * This function opens a serialise file, it reads the table name, creates a
-	 * KMeansMiner object with the table name by deserialising the file,
-	 * obtains the clusters, and writes them to an output stream.
-	 * 
-	 * @throws FileNotFoundException
-	 * @throws ClassNotFoundException
-	 * @throws IOException
-	 * @throws OutOfRangeSampleSize
-	 */
-	private void openFile() throws FileNotFoundException, ClassNotFoundException, IOException, OutOfRangeSampleSize {
-		String tableName = (String) in.readObject();
-
-		kmeans = new KMeansMiner(tableName);
-		String text = kmeans.getC().toString(); // Obtain the clusters
-
-		out.writeObject("OK");
-		out.writeObject(text);
-	}
-
-	/**
-	 * This function receives a name of a table in a database by the client
-	 * and establishes a database connection, it returns a Data object filled with
-	 * the examples for the specified table name.
-	 * 
-	 * @return returns the Data
-	 * @throws IOException
-	 * @throws ClassNotFoundException
-	 * @throws DatabaseConnectionException
-	 * @throws SQLException
-	 * @throws NoValueException
-	 * @throws EmptySetException
-	 * @throws OutOfRangeSampleSize
-	 */
-	private Data getConnection() throws IOException, ClassNotFoundException, DatabaseConnectionException, SQLException,
-			NoValueException, EmptySetException, OutOfRangeSampleSize {
-		String tableName = (String) in.readObject();
-		DbAccess db = new DbAccess();
-		db.initConnection();
-		Data data = new Data(tableName, db);
-		db.closeConnection();
-
-		out.writeObject("OK");
-		return data;
-	}
-}
\ No newline at end of file
+}
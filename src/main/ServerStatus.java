@@ -0,0 +1,128 @@
+package main;
+
+import metrics.Metrics;
+import mining.DistanceKernel;
+import mining.ModelRegistry;
+
+/**
+ * The ServerStatus class exposes the state of the server through JMX, as
+ * "kmeans:type=ServerStatus". Every attribute is read from the component which
+ * owns it when the JMX client asks for it, so the server pays nothing between
+ * two reads.
+ */
+public class ServerStatus implements ServerStatusMBean {
+	private static final ServerStatus INSTANCE = new ServerStatus();
+
+	/**
+	 * Private constructor, the status is registered once by 'register'.
+	 */
+	private ServerStatus() {
+	}
+
+	/**
+	 * This function registers the status of the server on the platform MBean
+	 * server, if it has not been registered yet.
+	 */
+	public static void register() {
+		Metrics.register("type=ServerStatus", INSTANCE);
+	}
+
+	@Override
+	public int getActiveSessions() {
+		return ClientSession.getActiveSessions();
+	}
+
+	@Override
+	public long getTotalSessions() {
+		return ClientSession.getTotalSessions();
+	}
+
+	@Override
+	public int getComputeActive() {
+		return ComputeGate.getInstance().getActive();
+	}
+
+	@Override
+	public int getComputeWaiting() {
+		return ComputeGate.getInstance().getWaiting();
+	}
+
+	@Override
+	public long getComputeRejected() {
+		return ComputeGate.getInstance().getRejected();
+	}
+
+	@Override
+	public int getJobsQueued() {
+		return JobScheduler.getInstance().getQueued();
+	}
+
+	@Override
+	public int getJobsRunning() {
+		return JobScheduler.getInstance().getRunning();
+	}
+
+	@Override
+	public double getWorkerUtilization() {
+		JobScheduler scheduler = JobScheduler.getInstance();
+		return (double) scheduler.getRunning() / scheduler.getWorkers();
+	}
+
+	@Override
+	public long getJobsCompleted() {
+		return JobScheduler.getInstance().getCompleted();
+	}
+
+	@Override
+	public long getJobsFailed() {
+		return JobScheduler.getInstance().getFailed();
+	}
+
+	@Override
+	public long getJobsCancelled() {
+		return JobScheduler.getInstance().getCancelled();
+	}
+
+	@Override
+	public long getJobsRejected() {
+		return JobScheduler.getInstance().getRejected();
+	}
+
+	@Override
+	public double getResultCacheHitRate() {
+		ResultCache cache = JobScheduler.getInstance().getCache();
+		return rate(cache.getHits(), cache.getMisses());
+	}
+
+	@Override
+	public long getResultCacheCoalesced() {
+		return JobScheduler.getInstance().getCache().getCoalesced();
+	}
+
+	@Override
+	public double getModelCacheHitRate() {
+		ModelRegistry registry = ModelRegistry.getInstance();
+		return rate(registry.getHits(), registry.getMisses());
+	}
+
+	@Override
+	public long getModelCacheBytes() {
+		return ModelRegistry.getInstance().getResidentBytes();
+	}
+
+	@Override
+	public String getDistanceKernel() {
+		return DistanceKernel.getInstance().toString();
+	}
+
+	/**
+	 * The function returns the hit rate of a cache.
+	 *
+	 * @param hits   the number of hits
+	 * @param misses the number of misses
+	 * @return the fraction of hits, 0 if the cache has not been used.
+	 */
+	private static double rate(long hits, long misses) {
+		return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+	}
+}
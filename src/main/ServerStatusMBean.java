@@ -0,0 +1,133 @@
+package main;
+
+/**
+ * The ServerStatusMBean interface is the management interface of the state of
+ * the server: the sessions, the use of the pools and the hit rates of the
+ * caches.
+ */
+public interface ServerStatusMBean {
+	/**
+	 * The function returns the number of sessions currently open.
+	 *
+	 * @return the number of connected clients.
+	 */
+	int getActiveSessions();
+
+	/**
+	 * The function returns the number of sessions opened since the start.
+	 *
+	 * @return the number of sessions.
+	 */
+	long getTotalSessions();
+
+	/**
+	 * The function returns the number of heavy requests running.
+	 *
+	 * @return the permits of the 'ComputeGate' in use.
+	 */
+	int getComputeActive();
+
+	/**
+	 * The function returns the number of heavy requests waiting to run.
+	 *
+	 * @return the requests waiting at the 'ComputeGate'.
+	 */
+	int getComputeWaiting();
+
+	/**
+	 * The function returns the number of heavy requests rejected.
+	 *
+	 * @return the requests rejected by the 'ComputeGate'.
+	 */
+	long getComputeRejected();
+
+	/**
+	 * The function returns the number of clustering jobs waiting for a worker.
+	 *
+	 * @return the length of the queue of the 'JobScheduler'.
+	 */
+	int getJobsQueued();
+
+	/**
+	 * The function returns the number of clustering jobs running.
+	 *
+	 * @return the busy workers of the 'JobScheduler'.
+	 */
+	int getJobsRunning();
+
+	/**
+	 * The function returns the fraction of the workers of the 'JobScheduler'
+	 * which are busy.
+	 *
+	 * @return the utilization, between 0 and 1.
+	 */
+	double getWorkerUtilization();
+
+	/**
+	 * The function returns the number of clustering jobs finished with success.
+	 *
+	 * @return the jobs DONE.
+	 */
+	long getJobsCompleted();
+
+	/**
+	 * The function returns the number of clustering jobs failed.
+	 *
+	 * @return the jobs FAILED.
+	 */
+	long getJobsFailed();
+
+	/**
+	 * The function returns the number of clustering jobs cancelled.
+	 *
+	 * @return the jobs CANCELLED.
+	 */
+	long getJobsCancelled();
+
+	/**
+	 * The function returns the number of clustering jobs rejected.
+	 *
+	 * @return the jobs rejected because the queue was full.
+	 */
+	long getJobsRejected();
+
+	/**
+	 * The function returns the fraction of the seeded clusterings found in the
+	 * 'ResultCache'.
+	 *
+	 * @return the hit rate, between 0 and 1.
+	 */
+	double getResultCacheHitRate();
+
+	/**
+	 * The function returns the number of clusterings which have waited for an
+	 * identical one in progress.
+	 *
+	 * @return the requests coalesced by the 'ResultCache'.
+	 */
+	long getResultCacheCoalesced();
+
+	/**
+	 * The function returns the fraction of the models opened from the
+	 * 'ModelRegistry' without reading the file.
+	 *
+	 * @return the hit rate, between 0 and 1.
+	 */
+	double getModelCacheHitRate();
+
+	/**
+	 * The function returns the memory used by the models of the
+	 * 'ModelRegistry'.
+	 *
+	 * @return the estimated bytes of the cached models.
+	 */
+	long getModelCacheBytes();
+
+	/**
+	 * The function returns the kernel which computes the distances of the
+	 * k-means.
+	 *
+	 * @return "scalar", or "vector" with the number of lanes.
+	 */
+	String getDistanceKernel();
+}
@@ -0,0 +1,60 @@
+package main;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The SessionExecutors class creates the executor the client sessions run on.
+ * On a Java runtime with virtual threads (Java 21 or later) every session runs
+ * on a virtual thread, which costs no platform thread while the session waits
+ * for its client; on older runtimes the sessions run on a cached pool of
+ * daemon threads. The CPU-heavy work of the sessions is bounded by the
+ * 'ComputeGate', not by the number of threads.
+ */
+public class SessionExecutors {
+
+	/**
+	 * Private constructor: the class has only static functions.
+	 */
+	private SessionExecutors() {
+	}
+
+	/**
+	 * This function creates the executor of the sessions, with a virtual thread
+	 * per task if the runtime supports it.
+	 *
+	 * @return the executor of the sessions.
+	 */
+	public static ExecutorService create() {
+		try {
+			// Looked up by reflection, so the server still compiles and runs on Java 17
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			AtomicInteger count = new AtomicInteger();
+			ThreadFactory threads = runnable -> {
+				Thread thread = new Thread(runnable, "session-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			};
+			return Executors.newCachedThreadPool(threads);
+		}
+	}
+
+	/**
+	 * This function tells if the sessions run on virtual threads.
+	 *
+	 * @return true if the runtime supports virtual threads.
+	 */
+	public static boolean isVirtual() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+}
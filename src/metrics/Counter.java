@@ -0,0 +1,30 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Counter class counts events of the server which are not timed, such as
+ * the distances computed by the k-means.
+ */
+public class Counter implements CounterMBean {
+	private LongAdder value = new LongAdder();
+
+	/**
+	 * This function adds a number of events to the counter.
+	 *
+	 * @param n the number of events
+	 */
+	public void add(long n) {
+		value.add(n);
+	}
+
+	@Override
+	public long getValue() {
+		return value.sum();
+	}
+
+	@Override
+	public void reset() {
+		value.reset();
+	}
+}
@@ -0,0 +1,18 @@
+package metrics;
+
+/**
+ * The CounterMBean interface is the management interface of a 'Counter'.
+ */
+public interface CounterMBean {
+	/**
+	 * The function returns the value of the counter.
+	 *
+	 * @return the sum of all the increments.
+	 */
+	long getValue();
+
+	/**
+	 * This function sets the counter back to zero.
+	 */
+	void reset();
+}
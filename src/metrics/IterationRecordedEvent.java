@@ -0,0 +1,71 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The IterationRecordedEvent class is the Java Flight Recorder event of an
+ * iteration of the k-means, in memory or in the database, tagged with the
+ * table, k, the number of examples and the number of attributes. The
+ * iterations of the in-memory k-means also record the examples which have
+ * changed cluster and the SSE (see 'mining.IterationEvent'). Like
+ * 'PhaseEvent', it costs nothing when no recording is running.
+ */
+@Name("kmeans.Iteration")
+@Label("K-Means Iteration")
+@Category({ "K-Means", "Clustering" })
+@Description("An iteration of the k-means")
+@StackTrace(false)
+public class IterationRecordedEvent extends Event {
+	@Label("Table")
+	private String table;
+	@Label("Clusters")
+	private int k;
+	@Label("Examples")
+	private long n;
+	@Label("Attributes")
+	private int d;
+	@Label("Iteration")
+	private int iteration;
+	@Label("In Database")
+	private boolean database;
+	@Label("Examples Moved")
+	private int pointsMoved;
+	@Label("SSE")
+	private double sse;
+
+	/**
+	 * This function ends the event and commits it, if a recording wants it, with
+	 * its tags.
+	 *
+	 * @param table       the name of the table
+	 * @param k           the number of clusters
+	 * @param n           the number of examples, 0 if it is not known
+	 * @param d           the number of attributes
+	 * @param iteration   the number of the iteration, from 1
+	 * @param database    true for an iteration of the in-database k-means
+	 * @param pointsMoved the examples assigned to another cluster, -1 if they are
+	 *                    not known
+	 * @param sse         the sum of the squared distances from the centroids, NaN
+	 *                    if it is not known
+	 */
+	public void commit(String table, int k, long n, int d, int iteration, boolean database, int pointsMoved,
+			double sse) {
+		end();
+		if (shouldCommit()) {
+			this.table = table;
+			this.k = k;
+			this.n = n;
+			this.d = d;
+			this.iteration = iteration;
+			this.database = database;
+			this.pointsMoved = pointsMoved;
+			this.sse = sse;
+			commit();
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The Metrics class is the registry of the timers and counters of the server.
+ * Every timer and counter is created the first time it is asked for, and
+ * registered on the platform MBean server, so any JMX client (jconsole, an
+ * exporter of the monitoring) can read it, as
+ * "kmeans:type=Timer,group=...,name=..." or
+ * "kmeans:type=Counter,group=...,name=...". The groups are "request" (one
+ * timer per option of the protocol), "load", "clustering" and "report". <br>
+ * <br>
+ * The same phases are also recorded as Java Flight Recorder events
+ * ('PhaseEvent', 'IterationRecordedEvent'), which add the table, k and the
+ * size of the data to the time of each single occurrence.
+ */
+public class Metrics {
+	private static final Map<String, Timer> TIMERS = new ConcurrentHashMap<String, Timer>();
+	private static final Map<String, Counter> COUNTERS = new ConcurrentHashMap<String, Counter>();
+
+	/**
+	 * Private constructor, the class only has static functions.
+	 */
+	private Metrics() {
+	}
+
+	/**
+	 * The function returns the timer of an operation, created and registered the
+	 * first time.
+	 *
+	 * @param group the group of the operation
+	 * @param name  the name of the operation
+	 * @return the 'Timer' of the operation.
+	 */
+	public static Timer timer(String group, String name) {
+		Timer timer = TIMERS.get(group + "." + name);
+		if (timer == null) {
+			timer = TIMERS.computeIfAbsent(group + "." + name, key -> {
+				Timer created = new Timer();
+				register("type=Timer,group=" + group + ",name=" + name, created);
+				return created;
+			});
+		}
+		return timer;
+	}
+
+	/**
+	 * The function returns a counter, created and registered the first time.
+	 *
+	 * @param group the group of the counter
+	 * @param name  the name of the counter
+	 * @return the 'Counter'.
+	 */
+	public static Counter counter(String group, String name) {
+		Counter counter = COUNTERS.get(group + "." + name);
+		if (counter == null) {
+			counter = COUNTERS.computeIfAbsent(group + "." + name, key -> {
+				Counter created = new Counter();
+				register("type=Counter,group=" + group + ",name=" + name, created);
+				return created;
+			});
+		}
+		return counter;
+	}
+
+	/**
+	 * This function registers an MBean on the platform MBean server, in the
+	 * "kmeans" domain. A failure is only printed: the server works without its
+	 * metrics.
+	 *
+	 * @param properties the key properties of the name of the MBean
+	 * @param mbean      the MBean
+	 */
+	public static void register(String properties, Object mbean) {
+		try {
+			ObjectName name = new ObjectName("kmeans:" + properties);
+			if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, name);
+			}
+		} catch (JMException e) {
+			System.out.println("Metrics not registered: " + e);
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The PhaseEvent class is the Java Flight Recorder event of a request of a
+ * client (group "request") or of a phase of a request: the loading of a table
+ * (group "load": schema, fetch, minMax, dictionary, build), a k-means run or
+ * the projection of its data (group "clustering") or the rendering and sending
+ * of an answer (group "report"). The phases have the same names as the timers
+ * of the 'Metrics', and are tagged with the table, k, the number of examples
+ * and the number of attributes, when they are known (0 otherwise).
+ * <br>
+ * <br>
+ * The event is created, begun and committed inline, so when no recording is
+ * running the JIT compiler removes it. A recording can be started with the
+ * server, for example:
+ *
+ * <pre>
+ * java -XX:StartFlightRecording=name=kmeans,maxage=1h,settings=default main.MultiServer
+ * jcmd &lt;pid&gt; JFR.dump name=kmeans filename=kmeans.jfr
+ * jfr print --events kmeans.Phase kmeans.jfr
+ * </pre>
+ */
+@Name("kmeans.Phase")
+@Label("K-Means Phase")
+@Category({ "K-Means", "Phases" })
+@Description("A phase of the loading, the clustering or the answer of a request")
+@StackTrace(false)
+public class PhaseEvent extends Event {
+	@Label("Group")
+	private String group;
+	@Label("Phase")
+	private String phase;
+	@Label("Table")
+	private String table;
+	@Label("Clusters")
+	private int k;
+	@Label("Examples")
+	private long n;
+	@Label("Attributes")
+	private int d;
+
+	/**
+	 * This function ends the event and commits it, if a recording wants it, with
+	 * the name of the phase and its tags. The tags are only set when the event is
+	 * committed.
+	 *
+	 * @param group the group of the phase, as the group of its timer
+	 * @param phase the name of the phase, as the name of its timer
+	 * @param table the name of the table, or null
+	 * @param k     the number of clusters, or 0
+	 * @param n     the number of examples, or 0
+	 * @param d     the number of attributes, or 0
+	 */
+	public void commit(String group, String phase, String table, int k, long n, int d) {
+		end();
+		if (shouldCommit()) {
+			this.group = group;
+			this.phase = phase;
+			this.table = table;
+			this.k = k;
+			this.n = n;
+			this.d = d;
+			commit();
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Timer class measures the times of an operation or of a phase of the
+ * server. It is cheap enough to be called on every request and every
+ * iteration of the k-means: a time is added to a few counters, and to a
+ * histogram whose buckets are powers of two of microseconds, from which the
+ * percentiles are estimated (within a factor of two).
+ */
+public class Timer implements TimerMBean {
+	/** Number of buckets of the histogram: up to 2^40 microseconds */
+	private static final int BUCKETS = 41;
+
+	private LongAdder count = new LongAdder();
+	private LongAdder errors = new LongAdder();
+	private LongAdder totalNanos = new LongAdder();
+	private AtomicLong maxNanos = new AtomicLong();
+	private AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * This function records the time of an operation which has succeeded.
+	 *
+	 * @param nanos the time in nanoseconds
+	 */
+	public void record(long nanos) {
+		count.increment();
+		totalNanos.add(nanos);
+		long max = maxNanos.get();
+		while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+			max = maxNanos.get();
+		}
+		long micros = nanos / 1000;
+		int bucket = micros <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+		histogram.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+	}
+
+	/**
+	 * This function records the time elapsed since the start of an operation
+	 * which has succeeded.
+	 *
+	 * @param startNanos the value of System.nanoTime() at the start
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * This function records an operation which has failed: its time is not
+	 * measured.
+	 */
+	public void error() {
+		errors.increment();
+	}
+
+	@Override
+	public long getCount() {
+		return count.sum();
+	}
+
+	@Override
+	public long getErrors() {
+		return errors.sum();
+	}
+
+	@Override
+	public double getTotalMillis() {
+		return totalNanos.sum() / 1e6;
+	}
+
+	@Override
+	public double getMeanMillis() {
+		long n = count.sum();
+		return n == 0 ? 0 : totalNanos.sum() / 1e6 / n;
+	}
+
+	@Override
+	public double getMaxMillis() {
+		return maxNanos.get() / 1e6;
+	}
+
+	@Override
+	public double getP50Millis() {
+		return percentile(0.50);
+	}
+
+	@Override
+	public double getP95Millis() {
+		return percentile(0.95);
+	}
+
+	@Override
+	public double getP99Millis() {
+		return percentile(0.99);
+	}
+
+	/**
+	 * The function estimates a percentile of the times from the histogram.
+	 *
+	 * @param fraction the fraction of the operations, between 0 and 1
+	 * @return the upper bound of the bucket of the percentile, in milliseconds,
+	 *         never more than the maximum time.
+	 */
+	private double percentile(double fraction) {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = histogram.get(i);
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(fraction * total);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min((1L << i) / 1e3, getMaxMillis());
+			}
+		}
+		return getMaxMillis();
+	}
+
+	@Override
+	public void reset() {
+		count.reset();
+		errors.reset();
+		totalNanos.reset();
+		maxNanos.set(0);
+		for (int i = 0; i < BUCKETS; i++) {
+			histogram.set(i, 0);
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package metrics;
+
+/**
+ * The TimerMBean interface is the management interface of a 'Timer': the
+ * attributes read by a JMX client for an operation or a phase of the server.
+ */
+public interface TimerMBean {
+	/**
+	 * The function returns the number of operations which have succeeded.
+	 *
+	 * @return the number of timed operations.
+	 */
+	long getCount();
+
+	/**
+	 * The function returns the number of operations which have failed.
+	 *
+	 * @return the number of errors.
+	 */
+	long getErrors();
+
+	/**
+	 * The function returns the time of all the operations.
+	 *
+	 * @return the total time in milliseconds.
+	 */
+	double getTotalMillis();
+
+	/**
+	 * The function returns the mean time of an operation.
+	 *
+	 * @return the mean time in milliseconds, 0 if there has been no operation.
+	 */
+	double getMeanMillis();
+
+	/**
+	 * The function returns the longest time of an operation.
+	 *
+	 * @return the maximum time in milliseconds.
+	 */
+	double getMaxMillis();
+
+	/**
+	 * The function returns the median time of an operation.
+	 *
+	 * @return an upper bound of the median, in milliseconds.
+	 */
+	double getP50Millis();
+
+	/**
+	 * The function returns the 95th percentile of the time of an operation.
+	 *
+	 * @return an upper bound of the percentile, in milliseconds.
+	 */
+	double getP95Millis();
+
+	/**
+	 * The function returns the 99th percentile of the time of an operation.
+	 *
+	 * @return an upper bound of the percentile, in milliseconds.
+	 */
+	double getP99Millis();
+
+	/**
+	 * This function sets all the measures back to zero.
+	 */
+	void reset();
+}
@@ -1,6 +1,7 @@
 package mining;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 import data.Data;
@@ -13,6 +14,7 @@ import data.Tuple;
  * representation of the cluster.
  */
 public class Cluster implements Serializable {
+	private static final long serialVersionUID = -7063238138176494467L;
 	private Tuple centroid;
 	private Set<Integer> clusteredData;
 
@@ -88,6 +90,31 @@ public class Cluster implements Serializable {
 		return clusteredData.contains(id);
 	}
 
+	/**
+	 * The function returns the indices of the examples of the cluster in
+	 * ascending order.
+	 * 
+	 * @return a sorted copy of the 'clusteredData' set.
+	 */
+	public int[] getClusteredData() {
+		int[] ids = new int[clusteredData.size()];
+		int i = 0;
+		for (Integer id : clusteredData) {
+			ids[i++] = id;
+		}
+		Arrays.sort(ids);
+		return ids;
+	}
+
+	/**
+	 * The function returns the number of examples of the cluster.
+	 * 
+	 * @return the size of the 'clusteredData' set.
+	 */
+	public int getSize() {
+		return clusteredData.size();
+	}
+
 	/**
 	 * This function removes a tuple from a clustered data structure based on its
 	 * ID.
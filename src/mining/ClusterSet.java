@@ -1,6 +1,7 @@
 package mining;
 
 import java.io.Serializable;
+import java.util.List;
 
 import exceptions.OutOfRangeSampleSize;
 import data.Data;
@@ -13,8 +14,11 @@ import data.Tuple;
  * clusters.
  */
 public class ClusterSet implements Serializable {
+	private static final long serialVersionUID = 6846941982999273258L;
 	private Cluster[] C;
 	private int i;
+	/** The iterations of the k-means which has found the clusters, or null */
+	private List<IterationEvent> convergence;
 
 	/**
 	 * The constructor of the 'ClusteSet' class. Initialise a new 'ClusterSet'
@@ -51,6 +55,15 @@ public class ClusterSet implements Serializable {
 		return C[i];
 	}
 
+	/**
+	 * The function returns the number of clusters of the set.
+	 * 
+	 * @return the length of the array 'C'.
+	 */
+	public int getNumberOfClusters() {
+		return C.length;
+	}
+
 	/**
 	 * This function initializes the centroids of a clustering algorithm using a
 	 * random sampling method of the data.
@@ -59,8 +72,19 @@ public class ClusterSet implements Serializable {
 	 *             the data list of examples that we want to cluster.
 	 */
 	public void initializeCentroids(Data data) throws OutOfRangeSampleSize {
+		initializeCentroids(data, System.currentTimeMillis());
+	}
+
+	/**
+	 * This function initializes the centroids of a clustering algorithm using a
+	 * random sampling of the data with the given seed.
+	 * 
+	 * @param data The data list of examples that we want to cluster.
+	 * @param seed The seed of the random sampling.
+	 */
+	public void initializeCentroids(Data data, long seed) throws OutOfRangeSampleSize {
 
-		int[] centroidIndexes = data.sampling(C.length);
+		int[] centroidIndexes = data.sampling(C.length, seed);
 
 		for (int i = 0; i < centroidIndexes.length; i++) {
 			Tuple centroid = data.getItemSet(centroidIndexes[i]);
@@ -79,15 +103,32 @@ public class ClusterSet implements Serializable {
 	 * @return The method is returning the closer cluster to a given tuple.
 	 */
 	public Cluster nearestCluster(Tuple tuple) {
-		double minDistance = Double.MAX_VALUE; // C[0].getCentroid().getDistance(tuple);
+		return nearestCluster(tuple, null);
+	}
+
+	/**
+	 * The function finds the nearest cluster to a given tuple, as
+	 * 'nearestCluster(Tuple)', and also gives the distance between the tuple and
+	 * the centroid of that cluster.
+	 * 
+	 * @param tuple       the example to assign
+	 * @param minDistance an array whose first element receives the distance from
+	 *                    the nearest centroid, or null
+	 * @return The method is returning the closer cluster to a given tuple.
+	 */
+	public Cluster nearestCluster(Tuple tuple, double[] minDistance) {
+		double min = Double.MAX_VALUE; // C[0].getCentroid().getDistance(tuple);
 		Cluster nearestCluster = null;
 		for (int i = 0; i < C.length; i++) {
 			double distance = tuple.getDistance(C[i].getCentroid());
-			if (distance < minDistance) {
-				minDistance = distance;
+			if (distance < min) {
+				min = distance;
 				nearestCluster = C[i];
 			}
 		}
+		if (minDistance != null) {
+			minDistance[0] = min;
+		}
 		return nearestCluster;
 	}
 
@@ -121,6 +162,27 @@ public class ClusterSet implements Serializable {
 		}
 	}
 
+	/**
+	 * The function returns the iterations of the k-means which has discovered the
+	 * clusters.
+	 * 
+	 * @return the events of the iterations, in order, or null if they are not
+	 *         known.
+	 */
+	public List<IterationEvent> getConvergence() {
+		return convergence;
+	}
+
+	/**
+	 * This function sets the iterations of the k-means which has discovered the
+	 * clusters.
+	 * 
+	 * @param convergence the events of the iterations, in order
+	 */
+	public void setConvergence(List<IterationEvent> convergence) {
+		this.convergence = convergence;
+	}
+
 	/**
 	 * This function returns a string made from each centroid of the cluster set.
 	 * 
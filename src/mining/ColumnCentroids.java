@@ -0,0 +1,282 @@
+package mining;
+
+import java.util.List;
+
+import data.Attribute;
+import data.ContinuousAttribute;
+import data.Data;
+import data.DiscreteAttribute;
+import data.Item;
+
+/**
+ * The ColumnCentroids class holds the centroids of a set of clusters and the
+ * columns of the data, in the primitive form read by a 'DistanceKernel': for
+ * each continuous attribute, its column of values, its minimum and its range,
+ * and the scaled value of each centroid; for each discrete attribute, its
+ * column of codes and the code of the value of each centroid. The discrete
+ * attributes with few values are also packed in one-hot form (see
+ * 'PackedCodes'), with the words of each centroid, so their mismatches are
+ * counted by word instead of attribute by attribute. It is built at
+ * each iteration of the k-means, after the centroids have been updated. It
+ * also holds the buffer where a kernel prepares the rows of a block, so it
+ * must not be used by two threads at once.
+ */
+public class ColumnCentroids {
+	private int k;
+	private int d;
+	private boolean[] continuous;
+	private double[][] values;
+	private int[][] codes;
+	private double[] min;
+	private double[] range;
+	/** The scaled value of each continuous attribute of each centroid */
+	private double[][] centroidValues;
+	/** The code of each discrete attribute of each centroid, -1 if unknown */
+	private int[][] centroidCodes;
+	/** The attributes compared one by one, that is all but the packed ones */
+	private int[] unpacked;
+	/** The packed discrete attributes of the rows, or null */
+	private PackedCodes packed;
+	/** The packed discrete attributes of each centroid */
+	private long[][] centroidWords;
+	/** The mismatches of the packed attributes of a block, by centroid */
+	private double[][] mismatches;
+	/** The rows of a block prepared by the kernels, by attribute */
+	private double[][] buffer;
+
+	/**
+	 * Constructor for the 'ColumnCentroids' class, which packs the discrete
+	 * attributes of the data.
+	 * 
+	 * @param data the data clustered
+	 * @param C    the clusters, whose centroids have the attributes of the data
+	 */
+	public ColumnCentroids(Data data, ClusterSet C) {
+		this(data, C, new PackedCodes(data));
+	}
+
+	/**
+	 * Constructor for the 'ColumnCentroids' class with the discrete attributes of
+	 * the data already packed, so they are packed once for all the iterations of
+	 * the k-means.
+	 * 
+	 * @param data   the data clustered
+	 * @param C      the clusters, whose centroids have the attributes of the data
+	 * @param packed the packed discrete attributes of the data, or null to
+	 *               compare all the attributes one by one
+	 */
+	public ColumnCentroids(Data data, ClusterSet C, PackedCodes packed) {
+		List<Attribute> attributes = data.getAttributeSchema();
+		k = C.getNumberOfClusters();
+		d = attributes.size();
+		continuous = new boolean[d];
+		values = new double[d][];
+		codes = new int[d][];
+		min = new double[d];
+		range = new double[d];
+		centroidValues = new double[k][d];
+		centroidCodes = new int[k][d];
+		for (Attribute attribute : attributes) {
+			int j = attribute.getIndex();
+			if (attribute instanceof ContinuousAttribute) {
+				ContinuousAttribute numeric = (ContinuousAttribute) attribute;
+				continuous[j] = true;
+				values[j] = data.getContinuousColumn(j);
+				min[j] = numeric.getMin();
+				range[j] = numeric.getMax() - numeric.getMin();
+				for (int c = 0; c < k; c++) {
+					Item item = C.get(c).getCentroid().get(j);
+					centroidValues[c][j] = numeric.getScaledValue((double) item.getValue());
+				}
+			} else {
+				DiscreteAttribute discrete = (DiscreteAttribute) attribute;
+				codes[j] = data.getDiscreteColumn(j);
+				for (int c = 0; c < k; c++) {
+					Item item = C.get(c).getCentroid().get(j);
+					centroidCodes[c][j] = discrete.getCode((String) item.getValue());
+				}
+			}
+		}
+
+		this.packed = packed != null && packed.getCount() > 0 ? packed : null;
+		int count = 0;
+		for (int j = 0; j < d; j++) {
+			if (this.packed == null || !this.packed.isPacked(j)) {
+				count++;
+			}
+		}
+		unpacked = new int[count];
+		count = 0;
+		for (int j = 0; j < d; j++) {
+			if (this.packed == null || !this.packed.isPacked(j)) {
+				unpacked[count++] = j;
+			}
+		}
+		if (this.packed != null) {
+			centroidWords = new long[k][];
+			for (int c = 0; c < k; c++) {
+				centroidWords[c] = this.packed.pack(centroidCodes[c]);
+			}
+		}
+	}
+
+	/**
+	 * The function returns the number of centroids.
+	 * 
+	 * @return the value of the variable 'k'.
+	 */
+	public int getNumberOfCentroids() {
+		return k;
+	}
+
+	/**
+	 * The function returns the number of attributes.
+	 * 
+	 * @return the value of the variable 'd'.
+	 */
+	public int getNumberOfAttributes() {
+		return d;
+	}
+
+	/**
+	 * The function tells which attributes are continuous.
+	 * 
+	 * @return an array with true at the index of each continuous attribute.
+	 */
+	boolean[] getContinuous() {
+		return continuous;
+	}
+
+	/**
+	 * The function returns the columns of the continuous attributes.
+	 * 
+	 * @return the values of each continuous attribute, null for the discrete
+	 *         ones.
+	 */
+	double[][] getValues() {
+		return values;
+	}
+
+	/**
+	 * The function returns the columns of the discrete attributes.
+	 * 
+	 * @return the codes of each discrete attribute, null for the continuous ones.
+	 */
+	int[][] getCodes() {
+		return codes;
+	}
+
+	/**
+	 * The function returns the minimum of each continuous attribute.
+	 * 
+	 * @return the minimum values, indexed by attribute.
+	 */
+	double[] getMin() {
+		return min;
+	}
+
+	/**
+	 * The function returns the range (maximum minus minimum) of each continuous
+	 * attribute.
+	 * 
+	 * @return the ranges, indexed by attribute.
+	 */
+	double[] getRange() {
+		return range;
+	}
+
+	/**
+	 * The function returns the scaled values of the continuous attributes of the
+	 * centroids.
+	 * 
+	 * @return the values, indexed by centroid then by attribute.
+	 */
+	double[][] getCentroidValues() {
+		return centroidValues;
+	}
+
+	/**
+	 * The function returns the codes of the discrete attributes of the
+	 * centroids.
+	 * 
+	 * @return the codes, indexed by centroid then by attribute.
+	 */
+	int[][] getCentroidCodes() {
+		return centroidCodes;
+	}
+
+	/**
+	 * The function returns the attributes which are compared one by one.
+	 * 
+	 * @return the indexes of the continuous attributes and of the discrete
+	 *         attributes which are not packed, in ascending order.
+	 */
+	int[] getUnpacked() {
+		return unpacked;
+	}
+
+	/**
+	 * The function returns the packed discrete attributes of the rows.
+	 * 
+	 * @return the packed codes, or null if no attribute is packed.
+	 */
+	PackedCodes getPacked() {
+		return packed;
+	}
+
+	/**
+	 * The function returns the packed discrete attributes of the centroids.
+	 * 
+	 * @return the words of each centroid, or null if no attribute is packed.
+	 */
+	long[][] getCentroidWords() {
+		return centroidWords;
+	}
+
+	/**
+	 * The function counts the mismatches between the packed attributes of a row
+	 * and of a centroid.
+	 * 
+	 * @param i the row
+	 * @param c the centroid
+	 * @return the number of packed attributes whose values differ.
+	 */
+	int mismatches(int i, int c) {
+		long[] rows = packed.getRows();
+		long[] centroid = centroidWords[c];
+		int words = centroid.length;
+		int agreements = 0;
+		for (int w = 0; w < words; w++) {
+			agreements += Long.bitCount(rows[i * words + w] & centroid[w]);
+		}
+		return packed.getCount() - agreements;
+	}
+
+	/**
+	 * The function returns the buffer where a kernel writes the mismatches of the
+	 * packed attributes of the rows of a block, allocated the first time.
+	 * 
+	 * @param length the number of rows of a block
+	 * @return an array of at least length values for each centroid.
+	 */
+	double[][] getMismatchBuffer(int length) {
+		if (mismatches == null || mismatches[0].length < length) {
+			mismatches = new double[k][length];
+		}
+		return mismatches;
+	}
+
+	/**
+	 * The function returns the buffer where a kernel prepares the rows of a
+	 * block, allocated the first time.
+	 * 
+	 * @param length the number of rows of a block
+	 * @return an array of at least length values for each attribute.
+	 */
+	double[][] getBuffer(int length) {
+		if (buffer == null || buffer[0].length < length) {
+			buffer = new double[d][length];
+		}
+		return buffer;
+	}
+}
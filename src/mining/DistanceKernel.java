@@ -0,0 +1,157 @@
+package mining;
+
+/**
+ * The DistanceKernel class finds the nearest centroid of the examples of a
+ * block of consecutive rows, reading the columns of the data directly instead
+ * of building a 'Tuple' for each example. The distance is the one of
+ * 'Tuple.getDistance': the sum of the scaled absolute differences of the
+ * continuous attributes and of 0 or 1 for the discrete ones. The attributes
+ * compared one by one are added in the order of the attributes, then the
+ * number of mismatches of the packed discrete attributes (see 'PackedCodes');
+ * so a kernel finds the same cluster as 'ClusterSet.nearestCluster', the first
+ * one in case of ties, except that with both continuous and packed attributes
+ * the different order of the additions can change the last bit of a
+ * distance. <br>
+ * <br>
+ * Two kernels exist: 'ScalarDistanceKernel', and 'VectorDistanceKernel',
+ * which computes several rows at once with the SIMD instructions of the
+ * processor through the incubator module jdk.incubator.vector. The vector
+ * kernel is in the source folder "vector" and is compiled and run with the
+ * option --add-modules jdk.incubator.vector; it is loaded by reflection, so
+ * the server falls back to the scalar kernel when it is not compiled, when the
+ * module is not available or when the processor has no SIMD instructions for
+ * doubles. The system property kmeans.kernel chooses the kernel: "auto" (the
+ * default), "vector" or "scalar".
+ */
+public abstract class DistanceKernel {
+	private static final String VECTOR_KERNEL = "mining.VectorDistanceKernel";
+	private static final DistanceKernel INSTANCE = load(System.getProperty("kmeans.kernel", "auto"));
+
+	/**
+	 * The function returns the kernel chosen when the class is loaded.
+	 * 
+	 * @return the vector kernel if it can be used, otherwise the scalar one.
+	 */
+	public static DistanceKernel getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * This function loads the kernel asked by the configuration.
+	 * 
+	 * @param name "auto", "vector" or "scalar"
+	 * @return the kernel.
+	 */
+	private static DistanceKernel load(String name) {
+		if (!name.equals("scalar")) {
+			try {
+				DistanceKernel kernel = (DistanceKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor()
+						.newInstance();
+				if (kernel.isAccelerated()) {
+					return kernel;
+				}
+			} catch (ReflectiveOperationException | LinkageError e) {
+				if (name.equals("vector")) {
+					System.out.println("Vector distance kernel not available: " + e);
+				}
+			}
+		}
+		return new ScalarDistanceKernel();
+	}
+
+	/**
+	 * This function finds the nearest centroid of each example of a block of
+	 * rows.
+	 * 
+	 * @param centroids the centroids and the columns of the data
+	 * @param from      the first row of the block
+	 * @param to        the row after the last one of the block
+	 * @param nearest   receives at index i - from the index of the centroid
+	 *                  nearest to the row i, -1 if no distance is less than
+	 *                  Double.MAX_VALUE
+	 * @param distance  receives at index i - from the distance of the row i from
+	 *                  its nearest centroid
+	 */
+	public abstract void nearest(ColumnCentroids centroids, int from, int to, int[] nearest, double[] distance);
+
+	/**
+	 * The function tells if the kernel computes several rows at once.
+	 * 
+	 * @return true for a SIMD kernel.
+	 */
+	public abstract boolean isAccelerated();
+
+	/**
+	 * This function finds the nearest centroid of each example of a block of
+	 * rows, one row at a time: the scaled values of the row are computed once,
+	 * then compared with each centroid, and the packed attributes are compared
+	 * by word. It is used by the vector kernel for the
+	 * rows left after the last full vector.
+	 * 
+	 * @param centroids the centroids and the columns of the data
+	 * @param from      the first row of the block
+	 * @param to        the row after the last one of the block
+	 * @param offset    the row whose result goes at index 0 of the arrays
+	 * @param nearest   receives the index of the nearest centroid of each row
+	 * @param distance  receives the distance of each row from its nearest
+	 *                  centroid
+	 */
+	static void nearestScalar(ColumnCentroids centroids, int from, int to, int offset, int[] nearest,
+			double[] distance) {
+		int k = centroids.getNumberOfCentroids();
+		int d = centroids.getNumberOfAttributes();
+		boolean[] continuous = centroids.getContinuous();
+		double[][] values = centroids.getValues();
+		int[][] codes = centroids.getCodes();
+		double[] min = centroids.getMin();
+		double[] range = centroids.getRange();
+		double[][] centroidValues = centroids.getCentroidValues();
+		int[][] centroidCodes = centroids.getCentroidCodes();
+		int[] unpacked = centroids.getUnpacked();
+		boolean packed = centroids.getPacked() != null;
+		double[] scaled = new double[d];
+		int[] code = new int[d];
+		for (int i = from; i < to; i++) {
+			for (int j : unpacked) {
+				if (continuous[j]) {
+					scaled[j] = (values[j][i] - min[j]) / range[j];
+				} else {
+					code[j] = codes[j][i];
+				}
+			}
+			double best = Double.MAX_VALUE;
+			int bestIndex = -1;
+			for (int c = 0; c < k; c++) {
+				double[] centroidValue = centroidValues[c];
+				int[] centroidCode = centroidCodes[c];
+				double sum = 0.0;
+				for (int j : unpacked) {
+					if (continuous[j]) {
+						sum += Math.abs(scaled[j] - centroidValue[j]);
+					} else if (code[j] != centroidCode[j]) {
+						sum += 1.0;
+					}
+				}
+				if (packed) {
+					sum += centroids.mismatches(i, c);
+				}
+				if (sum < best) {
+					best = sum;
+					bestIndex = c;
+				}
+			}
+			nearest[i - offset] = bestIndex;
+			distance[i - offset] = best;
+		}
+	}
+
+	/**
+	 * This function returns the name of the kernel.
+	 * 
+	 * @return a short description of the kernel.
+	 */
+	@Override
+	public String toString() {
+		return "scalar";
+	}
+}
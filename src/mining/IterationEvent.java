@@ -0,0 +1,112 @@
+package mining;
+
+import java.io.Serializable;
+import java.util.Locale;
+
+/**
+ * The IterationEvent class describes an iteration of the k-means, to follow
+ * its convergence: the number of examples which have changed cluster, the sum
+ * of the squared distances of the examples from their centroid (SSE), the
+ * largest distance a centroid has moved, the time of the iteration and the
+ * number of distances computed.
+ */
+public class IterationEvent implements Serializable {
+	private static final long serialVersionUID = 3198530717262270145L;
+	private int iteration;
+	private int pointsMoved;
+	private double sse;
+	private double maxShift;
+	private double elapsedMillis;
+	private long distanceEvaluations;
+
+	/**
+	 * Constructor for the 'IterationEvent' class.
+	 * 
+	 * @param iteration           the number of the iteration, from 1
+	 * @param pointsMoved         the number of examples assigned to another
+	 *                            cluster
+	 * @param sse                 the sum of the squared distances of the examples
+	 *                            from the centroid of their cluster
+	 * @param maxShift            the largest distance between the centroid of a
+	 *                            cluster before and after the iteration
+	 * @param elapsedMillis       the time of the iteration in milliseconds
+	 * @param distanceEvaluations the number of distances computed by the
+	 *                            iteration
+	 */
+	public IterationEvent(int iteration, int pointsMoved, double sse, double maxShift, double elapsedMillis,
+			long distanceEvaluations) {
+		this.iteration = iteration;
+		this.pointsMoved = pointsMoved;
+		this.sse = sse;
+		this.maxShift = maxShift;
+		this.elapsedMillis = elapsedMillis;
+		this.distanceEvaluations = distanceEvaluations;
+	}
+
+	/**
+	 * The function returns the number of the iteration.
+	 * 
+	 * @return the value of the variable 'iteration'.
+	 */
+	public int getIteration() {
+		return iteration;
+	}
+
+	/**
+	 * The function returns the number of examples assigned to another cluster.
+	 * 
+	 * @return the value of the variable 'pointsMoved'.
+	 */
+	public int getPointsMoved() {
+		return pointsMoved;
+	}
+
+	/**
+	 * The function returns the sum of the squared distances of the examples from
+	 * their centroid, before the centroids are updated.
+	 * 
+	 * @return the value of the variable 'sse'.
+	 */
+	public double getSse() {
+		return sse;
+	}
+
+	/**
+	 * The function returns the largest shift of a centroid.
+	 * 
+	 * @return the value of the variable 'maxShift'.
+	 */
+	public double getMaxShift() {
+		return maxShift;
+	}
+
+	/**
+	 * The function returns the time of the iteration.
+	 * 
+	 * @return the value of the variable 'elapsedMillis'.
+	 */
+	public double getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * The function returns the number of distances computed by the iteration.
+	 * 
+	 * @return the value of the variable 'distanceEvaluations'.
+	 */
+	public long getDistanceEvaluations() {
+		return distanceEvaluations;
+	}
+
+	/**
+	 * This function returns a string representation of the event.
+	 * 
+	 * @return the values of the event on one line.
+	 */
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT,
+				"Iteration %d: moved=%d sse=%.6f maxShift=%.6f ms=%.3f distances=%d", iteration, pointsMoved, sse,
+				maxShift, elapsedMillis, distanceEvaluations);
+	}
+}
@@ -0,0 +1,15 @@
+package mining;
+
+/**
+ * The IterationListener interface is notified by 'KMeansMiner' at the end of
+ * each iteration of the k-means, on the thread which runs it.
+ */
+public interface IterationListener {
+	/**
+	 * This function is called when an iteration is finished. It must return
+	 * quickly, the k-means waits for it.
+	 * 
+	 * @param event the description of the iteration
+	 */
+	void iterationCompleted(IterationEvent event);
+}
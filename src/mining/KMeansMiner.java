@@ -2,20 +2,67 @@ package mining;
 
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
+import agent.ClusteringQuery;
+import agent.DbAccess;
+import agent.Example;
+import agent.LoadRequest;
+import agent.TableData;
+import agent.TableSchema;
+import exceptions.ClusteringCancelledException;
+import exceptions.NoValueException;
 import exceptions.OutOfRangeSampleSize;
+import data.Attribute;
+import data.ContinuousAttribute;
+import data.ContinuousItem;
 import data.Data;
+import data.DiscreteAttribute;
+import data.DiscreteItem;
+import data.Item;
+import data.Tuple;
+import metrics.Counter;
+import metrics.IterationRecordedEvent;
+import metrics.Metrics;
+import metrics.PhaseEvent;
+import metrics.Timer;
 
 /**
  * The KMeansMiner class implements the K-means clustering algorithm for data
  * mining.
  */
 public class KMeansMiner {
+	/** Maximum number of iterations of the in-database k-means */
+	private static final int MAX_DATABASE_ITERATIONS = 100;
+	/** Scaled difference below which a numeric centroid value is unchanged */
+	private static final double CENTROID_TOLERANCE = 1e-9;
+	/** Number of examples assigned between two checks of the cancellation */
+	private static final int CANCEL_CHECK_INTERVAL = 4096;
+	/** Number of examples whose nearest centroid is found at once */
+	private static final int BLOCK_SIZE = 1024;
+
 	private ClusterSet C;
+	private int k;
+	private long[] clusterSizes;
+	/** The seed of the random choice of the initial centroids */
+	private long seed = System.currentTimeMillis();
+	/** The iteration running, read by other threads to follow the progress */
+	private volatile int iteration;
+	/** Set by another thread to stop the run at the next check */
+	private volatile boolean cancelled;
+	/** The number of distances between an example and a centroid computed */
+	private long distanceEvaluations;
+	/** Set by another thread to end the run after the current iteration */
+	private volatile boolean stopRequested;
+	/** Notified at the end of each iteration, or null */
+	private IterationListener listener;
+	/** The number of attributes of the random projection, 0 for none */
+	private int projection;
 
 	/**
 	 * This is a constructor for the KMeansMiner class that takes an integer
@@ -26,12 +73,39 @@ public class KMeansMiner {
 	 */
 	public KMeansMiner(int k) {
 		C = new ClusterSet(k);
+		this.k = k;
 	}
 
 	/**
-	 * Constructor of KMeansMiner for de-serialisation the centroids It reads an
-	 * object from a file with the given fileName using ObjectInputStream and
-	 * assigns to the static variable 'C', which is a ClusterSet object.
+	 * Constructor of KMeansMiner for a deterministic run: the initial centroids
+	 * are chosen with the given seed, so two runs on the same data with the same
+	 * seed discover the same clusters.
+	 * 
+	 * @param k    number of clusters to be generated.
+	 * @param seed the seed of the random choice of the initial centroids
+	 */
+	public KMeansMiner(int k, long seed) {
+		this(k);
+		this.seed = seed;
+	}
+
+	/**
+	 * Constructor of KMeansMiner for a model which has already been read, for
+	 * example a model shared by the 'ModelRegistry'.
+	 * 
+	 * @param C the clusters of the model
+	 */
+	public KMeansMiner(ClusterSet C) {
+		this.C = C;
+		this.k = C.getNumberOfClusters();
+	}
+
+	/**
+	 * Constructor of KMeansMiner for de-serialisation the centroids It reads the
+	 * model from a file with the given fileName and assigns it to the variable
+	 * 'C', which is a ClusterSet object. The file can be either in the binary
+	 * model format written by 'save' or a model serialised with
+	 * ObjectOutputStream by the previous versions of the server.
 	 * 
 	 * @param fileName string with the path name of the file which contains the
 	 *                 centroids
@@ -40,22 +114,57 @@ public class KMeansMiner {
 	 * @throws ClassNotFoundException
 	 */
 	public KMeansMiner(String fileName) throws FileNotFoundException, IOException, ClassNotFoundException {
-		ObjectInputStream in = new ObjectInputStream(new FileInputStream(fileName));
-		C = (ClusterSet) in.readObject();
-		in.close();
+		InputStream in = new FileInputStream(fileName);
+		try {
+			C = ModelFormat.read(in);
+		} finally {
+			in.close();
+		}
 	}
 
 	/**
 	 * This Java function saves an object C, which corresponds to the centroids we
-	 * discover, to a file with the given fileName using ObjectOutputStream.
+	 * discover, to a file with the given fileName in the binary model format,
+	 * together with the examples of each cluster.
 	 * 
 	 * @param fileName The parameter "fileName" is a String variable that represents
 	 *                 the name of the file where the object "C" will be saved.
 	 */
 	public void save(String fileName) throws FileNotFoundException, IOException {
-		ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(fileName));
-		out.writeObject(C);
-		out.close();
+		save(fileName, true);
+	}
+
+	/**
+	 * This Java function saves the centroids to a file with the given fileName in
+	 * the binary model format: a header, the fingerprint of the schema, the
+	 * centroids as arrays of primitive values and, optionally, the examples of
+	 * each cluster as runs of consecutive ids. The model is written to a
+	 * temporary file which replaces the file atomically, so a crash never leaves
+	 * a truncated model.
+	 * 
+	 * @param fileName   the name of the file where the model will be saved.
+	 * @param membership true to save the examples of each cluster, false to save
+	 *                   only the centroids
+	 */
+	public void save(String fileName, boolean membership) throws FileNotFoundException, IOException {
+		try {
+			ModelFormat.writeFile(C, fileName, membership);
+		} finally {
+			ModelRegistry.getInstance().invalidate(fileName);
+		}
+	}
+
+	/**
+	 * This function saves the centroids and the examples of each cluster as
+	 * 'save', but in background: the model is handed to the 'ModelStore', which
+	 * writes it after the function has returned. The clusters must not be
+	 * modified after the call.
+	 * 
+	 * @param fileName the name of the file where the model will be saved.
+	 * @return the ticket of the save, to ask the 'ModelStore' its status.
+	 */
+	public long saveAsync(String fileName) {
+		return ModelStore.getInstance().save(fileName, C, true);
 	}
 
 	/**
@@ -75,29 +184,113 @@ public class KMeansMiner {
 	 * STEPS: <br>
 	 * 1. Random choice of centroids for k clusters. <br>
 	 * 2. Assignment of each row of the matrix at to the closest centroid example.
-	 * <br>
+	 * The closest centroids are found by blocks of BLOCK_SIZE examples by the
+	 * 'DistanceKernel', which reads the columns of the data. <br>
 	 * 3. Calculation of the new centroid for each cluster. <br>
 	 * 4. Repeat 2 and 3 until two consecutive iterations return equal centroids.
 	 * 
+	 * The run stops with a ClusteringCancelledException if 'cancel' is called:
+	 * the cancellation is checked before each iteration and every
+	 * CANCEL_CHECK_INTERVAL examples of the assignment. If 'stop' is called, the
+	 * run ends normally after the current iteration, with clusters which may not
+	 * have converged. <br>
+	 * At the end of each iteration an 'IterationEvent' is given to the listener,
+	 * if any, and the events of all the iterations are kept in the ClusterSet
+	 * (see 'ClusterSet.getConvergence'). <br>
+	 * If a projection has been set (see 'setProjection') and the data has more
+	 * continuous attributes than its dimension, the steps are run on the
+	 * 'RandomProjection' of the data, seeded with the seed of the run, and the
+	 * events describe the projected data. The centroids of the clusters found
+	 * are then computed on the data, so the clusters are described by the
+	 * attributes of the data.
+	 * 
 	 * @param data an object of type Data, which will be the data list of examples.
 	 * @return The method is returning an integer value which represents the number
 	 *         of iterations performed during the k-means clustering algorithm.
+	 * @throws OutOfRangeSampleSize
+	 * @throws ClusteringCancelledException if the run has been cancelled
+	 */
+	public int kmeans(Data data) throws OutOfRangeSampleSize, ClusteringCancelledException {
+		if (!RandomProjection.reduces(data, projection)) {
+			return cluster(data);
+		}
+		long start = System.nanoTime();
+		PhaseEvent event = new PhaseEvent();
+		event.begin();
+		Data projected = new RandomProjection(data, projection, seed).project(data);
+		Metrics.timer("clustering", "projection").recordSince(start);
+		event.commit("clustering", "projection", data.getTableName(), k, data.getNumberOfExamples(),
+				projected.getNumberOfAttributes());
+
+		int numberOfIterations = cluster(projected);
+		ClusterSet restored = new ClusterSet(k);
+		for (int i = 0; i < k; i++) {
+			Cluster cluster = new Cluster(data.getItemSet(0));
+			for (int id : C.get(i).getClusteredData()) {
+				cluster.addData(id);
+			}
+			cluster.computeCentroid(data);
+			restored.add(cluster);
+		}
+		restored.setConvergence(C.getConvergence());
+		C = restored;
+		return numberOfIterations;
+	}
+
+	/**
+	 * This function runs the steps of the k-means on a dataset, as described by
+	 * 'kmeans'.
+	 * 
+	 * @param data the data list of examples
+	 * @return the number of iterations performed.
+	 * @throws OutOfRangeSampleSize
+	 * @throws ClusteringCancelledException if the run has been cancelled
 	 */
-	public int kmeans(Data data) throws OutOfRangeSampleSize {
+	private int cluster(Data data) throws OutOfRangeSampleSize, ClusteringCancelledException {
+		Timer iterationTimer = Metrics.timer("clustering", "iteration");
+		Counter distances = Metrics.counter("clustering", "distanceEvaluations");
+		PhaseEvent run = new PhaseEvent();
+		run.begin();
+		String table = data.getTableName();
+		int n = data.getNumberOfExamples();
+		int d = data.getNumberOfAttributes();
+		List<IterationEvent> convergence = new ArrayList<IterationEvent>();
+		DistanceKernel kernel = DistanceKernel.getInstance();
+		PackedCodes packed = new PackedCodes(data);
+		int[] nearest = new int[BLOCK_SIZE];
+		double[] distance = new double[BLOCK_SIZE];
 		int numberOfIterations = 0;
+		C.setConvergence(convergence);
 		// STEP 1
-		C.initializeCentroids(data);
+		C.initializeCentroids(data, seed);
 		boolean changedCluster;
 		do {
+			checkCancelled();
+			long start = System.nanoTime();
+			IterationRecordedEvent recorded = new IterationRecordedEvent();
+			recorded.begin();
 			numberOfIterations++;
+			iteration = numberOfIterations;
 			// STEP 2
 			changedCluster = false;
+			int pointsMoved = 0;
+			double sse = 0;
+			ColumnCentroids centroids = new ColumnCentroids(data, C, packed);
 			for (int i = 0; i < data.getNumberOfExamples(); i++) {
-				Cluster nearestCluster = C.nearestCluster(data.getItemSet(i));
+				if (i % CANCEL_CHECK_INTERVAL == CANCEL_CHECK_INTERVAL - 1) {
+					checkCancelled();
+				}
+				if (i % BLOCK_SIZE == 0) {
+					kernel.nearest(centroids, i, Math.min(i + BLOCK_SIZE, data.getNumberOfExamples()), nearest,
+							distance);
+				}
+				Cluster nearestCluster = C.get(nearest[i % BLOCK_SIZE]);
+				sse += distance[i % BLOCK_SIZE] * distance[i % BLOCK_SIZE];
 				Cluster oldCluster = C.currentCluster(i);
 				boolean currentChange = nearestCluster.addData(i);
 				if (currentChange) {
 					changedCluster = true;
+					pointsMoved++;
 				}
 				// remove tuple from old cluster
 				if (currentChange && oldCluster != null) {
@@ -105,9 +298,314 @@ public class KMeansMiner {
 				}
 			}
 			// STEP 3
+			Tuple[] previous = new Tuple[C.getNumberOfClusters()];
+			for (int i = 0; i < previous.length; i++) {
+				previous[i] = copy(C.get(i).getCentroid());
+			}
 			C.updateCentroids(data);
-		} while (changedCluster);
+			double maxShift = 0;
+			for (int i = 0; i < previous.length; i++) {
+				maxShift = Math.max(maxShift, previous[i].getDistance(C.get(i).getCentroid()));
+			}
+			long evaluations = (long) data.getNumberOfExamples() * C.getNumberOfClusters();
+			distanceEvaluations += evaluations;
+			distances.add(evaluations);
+			long elapsed = System.nanoTime() - start;
+			iterationTimer.record(elapsed);
+			recorded.commit(table, k, n, d, numberOfIterations, false, pointsMoved, sse);
+
+			IterationEvent event = new IterationEvent(numberOfIterations, pointsMoved, sse, maxShift,
+					elapsed / 1e6, evaluations);
+			convergence.add(event);
+			if (listener != null) {
+				listener.iterationCompleted(event);
+			}
+		} while (changedCluster && !stopRequested);
+
+		run.commit("clustering", "kmeans", table, k, n, d);
+		return numberOfIterations;
+	}
+
+	/**
+	 * The function copies the items of a centroid, which are updated in place by
+	 * 'ClusterSet.updateCentroids'.
+	 * 
+	 * @param centroid the centroid
+	 * @return a tuple with the same values as the centroid.
+	 */
+	private static Tuple copy(Tuple centroid) {
+		Tuple copy = new Tuple(centroid.getLength());
+		for (int j = 0; j < centroid.getLength(); j++) {
+			Item item = centroid.get(j);
+			if (item instanceof ContinuousItem) {
+				copy.add(new ContinuousItem((ContinuousAttribute) item.getAttribute(), (Double) item.getValue()), j);
+			} else {
+				copy.add(new DiscreteItem((DiscreteAttribute) item.getAttribute(), (String) item.getValue()), j);
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * This function sets the dimension of the random projection of the
+	 * continuous attributes of the data, which the k-means is run on (see
+	 * 'kmeans'). The distances on the projected data estimate the Euclidean
+	 * distances of the continuous attributes instead of the sum of their
+	 * differences, so the clusters found may differ from the ones found on the
+	 * data.
+	 * 
+	 * @param projection the number of projected attributes, 0 to run the k-means
+	 *                   on the data
+	 */
+	public void setProjection(int projection) {
+		this.projection = projection;
+	}
+
+	/**
+	 * The function returns the dimension of the random projection of the data.
+	 * 
+	 * @return the number of projected attributes, 0 if the data is not projected.
+	 */
+	public int getProjection() {
+		return projection;
+	}
+
+	/**
+	 * This function sets the listener notified at the end of each iteration of
+	 * the k-means, from the thread which runs it.
+	 * 
+	 * @param listener the listener, or null
+	 */
+	public void setListener(IterationListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * This function asks a run of the k-means, in progress in another thread, to
+	 * end after the current iteration: unlike 'cancel', the run returns the
+	 * clusters found so far.
+	 */
+	public void stop() {
+		stopRequested = true;
+	}
+
+	/**
+	 * The function tells if the k-means has been asked to stop early.
+	 * 
+	 * @return true if 'stop' has been called.
+	 */
+	public boolean isStopped() {
+		return stopRequested;
+	}
+
+	/**
+	 * The function returns the number of distances between an example and a
+	 * centroid computed by the k-means: k for each example at each iteration.
+	 * 
+	 * @return the number of distance evaluations.
+	 */
+	public long getDistanceEvaluations() {
+		return distanceEvaluations;
+	}
+
+	/**
+	 * This function asks a run of the k-means, in progress in another thread, to
+	 * stop: the run throws a ClusteringCancelledException at its next check. A
+	 * run started after the call stops at once.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * The function tells if the k-means has been cancelled.
+	 * 
+	 * @return true if 'cancel' has been called.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * This function stops the run if the k-means has been cancelled.
+	 * 
+	 * @throws ClusteringCancelledException if 'cancel' has been called
+	 */
+	private void checkCancelled() throws ClusteringCancelledException {
+		if (cancelled) {
+			throw new ClusteringCancelledException("Clustering cancelled at iteration " + iteration);
+		}
+	}
+
+	/**
+	 * This function implements the k-means clustering algorithm inside the
+	 * database: the examples are never loaded, each iteration runs a single
+	 * statement which assigns every row of the table to the nearest centroid and
+	 * returns the aggregates of each cluster, from which the new centroids are
+	 * computed. Only the k centroids are kept in memory, so the clusters of the
+	 * resulting 'ClusterSet' have no examples; their sizes are returned by
+	 * 'getClusterSizes'.
+	 * 
+	 * <br>
+	 * STEPS: <br>
+	 * 1. Random choice of k distinct rows of the table as centroids. <br>
+	 * 2. Assignment of each row to the closest centroid and aggregation by
+	 * cluster, in the database. <br>
+	 * 3. Calculation of the new centroids: the mean of the numeric columns and the
+	 * most frequent value of the others. A cluster with no rows keeps its
+	 * centroid. <br>
+	 * 4. Repeat 2 and 3 until the centroids do not change.
+	 * 
+	 * @param db      database access object which owns the table
+	 * @param request the table, the columns and the filter on its rows; in
+	 *                WEIGHTED mode every row is clustered, otherwise the distinct
+	 *                rows
+	 * @return the number of iterations performed.
+	 * @throws SQLException
+	 * @throws NoValueException
+	 * @throws OutOfRangeSampleSize
+	 * @throws ClusteringCancelledException if the run has been cancelled, which is
+	 *                                      checked before each iteration
+	 */
+	public int kmeans(DbAccess db, LoadRequest request)
+			throws SQLException, NoValueException, OutOfRangeSampleSize, ClusteringCancelledException {
+		TableSchema table = new TableSchema(db, request.getTableName(), request.getColumns());
+		List<Attribute> attributes = Data.loadAttributeSchema(table, new TableData(db), request.getTableName(),
+				request.getFilter());
+		int d = attributes.size();
+		double[] min = new double[d];
+		double[] max = new double[d];
+		for (Attribute attribute : attributes) {
+			if (attribute instanceof ContinuousAttribute) {
+				min[attribute.getIndex()] = ((ContinuousAttribute) attribute).getMin();
+				max[attribute.getIndex()] = ((ContinuousAttribute) attribute).getMax();
+			}
+		}
+		ClusteringQuery query = new ClusteringQuery(db, table, request, min, max);
+		PhaseEvent run = new PhaseEvent();
+		run.begin();
+
+		// STEP 1
+		List<Example> sample = query.sampleCentroids(k, seed);
+		Object[][] centroids = new Object[k][d];
+		for (int i = 0; i < k; i++) {
+			for (int j = 0; j < d; j++) {
+				centroids[i][j] = sample.get(i).get(j);
+			}
+		}
 
+		Timer iterationTimer = Metrics.timer("clustering", "databaseIteration");
+		clusterSizes = new long[k];
+		int numberOfIterations = 0;
+		boolean changedCentroid;
+		do {
+			checkCancelled();
+			long start = System.nanoTime();
+			IterationRecordedEvent recorded = new IterationRecordedEvent();
+			recorded.begin();
+			numberOfIterations++;
+			iteration = numberOfIterations;
+			// STEP 2
+			ClusteringQuery.ClusterAggregates aggregates = query.aggregate(centroids);
+			// STEP 3
+			changedCentroid = false;
+			for (int i = 0; i < k; i++) {
+				clusterSizes[i] = aggregates.getCount(i);
+				if (clusterSizes[i] == 0) {
+					continue;
+				}
+				for (Attribute attribute : attributes) {
+					int j = attribute.getIndex();
+					Object value;
+					if (attribute instanceof ContinuousAttribute) {
+						value = aggregates.getSum(i, j) / clusterSizes[i];
+						double range = max[j] - min[j];
+						double shift = Math.abs((double) value - (double) centroids[i][j]);
+						if (range > 0 && shift / range > CENTROID_TOLERANCE) {
+							changedCentroid = true;
+						}
+					} else {
+						value = mostFrequentValue(aggregates.getValueCounts(i, j));
+						if (!value.equals(centroids[i][j])) {
+							changedCentroid = true;
+						}
+					}
+					centroids[i][j] = value;
+				}
+			}
+			iterationTimer.recordSince(start);
+			recorded.commit(request.getTableName(), k, rows(clusterSizes), d, numberOfIterations, true, -1, Double.NaN);
+		} while (changedCentroid && numberOfIterations < MAX_DATABASE_ITERATIONS);
+		run.commit("clustering", "databaseKmeans", request.getTableName(), k, rows(clusterSizes), d);
+
+		for (int i = 0; i < k; i++) {
+			Tuple centroid = new Tuple(d);
+			for (Attribute attribute : attributes) {
+				int j = attribute.getIndex();
+				if (attribute instanceof ContinuousAttribute) {
+					centroid.add(new ContinuousItem((ContinuousAttribute) attribute, (double) centroids[i][j]), j);
+				} else {
+					centroid.add(new DiscreteItem((DiscreteAttribute) attribute, (String) centroids[i][j]), j);
+				}
+			}
+			C.add(new Cluster(centroid));
+		}
 		return numberOfIterations;
 	}
+
+	/**
+	 * The function returns the number of rows clustered by the in-database
+	 * k-means.
+	 * 
+	 * @param sizes the number of rows of each cluster
+	 * @return the sum of the sizes.
+	 */
+	private static long rows(long[] sizes) {
+		long rows = 0;
+		for (long size : sizes) {
+			rows += size;
+		}
+		return rows;
+	}
+
+	/**
+	 * The function returns the iteration of the k-means which is running, it can
+	 * be called by another thread to follow the progress of the clustering.
+	 * 
+	 * @return the number of the current iteration, 0 if the k-means has not
+	 *         started.
+	 */
+	public int getIteration() {
+		return iteration;
+	}
+
+	/**
+	 * The function returns the number of rows of each cluster computed by the
+	 * in-database k-means.
+	 * 
+	 * @return the sizes of the clusters, or null if the in-database k-means has
+	 *         not been run.
+	 */
+	public long[] getClusterSizes() {
+		return clusterSizes;
+	}
+
+	/**
+	 * This function returns the value with the highest count. In case of ties the
+	 * first value in sorted order is returned, as 'Data.computePrototype'.
+	 * 
+	 * @param valueCounts a sorted map from the values to their counts
+	 * @return the most frequent value.
+	 */
+	private String mostFrequentValue(Map<String, Long> valueCounts) {
+		String prototype = null;
+		long maxFrequency = -1;
+		for (Map.Entry<String, Long> entry : valueCounts.entrySet()) {
+			if (entry.getValue() > maxFrequency) {
+				maxFrequency = entry.getValue();
+				prototype = entry.getKey();
+			}
+		}
+		return prototype;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,491 @@
+package mining;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import data.Attribute;
+import data.ContinuousAttribute;
+import data.ContinuousItem;
+import data.DiscreteAttribute;
+import data.DiscreteItem;
+import data.Item;
+import data.Tuple;
+
+/**
+ * The ModelFormat class writes and reads the compact binary format of a
+ * ClusterSet, which replaces the Java serialization of the whole object
+ * graph. The layout of a model is: <br>
+ * <br>
+ * a header with the magic number, the version and the flags; <br>
+ * the fingerprint of the schema, the number of clusters and of attributes;
+ * <br>
+ * for each attribute: its type and name, the minimum and maximum value of a
+ * continuous attribute, or the sorted dictionary of the values used by the
+ * centroids of a discrete attribute; <br>
+ * the centroids, by attribute: k doubles for a continuous attribute, k codes
+ * of the dictionary for a discrete one, -1 standing for a NULL value; <br>
+ * if the MEMBERSHIP flag is set, the examples of each cluster as runs of
+ * consecutive ids, with variable-length gaps and lengths; <br>
+ * if the CONVERGENCE flag is set (version 2), the events of the iterations of
+ * the k-means which has found the clusters; <br>
+ * the CRC32 of all the previous bytes. <br>
+ * <br>
+ * The strings (names and values) are written by 'writeUTF' in the versions 1
+ * and 2, and as their length, a variable-length integer, followed by their
+ * UTF-8 bytes in version 3. A model is written in the oldest version which can
+ * hold it, so it can be read by the previous versions of the server: version 1
+ * without convergence events, version 2 with them, and version 3 only when a
+ * string is too long for 'writeUTF' or a centroid has a NULL value. Models
+ * saved by Java serialization before this format are still read.
+ */
+class ModelFormat {
+	private static final int MAGIC = 0x4B4D4D44; // "KMMD"
+	private static final int VERSION = 3;
+	/** Version of the models whose strings fit 'writeUTF' */
+	private static final int VERSION_2 = 2;
+	/** Version of the models without convergence events */
+	private static final int VERSION_1 = 1;
+	/** Longest string which always fits 'writeUTF': 3 bytes per char at most */
+	private static final int MAX_UTF_LENGTH = 65535 / 3;
+	/** Code of a NULL value of a discrete centroid */
+	private static final int NULL_CODE = -1;
+	/** Flag set when the examples of the clusters are saved */
+	private static final int MEMBERSHIP = 1;
+	/** Flag set when the events of the iterations are saved */
+	private static final int CONVERGENCE = 2;
+	/** First bytes of a Java serialization stream */
+	private static final int SERIALIZATION_MAGIC = 0xACED0005;
+	private static final byte CONTINUOUS = 0;
+	private static final byte DISCRETE = 1;
+
+	/**
+	 * This function writes a set of clusters in the binary format. The stream is
+	 * flushed but not closed.
+	 *
+	 * @param C          the clusters, whose centroids have all the attributes
+	 * @param stream     where the model is written
+	 * @param membership true to save the examples of each cluster too
+	 * @throws IOException
+	 */
+	static void write(ClusterSet C, OutputStream stream, boolean membership) throws IOException {
+		CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(stream), new CRC32());
+		DataOutputStream out = new DataOutputStream(checked);
+		int k = C.getNumberOfClusters();
+		Tuple first = C.get(0).getCentroid();
+		int d = first.getLength();
+
+		List<IterationEvent> convergence = C.getConvergence();
+		boolean events = convergence != null && !convergence.isEmpty();
+		int version = needsVersion3(C) ? VERSION : events ? VERSION_2 : VERSION_1;
+		out.writeInt(MAGIC);
+		out.writeInt(version);
+		out.writeInt((membership ? MEMBERSHIP : 0) | (events ? CONVERGENCE : 0));
+		out.writeLong(fingerprint(first));
+		out.writeInt(k);
+		out.writeInt(d);
+
+		for (int j = 0; j < d; j++) {
+			Attribute attribute = first.get(j).getAttribute();
+			if (attribute instanceof ContinuousAttribute) {
+				out.writeByte(CONTINUOUS);
+				writeText(out, attribute.getName(), version);
+				out.writeDouble(((ContinuousAttribute) attribute).getMin());
+				out.writeDouble(((ContinuousAttribute) attribute).getMax());
+				for (int i = 0; i < k; i++) {
+					out.writeDouble((double) C.get(i).getCentroid().get(j).getValue());
+				}
+			} else {
+				// Only the values of the centroids are saved, not the whole attribute
+				TreeSet<String> values = new TreeSet<String>();
+				for (int i = 0; i < k; i++) {
+					String value = (String) C.get(i).getCentroid().get(j).getValue();
+					if (value != null) {
+						values.add(value);
+					}
+				}
+				DiscreteAttribute dictionary = new DiscreteAttribute(attribute.getName(), j,
+						values.toArray(new String[values.size()]));
+				out.writeByte(DISCRETE);
+				writeText(out, attribute.getName(), version);
+				out.writeInt(values.size());
+				for (String value : values) {
+					writeText(out, value, version);
+				}
+				for (int i = 0; i < k; i++) {
+					String value = (String) C.get(i).getCentroid().get(j).getValue();
+					out.writeInt(value == null ? NULL_CODE : dictionary.getCode(value));
+				}
+			}
+		}
+
+		if (membership) {
+			for (int i = 0; i < k; i++) {
+				writeRuns(out, C.get(i).getClusteredData());
+			}
+		}
+		if (events) {
+			out.writeInt(convergence.size());
+			for (IterationEvent event : convergence) {
+				out.writeInt(event.getIteration());
+				out.writeInt(event.getPointsMoved());
+				out.writeDouble(event.getSse());
+				out.writeDouble(event.getMaxShift());
+				out.writeDouble(event.getElapsedMillis());
+				out.writeLong(event.getDistanceEvaluations());
+			}
+		}
+
+		out.flush();
+		out.writeInt((int) checked.getChecksum().getValue());
+		out.flush();
+	}
+
+	/**
+	 * This function writes a set of clusters to a temporary file in the directory
+	 * of the model, forces it to the disk and renames it to the given name, so a
+	 * crash during the write never leaves a truncated model: the file has either
+	 * the previous content or the new one. The temporary file is created with the
+	 * default permissions of a new file, or those of the model it replaces, as
+	 * the rename keeps them; the directory is forced to the disk after the
+	 * rename, where the file system allows it.
+	 *
+	 * @param C          the clusters, whose centroids have all the attributes
+	 * @param fileName   the path name of the model file
+	 * @param membership true to save the examples of each cluster too
+	 * @throws IOException
+	 */
+	static void writeFile(ClusterSet C, String fileName, boolean membership) throws IOException {
+		Path path = Paths.get(fileName).toAbsolutePath();
+		// Not 'Files.createTempFile', whose files can only be read by their owner
+		Path temp = path.resolveSibling(
+				path.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			write(C, Channels.newOutputStream(channel), membership);
+			channel.force(true);
+			if (Files.exists(path)
+					&& Files.getFileStore(path).supportsFileAttributeView(PosixFileAttributeView.class)) {
+				Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(path));
+			}
+		} catch (IOException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+		try {
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+		syncDirectory(path.getParent());
+	}
+
+	/**
+	 * This function forces the entries of a directory to the disk, so a renamed
+	 * file survives a crash. Some systems cannot open a directory (Windows), the
+	 * function does nothing there.
+	 *
+	 * @param directory the directory
+	 */
+	private static void syncDirectory(Path directory) {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// The directory cannot be synchronized on this system
+		}
+	}
+
+	/**
+	 * This function reads a set of clusters saved either in the binary format or,
+	 * for the models saved before it, by Java serialization. The stream is not
+	 * closed.
+	 *
+	 * @param stream where the model is read
+	 * @return the clusters of the model.
+	 * @throws IOException            if the model is not valid
+	 * @throws ClassNotFoundException
+	 */
+	static ClusterSet read(InputStream stream) throws IOException, ClassNotFoundException {
+		BufferedInputStream buffered = new BufferedInputStream(stream);
+		buffered.mark(4);
+		int magic = new DataInputStream(buffered).readInt();
+		buffered.reset();
+		if (magic == SERIALIZATION_MAGIC) {
+			return (ClusterSet) new ObjectInputStream(buffered).readObject();
+		} else if (magic != MAGIC) {
+			throw new IOException("Not a model file");
+		}
+
+		CheckedInputStream checked = new CheckedInputStream(buffered, new CRC32());
+		DataInputStream in = new DataInputStream(checked);
+		in.readInt();
+		int version = in.readInt();
+		if (version != VERSION && version != VERSION_2 && version != VERSION_1) {
+			throw new IOException("Unsupported model version: " + version);
+		}
+		int flags = in.readInt();
+		long fingerprint = in.readLong();
+		int k = in.readInt();
+		int d = in.readInt();
+
+		Item[][] items = new Item[k][d];
+		for (int j = 0; j < d; j++) {
+			byte type = in.readByte();
+			String name = readText(in, version);
+			if (type == CONTINUOUS) {
+				ContinuousAttribute attribute = new ContinuousAttribute(name, j, in.readDouble(), in.readDouble());
+				for (int i = 0; i < k; i++) {
+					items[i][j] = new ContinuousItem(attribute, in.readDouble());
+				}
+			} else {
+				String[] values = new String[in.readInt()];
+				for (int v = 0; v < values.length; v++) {
+					values[v] = readText(in, version);
+				}
+				DiscreteAttribute attribute = new DiscreteAttribute(name, j, values);
+				for (int i = 0; i < k; i++) {
+					int code = in.readInt();
+					items[i][j] = new DiscreteItem(attribute, code == NULL_CODE ? null : attribute.getValue(code));
+				}
+			}
+		}
+
+		ClusterSet C = new ClusterSet(k);
+		for (int i = 0; i < k; i++) {
+			Tuple centroid = new Tuple(d);
+			for (int j = 0; j < d; j++) {
+				centroid.add(items[i][j], j);
+			}
+			C.add(new Cluster(centroid));
+		}
+		if ((flags & MEMBERSHIP) != 0) {
+			for (int i = 0; i < k; i++) {
+				readRuns(in, C.get(i));
+			}
+		}
+		if ((flags & CONVERGENCE) != 0) {
+			int count = in.readInt();
+			List<IterationEvent> convergence = new ArrayList<IterationEvent>();
+			for (int e = 0; e < count; e++) {
+				convergence.add(new IterationEvent(in.readInt(), in.readInt(), in.readDouble(), in.readDouble(),
+						in.readDouble(), in.readLong()));
+			}
+			C.setConvergence(convergence);
+		}
+
+		int checksum = (int) checked.getChecksum().getValue();
+		if (in.readInt() != checksum || fingerprint(C.get(0).getCentroid()) != fingerprint) {
+			throw new IOException("Corrupted model file");
+		}
+		return C;
+	}
+
+	/**
+	 * This function computes the fingerprint of the schema of a tuple: a 64-bit
+	 * hash of the name and the type of each attribute, in order. Two models (or a
+	 * model and a dataset) with the same fingerprint have the same attributes.
+	 *
+	 * @param tuple a tuple with an item for each attribute
+	 * @return the fingerprint of the attributes of the tuple.
+	 */
+	static long fingerprint(Tuple tuple) {
+		List<Attribute> attributes = new ArrayList<Attribute>();
+		for (int j = 0; j < tuple.getLength(); j++) {
+			attributes.add(tuple.get(j).getAttribute());
+		}
+		return fingerprint(attributes);
+	}
+
+	/**
+	 * This function computes the fingerprint of a list of attributes, as
+	 * 'fingerprint(Tuple)'.
+	 *
+	 * @param attributes the attributes, in the order of their index
+	 * @return the fingerprint of the attributes.
+	 */
+	static long fingerprint(List<Attribute> attributes) {
+		long hash = 1125899906842597L;
+		for (Attribute attribute : attributes) {
+			String key = (attribute instanceof ContinuousAttribute ? "C:" : "D:") + attribute.getName() + ";";
+			for (int c = 0; c < key.length(); c++) {
+				hash = 31 * hash + key.charAt(c);
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * The function tells if a set of clusters can only be written in version 3:
+	 * if a name or a value of the centroids may be too long for 'writeUTF', or a
+	 * centroid has a NULL value, which the previous versions cannot read.
+	 *
+	 * @param C the clusters
+	 * @return true if the model must be written in version 3.
+	 */
+	private static boolean needsVersion3(ClusterSet C) {
+		for (int j = 0; j < C.get(0).getCentroid().getLength(); j++) {
+			Attribute attribute = C.get(0).getCentroid().get(j).getAttribute();
+			if (attribute.getName().length() > MAX_UTF_LENGTH) {
+				return true;
+			}
+			if (!(attribute instanceof ContinuousAttribute)) {
+				for (int i = 0; i < C.getNumberOfClusters(); i++) {
+					String value = (String) C.get(i).getCentroid().get(j).getValue();
+					if (value == null || value.length() > MAX_UTF_LENGTH) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * This function writes a string of the model: by 'writeUTF' before version
+	 * 3, then as its length, a variable-length integer, followed by its UTF-8
+	 * bytes.
+	 *
+	 * @param out     the stream
+	 * @param value   the string
+	 * @param version the version of the model
+	 * @throws IOException
+	 */
+	private static void writeText(DataOutputStream out, String value, int version) throws IOException {
+		if (version < VERSION) {
+			out.writeUTF(value);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * This function reads a string written by 'writeText'.
+	 *
+	 * @param in      the stream
+	 * @param version the version of the model
+	 * @return the string.
+	 * @throws IOException
+	 */
+	private static String readText(DataInputStream in, int version) throws IOException {
+		if (version < VERSION) {
+			return in.readUTF();
+		}
+		int length = readVarInt(in);
+		if (length < 0) {
+			throw new IOException("Invalid string length: " + length);
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * This function writes sorted ids as runs of consecutive ids: the number of
+	 * runs, then for each run the gap from the end of the previous run and its
+	 * length, as variable-length integers.
+	 *
+	 * @param out the stream
+	 * @param ids the ids in ascending order
+	 * @throws IOException
+	 */
+	private static void writeRuns(DataOutputStream out, int[] ids) throws IOException {
+		int runs = 0;
+		for (int i = 0; i < ids.length; i++) {
+			if (i == 0 || ids[i] != ids[i - 1] + 1) {
+				runs++;
+			}
+		}
+		writeVarInt(out, runs);
+		int end = 0;
+		for (int i = 0; i < ids.length;) {
+			int start = i;
+			while (i + 1 < ids.length && ids[i + 1] == ids[i] + 1) {
+				i++;
+			}
+			i++;
+			writeVarInt(out, ids[start] - end);
+			writeVarInt(out, i - start);
+			end = ids[i - 1] + 1;
+		}
+	}
+
+	/**
+	 * This function reads the runs of ids written by 'writeRuns' and adds the ids
+	 * to the cluster.
+	 *
+	 * @param in      the stream
+	 * @param cluster the cluster the ids belong to
+	 * @throws IOException
+	 */
+	private static void readRuns(DataInputStream in, Cluster cluster) throws IOException {
+		int runs = readVarInt(in);
+		int end = 0;
+		for (int r = 0; r < runs; r++) {
+			int start = end + readVarInt(in);
+			int length = readVarInt(in);
+			for (int id = start; id < start + length; id++) {
+				cluster.addData(id);
+			}
+			end = start + length;
+		}
+	}
+
+	/**
+	 * This function writes a non negative integer in 7-bit groups, the highest
+	 * bit of each byte telling if another byte follows.
+	 *
+	 * @param out   the stream
+	 * @param value the value
+	 * @throws IOException
+	 */
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	/**
+	 * This function reads an integer written by 'writeVarInt'.
+	 *
+	 * @param in the stream
+	 * @return the value.
+	 * @throws IOException
+	 */
+	private static int readVarInt(DataInputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new EOFException("Malformed variable-length integer");
+	}
+}
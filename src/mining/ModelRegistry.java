@@ -0,0 +1,221 @@
+package mining;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The ModelRegistry class keeps the models read from disk resident in memory,
+ * shared by all the clients of the server. The models are evicted in least
+ * recently used order when their estimated size exceeds the memory budget, and
+ * a model is read again when its file changes (different modification time or
+ * length). A model returned by the registry is shared by concurrent readers
+ * and must never be modified.
+ */
+public class ModelRegistry {
+	/** Default memory budget, can be changed with the kmeans.models.cacheBytes property */
+	private static final long DEFAULT_BUDGET = 256L * 1024 * 1024;
+	private static final ModelRegistry INSTANCE = new ModelRegistry(
+			Long.getLong("kmeans.models.cacheBytes", DEFAULT_BUDGET));
+
+	/**
+	 * The "Entry" class holds a resident model and the state of its file when it
+	 * was read. It is an inner class of 'ModelRegistry'.
+	 */
+	private class Entry {
+		private ClusterSet model;
+		private long lastModified;
+		private long length;
+		private long bytes;
+
+		/**
+		 * Constructor for the inner class 'Entry'.
+		 *
+		 * @param model        the model read from the file
+		 * @param lastModified modification time of the file
+		 * @param length       length of the file
+		 */
+		Entry(ClusterSet model, long lastModified, long length) {
+			this.model = model;
+			this.lastModified = lastModified;
+			this.length = length;
+			this.bytes = estimateSize(model);
+		}
+	}
+
+	private long budget;
+	private long bytes;
+	private long hits;
+	private long misses;
+	private long evictions;
+	/** The entries in access order, the least recently used first */
+	private LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	/**
+	 * Constructor for the 'ModelRegistry' class.
+	 *
+	 * @param budget the maximum estimated size in bytes of the resident models
+	 */
+	public ModelRegistry(long budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * The function returns the registry shared by the whole server.
+	 *
+	 * @return the server-wide 'ModelRegistry'.
+	 */
+	public static ModelRegistry getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * This function returns the model saved in a file. If the model is resident
+	 * and its file has not changed, it costs a lookup and a check of the file
+	 * attributes, otherwise the model is read from the file and made resident.
+	 * If a save of the file is queued in the 'ModelStore', the function waits
+	 * until it has been written.
+	 *
+	 * @param fileName the path name of the model file
+	 * @return the model, shared with the other readers: it must not be modified.
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public ClusterSet get(String fileName) throws IOException, ClassNotFoundException {
+		ModelStore.getInstance().awaitPending(fileName);
+		Path path = Paths.get(fileName).toAbsolutePath().normalize();
+		String key = path.toString();
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		long lastModified = attributes.lastModifiedTime().toMillis();
+		long length = attributes.size();
+
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry != null && entry.lastModified == lastModified && entry.length == length) {
+				hits++;
+				return entry.model;
+			}
+			misses++;
+		}
+
+		// Read outside the lock, so a slow read does not block the other models
+		ClusterSet model;
+		InputStream in = new FileInputStream(path.toFile());
+		try {
+			model = ModelFormat.read(in);
+		} finally {
+			in.close();
+		}
+
+		synchronized (this) {
+			Entry old = entries.get(key);
+			if (old != null) {
+				bytes -= old.bytes;
+			}
+			Entry entry = new Entry(model, lastModified, length);
+			entries.put(key, entry);
+			bytes += entry.bytes;
+			evict(entry);
+		}
+		return model;
+	}
+
+	/**
+	 * This function removes a model from the registry, it is called when its file
+	 * is written.
+	 *
+	 * @param fileName the path name of the model file
+	 */
+	public synchronized void invalidate(String fileName) {
+		Entry entry = entries.remove(Paths.get(fileName).toAbsolutePath().normalize().toString());
+		if (entry != null) {
+			bytes -= entry.bytes;
+		}
+	}
+
+	/**
+	 * The function returns the number of requests answered by a resident model.
+	 *
+	 * @return the number of hits.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * The function returns the number of requests which read the model file.
+	 *
+	 * @return the number of misses.
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * The function returns the number of models evicted to respect the budget.
+	 *
+	 * @return the number of evictions.
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * The function returns the estimated size of the resident models.
+	 *
+	 * @return the estimated size in bytes.
+	 */
+	public synchronized long getResidentBytes() {
+		return bytes;
+	}
+
+	/**
+	 * The function returns the number of resident models.
+	 *
+	 * @return the number of models in the registry.
+	 */
+	public synchronized int getResidentModels() {
+		return entries.size();
+	}
+
+	/**
+	 * This function evicts the least recently used models until the resident
+	 * models fit in the budget. The given entry, just read, is never evicted,
+	 * even if it is alone larger than the budget.
+	 *
+	 * @param keep the entry which must stay resident
+	 */
+	private void evict(Entry keep) {
+		Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+		while (bytes > budget && iterator.hasNext()) {
+			Entry entry = iterator.next().getValue();
+			if (entry != keep) {
+				iterator.remove();
+				bytes -= entry.bytes;
+				evictions++;
+			}
+		}
+	}
+
+	/**
+	 * This function estimates the memory used by a model: the items of the
+	 * centroids and the boxed ids of the examples of the clusters.
+	 *
+	 * @param model the model
+	 * @return the estimated size in bytes.
+	 */
+	private static long estimateSize(ClusterSet model) {
+		long size = 1024;
+		for (int i = 0; i < model.getNumberOfClusters(); i++) {
+			size += 64L * model.get(i).getCentroid().getLength() + 48L * model.get(i).getSize();
+		}
+		return size;
+	}
+}
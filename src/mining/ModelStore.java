@@ -0,0 +1,229 @@
+package mining;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The ModelStore class writes the models in background, so a client does not
+ * wait for the disk. Each save gets a ticket whose status can be asked later.
+ * The saves are written one at a time, in the order they are issued, with
+ * 'ModelFormat.writeFile', which replaces the file atomically. A save issued
+ * while a previous save of the same file is still waiting in the queue is
+ * coalesced with it: the file is written once, with the latest model, and both
+ * saves share the same ticket.
+ */
+public class ModelStore {
+	private static final ModelStore INSTANCE = new ModelStore();
+	/** Number of tickets whose status is remembered */
+	private static final int MAX_TICKETS = 4096;
+
+	/**
+	 * The "PendingSave" class holds a save and its status. It is an inner class
+	 * of 'ModelStore'.
+	 */
+	private class PendingSave {
+		private long ticket;
+		private String fileName;
+		private ClusterSet C;
+		private boolean membership;
+		private SAVE_STATUS status = SAVE_STATUS.PENDING;
+		private String error;
+
+		/**
+		 * Constructor for the inner class 'PendingSave'.
+		 *
+		 * @param ticket     the ticket of the save
+		 * @param fileName   the path name of the model file
+		 * @param C          the clusters to save
+		 * @param membership true to save the examples of each cluster too
+		 */
+		PendingSave(long ticket, String fileName, ClusterSet C, boolean membership) {
+			this.ticket = ticket;
+			this.fileName = fileName;
+			this.C = C;
+			this.membership = membership;
+		}
+
+		/**
+		 * The function tells if the save has not finished yet.
+		 *
+		 * @return true if the save is pending or running.
+		 */
+		boolean isActive() {
+			return status == SAVE_STATUS.PENDING || status == SAVE_STATUS.RUNNING;
+		}
+	}
+
+	private ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "model-store");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private long nextTicket = 1;
+	private long coalesced;
+	/** The last save of each file, by absolute path */
+	private Map<String, PendingSave> latest = new HashMap<String, PendingSave>();
+	/** The recent saves by ticket, the oldest ones are forgotten */
+	private Map<Long, PendingSave> tickets = new LinkedHashMap<Long, PendingSave>() {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, PendingSave> eldest) {
+			return size() > MAX_TICKETS && !eldest.getValue().isActive();
+		}
+	};
+
+	/**
+	 * The function returns the store shared by the whole server.
+	 *
+	 * @return the server-wide 'ModelStore'.
+	 */
+	public static ModelStore getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * This function queues the save of a model and returns immediately. If the
+	 * last save of the same file has not started yet, it takes the new model
+	 * and its ticket is returned.
+	 *
+	 * @param fileName   the path name of the model file
+	 * @param C          the clusters to save, which must not be modified after
+	 *                   the call
+	 * @param membership true to save the examples of each cluster too
+	 * @return the ticket of the save.
+	 */
+	public synchronized long save(String fileName, ClusterSet C, boolean membership) {
+		String key = Paths.get(fileName).toAbsolutePath().normalize().toString();
+		PendingSave last = latest.get(key);
+		if (last != null && last.status == SAVE_STATUS.PENDING) {
+			last.C = C;
+			last.membership = membership;
+			coalesced++;
+			return last.ticket;
+		}
+
+		PendingSave save = new PendingSave(nextTicket++, fileName, C, membership);
+		latest.put(key, save);
+		tickets.put(save.ticket, save);
+		executor.execute(() -> write(key, save));
+		return save.ticket;
+	}
+
+	/**
+	 * The function returns the status of a save.
+	 *
+	 * @param ticket the ticket returned by 'save'
+	 * @return the status of the save, UNKNOWN if the ticket is not known.
+	 */
+	public synchronized SAVE_STATUS getStatus(long ticket) {
+		PendingSave save = tickets.get(ticket);
+		return save == null ? SAVE_STATUS.UNKNOWN : save.status;
+	}
+
+	/**
+	 * The function returns the error of a failed save.
+	 *
+	 * @param ticket the ticket returned by 'save'
+	 * @return the message of the error, null if the save has not failed.
+	 */
+	public synchronized String getError(long ticket) {
+		PendingSave save = tickets.get(ticket);
+		return save == null ? null : save.error;
+	}
+
+	/**
+	 * The function returns the number of saves merged with a pending save of the
+	 * same file.
+	 *
+	 * @return the number of coalesced saves.
+	 */
+	public synchronized long getCoalesced() {
+		return coalesced;
+	}
+
+	/**
+	 * This function waits until the saves of a file have been written, so the
+	 * file can be read with the last model saved.
+	 *
+	 * @param fileName the path name of the model file
+	 * @throws InterruptedIOException if the thread is interrupted while waiting
+	 */
+	public synchronized void awaitPending(String fileName) throws InterruptedIOException {
+		String key = Paths.get(fileName).toAbsolutePath().normalize().toString();
+		PendingSave save = latest.get(key);
+		while (save != null && save.isActive()) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the save of " + fileName);
+			}
+		}
+	}
+
+	/**
+	 * This function waits until a save has been written or has failed.
+	 *
+	 * @param ticket the ticket returned by 'save'
+	 * @return the status of the save: DONE, FAILED, or UNKNOWN if the ticket is
+	 *         no longer remembered.
+	 * @throws InterruptedIOException if the thread is interrupted while waiting
+	 */
+	public synchronized SAVE_STATUS await(long ticket) throws InterruptedIOException {
+		PendingSave save = tickets.get(ticket);
+		while (save != null && save.isActive()) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the save " + ticket);
+			}
+		}
+		return save == null ? SAVE_STATUS.UNKNOWN : save.status;
+	}
+
+	/**
+	 * This function writes a queued save, it runs on the thread of the store.
+	 *
+	 * @param key  the absolute path of the model file
+	 * @param save the save to write
+	 */
+	private void write(String key, PendingSave save) {
+		ClusterSet C;
+		boolean membership;
+		synchronized (this) {
+			save.status = SAVE_STATUS.RUNNING;
+			C = save.C;
+			membership = save.membership;
+		}
+
+		SAVE_STATUS status = SAVE_STATUS.DONE;
+		String error = null;
+		try {
+			ModelFormat.writeFile(C, save.fileName, membership);
+		} catch (IOException | RuntimeException e) {
+			status = SAVE_STATUS.FAILED;
+			error = e.toString();
+			System.out.println("Error saving " + save.fileName + ": " + e);
+		}
+		ModelRegistry.getInstance().invalidate(save.fileName);
+
+		synchronized (this) {
+			save.status = status;
+			save.error = error;
+			// The model is no longer needed
+			save.C = null;
+			if (latest.get(key) == save) {
+				latest.remove(key);
+			}
+			notifyAll();
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package mining;
+
+import java.util.List;
+
+import data.Attribute;
+import data.Data;
+import data.DiscreteAttribute;
+
+/**
+ * The PackedCodes class holds the discrete attributes of the examples of a
+ * dataset in one-hot form, packed in 64-bit words: each discrete attribute
+ * with at most MAX_CARDINALITY values has a field of one bit per value in a
+ * word of the row, and the bit of the code of the example is set. The fields
+ * never straddle two words. <br>
+ * <br>
+ * A centroid packed the same way has the bit of its value set, so the number
+ * of packed attributes on which an example and a centroid agree is the number
+ * of bits set in the AND of their words ('Long.bitCount'), and the number of
+ * mismatches, which is their discrete distance, is the number of packed
+ * attributes minus the agreements. A value of a centroid which is not in the
+ * dictionary sets no bit, so it always counts as a mismatch. <br>
+ * <br>
+ * The codes of the attributes must not change while the packed form is used,
+ * so it is built once for each run of the k-means.
+ */
+public class PackedCodes {
+	/** Largest number of values of a packed attribute: one word */
+	static final int MAX_CARDINALITY = 64;
+
+	private int n;
+	private int words;
+	private int count;
+	/** For each attribute: its word, -1 if it is not packed */
+	private int[] word;
+	/** For each packed attribute: the bit of its first value */
+	private int[] offset;
+	/** The words of each row, row after row */
+	private long[] rows;
+
+	/**
+	 * Constructor for the 'PackedCodes' class: the discrete attributes with at
+	 * most MAX_CARDINALITY values are assigned to the first word which has room
+	 * for their field, then the rows are packed.
+	 * 
+	 * @param data the dataset
+	 */
+	public PackedCodes(Data data) {
+		List<Attribute> attributes = data.getAttributeSchema();
+		int d = attributes.size();
+		n = data.getNumberOfExamples();
+		word = new int[d];
+		offset = new int[d];
+		int[] used = new int[d];
+		for (Attribute attribute : attributes) {
+			int j = attribute.getIndex();
+			word[j] = -1;
+			if (attribute instanceof DiscreteAttribute) {
+				int cardinality = ((DiscreteAttribute) attribute).getNumberOfDistinctValues();
+				if (cardinality > MAX_CARDINALITY) {
+					continue;
+				}
+				int w = 0;
+				while (used[w] + cardinality > Long.SIZE) {
+					w++;
+				}
+				word[j] = w;
+				offset[j] = used[w];
+				used[w] += cardinality;
+				words = Math.max(words, w + 1);
+				count++;
+			}
+		}
+
+		rows = new long[n * words];
+		for (int j = 0; j < d; j++) {
+			if (word[j] >= 0) {
+				int[] codes = data.getDiscreteColumn(j);
+				for (int i = 0; i < n; i++) {
+					rows[i * words + word[j]] |= 1L << (offset[j] + codes[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The function tells if an attribute is packed.
+	 * 
+	 * @param j the index of the attribute
+	 * @return true if the attribute is discrete and has at most MAX_CARDINALITY
+	 *         values.
+	 */
+	boolean isPacked(int j) {
+		return word[j] >= 0;
+	}
+
+	/**
+	 * The function returns the number of packed attributes.
+	 * 
+	 * @return the value of the variable 'count'.
+	 */
+	int getCount() {
+		return count;
+	}
+
+	/**
+	 * The function returns the number of words of a row.
+	 * 
+	 * @return the value of the variable 'words'.
+	 */
+	int getWords() {
+		return words;
+	}
+
+	/**
+	 * The function returns the number of rows.
+	 * 
+	 * @return the value of the variable 'n'.
+	 */
+	int getNumberOfRows() {
+		return n;
+	}
+
+	/**
+	 * The function returns the packed rows.
+	 * 
+	 * @return the words of the row i at the indexes i * words to (i + 1) * words
+	 *         - 1.
+	 */
+	long[] getRows() {
+		return rows;
+	}
+
+	/**
+	 * This function packs the codes of the discrete attributes of a centroid.
+	 * 
+	 * @param codes the code of each attribute of the centroid, -1 for a value
+	 *              which is not in the dictionary; the codes of the attributes
+	 *              which are not packed are ignored
+	 * @return the words of the centroid.
+	 */
+	long[] pack(int[] codes) {
+		long[] packed = new long[words];
+		for (int j = 0; j < codes.length; j++) {
+			if (word[j] >= 0 && codes[j] >= 0) {
+				packed[word[j]] |= 1L << (offset[j] + codes[j]);
+			}
+		}
+		return packed;
+	}
+}
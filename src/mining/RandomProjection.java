@@ -0,0 +1,181 @@
+package mining;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import data.Attribute;
+import data.ContinuousAttribute;
+import data.Data;
+import data.DiscreteAttribute;
+
+/**
+ * The RandomProjection class reduces the number of continuous attributes of a
+ * dataset before the k-means, for tables with many numeric columns. The scaled
+ * values of the d continuous attributes are multiplied by a sparse random
+ * matrix (Achlioptas) with m columns: each entry is +1 or -1 with probability
+ * 1/6 each and 0 with probability 2/3, so only a third of the products are
+ * computed. By the Johnson-Lindenstrauss lemma the projection preserves the
+ * Euclidean distances between the examples with high probability. The
+ * coordinates are scaled so that the distance of the projected examples, the
+ * sum of the absolute differences of the coordinates, estimates the Euclidean
+ * distance of their scaled continuous values. <br>
+ * <br>
+ * The projected data has the m projected attributes, named "p0" to "p(m-1)",
+ * followed by the discrete attributes of the dataset, which are not changed.
+ * The projected attributes have the range [0, 1], which leaves the
+ * coordinates as they are when they are scaled. The same seed on the same
+ * dataset always gives the same projection.
+ */
+public class RandomProjection {
+	/**
+	 * Factor of the coordinates: the mean absolute value of a normal variable is
+	 * sqrt(2/pi) times its standard deviation
+	 */
+	private static final double L1_SCALE = Math.sqrt(Math.PI / 2);
+
+	private int dimension;
+	/** The indexes of the continuous attributes projected */
+	private int[] inputs;
+	/** For each attribute projected, the projected attributes it adds to */
+	private int[][] targets;
+	/** For each attribute projected, the coefficients of its targets */
+	private double[][] coefficients;
+
+	/**
+	 * Constructor for the 'RandomProjection' class, which draws the projection
+	 * matrix of the continuous attributes of a dataset. The attributes whose
+	 * minimum and maximum values are equal are not projected, as they do not
+	 * change the distances.
+	 *
+	 * @param data      the dataset
+	 * @param dimension the number of projected attributes, at least 1
+	 * @param seed      the seed of the random matrix
+	 * @throws IllegalArgumentException if the dimension is not positive
+	 */
+	public RandomProjection(Data data, int dimension, long seed) {
+		if (dimension < 1) {
+			throw new IllegalArgumentException("The dimension must be positive: " + dimension);
+		}
+		this.dimension = dimension;
+		List<Integer> continuous = new ArrayList<Integer>();
+		for (Attribute attribute : data.getAttributeSchema()) {
+			if (attribute instanceof ContinuousAttribute
+					&& ((ContinuousAttribute) attribute).getMax() > ((ContinuousAttribute) attribute).getMin()) {
+				continuous.add(attribute.getIndex());
+			}
+		}
+		inputs = new int[continuous.size()];
+		targets = new int[inputs.length][];
+		coefficients = new double[inputs.length][];
+
+		// With entries +-sqrt(3) the difference of two examples on a coordinate has
+		// the variance of their squared distance; the other factors make the sum
+		// of the m absolute differences an estimate of the distance
+		double entry = Math.sqrt(3) * L1_SCALE / dimension;
+		Random random = new Random(seed);
+		int[] row = new int[dimension];
+		double[] signs = new double[dimension];
+		for (int j = 0; j < inputs.length; j++) {
+			inputs[j] = continuous.get(j);
+			int nonZero = 0;
+			for (int o = 0; o < dimension; o++) {
+				int draw = random.nextInt(6);
+				if (draw < 2) {
+					row[nonZero] = o;
+					signs[nonZero++] = draw == 0 ? entry : -entry;
+				}
+			}
+			targets[j] = new int[nonZero];
+			coefficients[j] = new double[nonZero];
+			System.arraycopy(row, 0, targets[j], 0, nonZero);
+			System.arraycopy(signs, 0, coefficients[j], 0, nonZero);
+		}
+	}
+
+	/**
+	 * The function tells if the projection reduces the number of attributes of a
+	 * dataset, that is if the dataset has more continuous attributes than the
+	 * dimension.
+	 *
+	 * @param data      the dataset
+	 * @param dimension the number of projected attributes
+	 * @return true if the projection is worth computing.
+	 */
+	public static boolean reduces(Data data, int dimension) {
+		int continuous = 0;
+		for (Attribute attribute : data.getAttributeSchema()) {
+			if (attribute instanceof ContinuousAttribute) {
+				continuous++;
+			}
+		}
+		return dimension > 0 && continuous > dimension;
+	}
+
+	/**
+	 * The function returns the number of projected attributes.
+	 *
+	 * @return the value of the variable 'dimension'.
+	 */
+	public int getDimension() {
+		return dimension;
+	}
+
+	/**
+	 * This function projects the examples of a dataset. The columns of the
+	 * projected attributes are computed one continuous attribute at a time, so
+	 * every column is read once. The codes and the weights of the examples are
+	 * shared with the dataset, and the discrete attributes are copies with new
+	 * indexes.
+	 *
+	 * @param data the dataset the projection has been drawn for
+	 * @return the projected dataset, with the same examples in the same order.
+	 */
+	public Data project(Data data) {
+		int n = data.getNumberOfExamples();
+		List<Attribute> schema = data.getAttributeSchema();
+		int discrete = 0;
+		for (Attribute attribute : schema) {
+			if (attribute instanceof DiscreteAttribute) {
+				discrete++;
+			}
+		}
+		List<Attribute> attributes = new ArrayList<Attribute>();
+		double[][] values = new double[dimension + discrete][];
+		int[][] codes = new int[dimension + discrete][];
+		for (int o = 0; o < dimension; o++) {
+			attributes.add(new ContinuousAttribute("p" + o, o, 0, 1));
+			values[o] = new double[n];
+		}
+
+		double[] scaled = new double[n];
+		for (int j = 0; j < inputs.length; j++) {
+			ContinuousAttribute attribute = (ContinuousAttribute) schema.get(inputs[j]);
+			double[] column = data.getContinuousColumn(inputs[j]);
+			for (int i = 0; i < n; i++) {
+				scaled[i] = attribute.getScaledValue(column[i]);
+			}
+			for (int t = 0; t < targets[j].length; t++) {
+				double[] target = values[targets[j][t]];
+				double coefficient = coefficients[j][t];
+				for (int i = 0; i < n; i++) {
+					target[i] += coefficient * scaled[i];
+				}
+			}
+		}
+
+		int index = dimension;
+		for (Attribute attribute : schema) {
+			if (attribute instanceof DiscreteAttribute) {
+				attributes.add(new DiscreteAttribute(attribute.getName(), index,
+						((DiscreteAttribute) attribute).getDictionary()));
+				codes[index++] = data.getDiscreteColumn(attribute.getIndex());
+			}
+		}
+		int[] weights = new int[n];
+		for (int i = 0; i < n; i++) {
+			weights[i] = data.getWeight(i);
+		}
+		return Data.fromColumns(data.getTableName() + "_p" + dimension, attributes, values, codes, weights, n);
+	}
+}
@@ -0,0 +1,12 @@
+package mining;
+
+/**
+ * Enumeration class called 'SAVE_STATUS' with the states of a save handed to
+ * the 'ModelStore': 'PENDING' while it waits in the queue, 'RUNNING' while the
+ * model is written, 'DONE' when the file has been replaced, 'FAILED' if the
+ * write has failed and 'UNKNOWN' for a ticket which was never issued or has
+ * been forgotten.
+ */
+public enum SAVE_STATUS {
+	PENDING, RUNNING, DONE, FAILED, UNKNOWN
+}
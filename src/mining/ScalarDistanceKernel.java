@@ -0,0 +1,18 @@
+package mining;
+
+/**
+ * The ScalarDistanceKernel class is the 'DistanceKernel' which computes the
+ * distances one row at a time, without SIMD instructions.
+ */
+class ScalarDistanceKernel extends DistanceKernel {
+
+	@Override
+	public void nearest(ColumnCentroids centroids, int from, int to, int[] nearest, double[] distance) {
+		nearestScalar(centroids, from, to, from, nearest, distance);
+	}
+
+	@Override
+	public boolean isAccelerated() {
+		return false;
+	}
+}
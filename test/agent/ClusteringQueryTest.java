@@ -0,0 +1,189 @@
+package agent;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+
+import data.Attribute;
+import data.ContinuousAttribute;
+import data.Data;
+import data.DiscreteAttribute;
+import mining.Cluster;
+import mining.ClusterSet;
+import mining.KMeansMiner;
+
+/**
+ * The ClusteringQueryTest class checks the in-database k-means of
+ * 'ClusteringQuery' against an embedded H2 database in MySQL mode, whose
+ * strings ignore the case as the default collations of MySQL. For several
+ * seeds, the clusters computed by the database must be the clusters the
+ * in-memory engine computes from the same centroids: the same sizes and the
+ * same centroids, the string values being compared as 'String.equals' does.
+ * The rows of a table with a NULL string are not clustered, in the database
+ * as in memory.
+ * <br>
+ * <br>
+ * The H2 driver is not shipped with the project, its jar is given on the class
+ * path. For example, from the root of the project:
+ *
+ * <pre>
+ * javac -cp "lib/*" -d bin/test $(find src test -name '*.java')
+ * java -cp "bin/test:h2-2.2.224.jar" agent.ClusteringQueryTest
+ * </pre>
+ *
+ * The program exits with status 1 at the first failed check.
+ */
+public class ClusteringQueryTest {
+	/** Number of seeds of the k-means runs */
+	private static final int SEEDS = 20;
+	/** Tolerance on the means of the numeric columns */
+	private static final double EPSILON = 1e-9;
+
+	/**
+	 * This function creates the tables and runs the checks.
+	 *
+	 * @param args not used
+	 * @throws Exception if the database cannot be used
+	 */
+	public static void main(String[] args) throws Exception {
+		// The driver is read when 'DbAccess' is loaded
+		System.setProperty("kmeans.db.driver", System.getProperty("kmeans.db.driver", "org.h2.Driver"));
+		System.setProperty("kmeans.db.url", System.getProperty("kmeans.db.url",
+				"jdbc:h2:mem:kmeans;MODE=MySQL;DATABASE_TO_LOWER=TRUE;IGNORECASE=TRUE;DB_CLOSE_DELAY=-1"));
+		DbAccess db = new DbAccess();
+		db.initConnection();
+
+		// 'a', 'A' and 'a ' are the same string for the collation, not for the engine
+		createTable(db, "km_strings", new Object[][] { { 0.0, "a" }, { 0.1, "A" }, { 0.2, "a " }, { 0.3, "A" },
+				{ 0.4, "a " }, { 0.5, "a " }, { 2.0, "b" }, { 2.1, "B" }, { 2.2, "B" }, { 3.0, "a" } });
+		for (int k = 2; k <= 4; k++) {
+			for (long seed = 0; seed < SEEDS; seed++) {
+				checkSameClusters(db, "km_strings", k, seed);
+			}
+		}
+
+		// Three rows have a NULL string, among them every row near 1
+		createTable(db, "km_nulls", new Object[][] { { 0.0, "a" }, { 0.1, null }, { 0.2, "a" }, { 1.0, null },
+				{ 1.1, null }, { 5.0, "b" }, { 5.1, "c" }, { 5.2, "b" } });
+		Data data = new Data(new LoadRequest("km_nulls"), db);
+		check(data.getNumberOfExamples() == 5,
+				"km_nulls: " + data.getNumberOfExamples() + " rows loaded instead of 5");
+		for (long seed = 0; seed < SEEDS; seed++) {
+			KMeansMiner miner = new KMeansMiner(2, seed);
+			miner.kmeans(data);
+			checkSameClusters(db, "km_nulls", 2, seed);
+		}
+
+		db.closeConnection();
+		System.out.println("OK");
+	}
+
+	/**
+	 * This function runs the in-database k-means on a table and checks its
+	 * clusters against the in-memory engine: every row is assigned to the nearest
+	 * centroid with 'ClusterSet.nearestCluster', the sizes of the clusters must
+	 * be the sizes counted by the database, and the centroids computed by the
+	 * engine from these clusters must be the centroids of the database, since the
+	 * k-means stops when they do not change.
+	 *
+	 * @param db    the database
+	 * @param table the name of the table
+	 * @param k     the number of clusters
+	 * @param seed  the seed of the k-means
+	 * @throws Exception if the k-means fails
+	 */
+	private static void checkSameClusters(DbAccess db, String table, int k, long seed) throws Exception {
+		String run = table + " k=" + k + " seed " + seed;
+		KMeansMiner miner = new KMeansMiner(k, seed);
+		miner.kmeans(db, new LoadRequest(table));
+		ClusterSet C = miner.getC();
+		long[] sizes = miner.getClusterSizes();
+
+		Data data = new Data(new LoadRequest(table), db);
+		Set<Integer>[] members = newSets(k);
+		long[] weights = new long[k];
+		for (int i = 0; i < data.getNumberOfExamples(); i++) {
+			Cluster nearest = C.nearestCluster(data.getItemSet(i));
+			for (int c = 0; c < k; c++) {
+				if (C.get(c) == nearest) {
+					members[c].add(i);
+					weights[c] += data.getWeight(i);
+				}
+			}
+		}
+
+		for (int c = 0; c < k; c++) {
+			check(weights[c] == sizes[c],
+					run + ": cluster " + c + " has " + weights[c] + " rows instead of " + sizes[c]);
+			if (members[c].isEmpty()) {
+				continue;
+			}
+			for (Attribute attribute : data.getAttributeSchema()) {
+				Object expected = data.computePrototype(members[c], attribute);
+				Object actual = C.get(c).getCentroid().get(attribute.getIndex()).getValue();
+				if (attribute instanceof ContinuousAttribute) {
+					check(Math.abs((double) expected - (double) actual) < EPSILON,
+							run + ": cluster " + c + " has the mean " + actual + " instead of " + expected);
+				} else if (attribute instanceof DiscreteAttribute) {
+					check(expected.equals(actual),
+							run + ": cluster " + c + " has the value '" + actual + "' instead of '" + expected + "'");
+				}
+			}
+		}
+	}
+
+	/**
+	 * This function creates a table with a numeric column 'x' and a string column
+	 * 'c', and inserts its rows.
+	 *
+	 * @param db    the database
+	 * @param table the name of the table
+	 * @param rows  the values of 'x' and 'c' of each row, 'c' may be null
+	 * @throws SQLException
+	 */
+	private static void createTable(DbAccess db, String table, Object[][] rows) throws SQLException {
+		Connection con = db.getConnection();
+		Statement s = con.createStatement();
+		s.executeUpdate("DROP TABLE IF EXISTS " + table);
+		s.executeUpdate("CREATE TABLE " + table + " (x DOUBLE, c VARCHAR(10))");
+		s.close();
+		PreparedStatement insert = con.prepareStatement("INSERT INTO " + table + " VALUES (?, ?)");
+		for (Object[] row : rows) {
+			insert.setDouble(1, (double) row[0]);
+			insert.setString(2, (String) row[1]);
+			insert.executeUpdate();
+		}
+		insert.close();
+	}
+
+	/**
+	 * This function builds an array of empty sets.
+	 *
+	 * @param k the length of the array
+	 * @return the array of the sets.
+	 */
+	@SuppressWarnings("unchecked")
+	private static Set<Integer>[] newSets(int k) {
+		Set<Integer>[] sets = new Set[k];
+		for (int c = 0; c < k; c++) {
+			sets[c] = new HashSet<Integer>();
+		}
+		return sets;
+	}
+
+	/**
+	 * This function stops the program with an error message if a check fails.
+	 *
+	 * @param condition the result of the check
+	 * @param message   the description of the failure
+	 */
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			System.err.println("FAILED: " + message);
+			System.exit(1);
+		}
+	}
+}
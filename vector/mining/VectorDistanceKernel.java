@@ -0,0 +1,123 @@
+package mining;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The VectorDistanceKernel class is the 'DistanceKernel' which computes the
+ * distances of several consecutive rows at once, one row per lane of a SIMD
+ * vector of the preferred size of the processor. The rows are processed by
+ * chunks of CHUNK rows: the scaled values of the continuous attributes and the
+ * codes of the discrete ones are first written, as doubles, in the buffer of
+ * the 'ColumnCentroids'; then, for each group of rows, the distance from each
+ * centroid is accumulated attribute by attribute, in the order of the
+ * attributes, so the sums are the same as the ones of the scalar kernel. A
+ * discrete attribute which is not packed adds min(|code - code of the
+ * centroid|, 1), which is 0 or 1 since the codes are integers; the mismatches
+ * of the packed attributes are counted for the whole chunk with
+ * 'Long.bitCount', then added as a vector. The rows left after the last full vector
+ * are computed by the scalar kernel. <br>
+ * <br>
+ * The class uses the incubator module jdk.incubator.vector, so it is in its
+ * own source folder, which is not a source folder of the Eclipse project (the
+ * project compiles without the module), and is compiled and run with an option
+ * of the JDK, for example from the root of the project:
+ *
+ * <pre>
+ * javac -cp "lib/*" -d bin $(find src -name '*.java')
+ * javac --add-modules jdk.incubator.vector -cp bin -d bin $(find vector -name '*.java')
+ * java --add-modules jdk.incubator.vector -cp "bin:lib/*" main.MultiServer
+ * </pre>
+ */
+class VectorDistanceKernel extends DistanceKernel {
+	private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+	/** Number of rows prepared in the buffer at once */
+	private static final int CHUNK = 256;
+
+	@Override
+	public void nearest(ColumnCentroids centroids, int from, int to, int[] nearest, double[] distance) {
+		int k = centroids.getNumberOfCentroids();
+		boolean[] continuous = centroids.getContinuous();
+		double[][] values = centroids.getValues();
+		int[][] codes = centroids.getCodes();
+		double[] min = centroids.getMin();
+		double[] range = centroids.getRange();
+		double[][] centroidValues = centroids.getCentroidValues();
+		int[][] centroidCodes = centroids.getCentroidCodes();
+		int[] unpacked = centroids.getUnpacked();
+		boolean packed = centroids.getPacked() != null;
+		double[][] buffer = centroids.getBuffer(CHUNK);
+		double[][] mismatches = packed ? centroids.getMismatchBuffer(CHUNK) : null;
+		int lanes = DOUBLES.length();
+		double[] indexes = new double[lanes];
+
+		int i = from;
+		while (to - i >= lanes) {
+			int length = Math.min(CHUNK, (to - i) / lanes * lanes);
+			for (int j : unpacked) {
+				if (continuous[j]) {
+					for (int r = 0; r < length; r += lanes) {
+						DoubleVector.fromArray(DOUBLES, values[j], i + r).sub(min[j]).div(range[j])
+								.intoArray(buffer[j], r);
+					}
+				} else {
+					for (int r = 0; r < length; r++) {
+						buffer[j][r] = codes[j][i + r];
+					}
+				}
+			}
+			if (packed) {
+				for (int c = 0; c < k; c++) {
+					for (int r = 0; r < length; r++) {
+						mismatches[c][r] = centroids.mismatches(i + r, c);
+					}
+				}
+			}
+			for (int r = 0; r < length; r += lanes) {
+				DoubleVector best = DoubleVector.broadcast(DOUBLES, Double.MAX_VALUE);
+				DoubleVector bestIndex = DoubleVector.broadcast(DOUBLES, -1);
+				for (int c = 0; c < k; c++) {
+					double[] centroidValue = centroidValues[c];
+					int[] centroidCode = centroidCodes[c];
+					DoubleVector sum = DoubleVector.zero(DOUBLES);
+					for (int j : unpacked) {
+						DoubleVector value = DoubleVector.fromArray(DOUBLES, buffer[j], r);
+						if (continuous[j]) {
+							sum = sum.add(value.sub(centroidValue[j]).abs());
+						} else {
+							sum = sum.add(value.sub(centroidCode[j]).abs().min(1.0));
+						}
+					}
+					if (packed) {
+						sum = sum.add(DoubleVector.fromArray(DOUBLES, mismatches[c], r));
+					}
+					VectorMask<Double> closer = sum.compare(VectorOperators.LT, best);
+					best = best.blend(sum, closer);
+					bestIndex = bestIndex.blend(c, closer);
+				}
+				best.intoArray(distance, i + r - from);
+				bestIndex.intoArray(indexes, 0);
+				for (int lane = 0; lane < lanes; lane++) {
+					nearest[i + r - from + lane] = (int) indexes[lane];
+				}
+			}
+			i += length;
+		}
+		nearestScalar(centroids, i, to, from, nearest, distance);
+	}
+
+	/**
+	 * The function tells if the processor computes more than one double at once.
+	 */
+	@Override
+	public boolean isAccelerated() {
+		return DOUBLES.length() > 1;
+	}
+
+	@Override
+	public String toString() {
+		return "vector (" + DOUBLES.length() + " doubles)";
+	}
+}